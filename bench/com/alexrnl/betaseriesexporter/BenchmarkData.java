@@ -0,0 +1,117 @@
+package com.alexrnl.betaseriesexporter;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.nio.charset.Charset;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+/**
+ * Synthetic data for the benchmarks.<br />
+ * The payloads have the structure of the responses to the {@value API#MEMBER_EPISODES} page,
+ * including the nested <code>episode</code> element of each record.
+ * @author Alex
+ */
+public final class BenchmarkData {
+	private static final Logger		APPLICATION_LOGGER	= Logger.getLogger("com.alexrnl.betaseriesexporter");
+
+	private static final Charset	UTF_8				= Charset.forName("UTF-8");
+	private static final int		BYTES_PER_EPISODE	= 200;
+	private static final int		EPISODES_PER_SEASON	= 22;
+	private static final String[]	SHOWS				= { "Dexter", "Lost & Found", "Game of Thrones",
+			"Les Revenants", "Mr. <Robot>", "The Big Bang Theory", "Sherlock", "Engrenages" };
+	private static final String[]	TITLES				= { "Pilot", "", "L't indien", "Winter Is Coming",
+			"\"Quoted\" title", "A Study in Pink", "pisode 1" };
+
+	/**
+	 * Constructor #1.<br />
+	 * Private constructor, the class only has static methods.
+	 */
+	private BenchmarkData () {
+		super();
+	}
+
+	/**
+	 * Raise the level of the application loggers, so the benchmarks do not measure the console.
+	 */
+	public static void disableLogging () {
+		APPLICATION_LOGGER.setLevel(Level.WARNING);
+	}
+
+	/**
+	 * Build the response of the API for a list of episodes.
+	 * @param nbEpisodes
+	 *            the number of episodes in the response.
+	 * @return the response, encoded in UTF-8.
+	 */
+	public static byte[] createResponse (final int nbEpisodes) {
+		final ByteArrayOutputStream output = new ByteArrayOutputStream(nbEpisodes * BYTES_PER_EPISODE + BYTES_PER_EPISODE);
+		try {
+			final Writer writer = new OutputStreamWriter(output, UTF_8);
+			writer.write("<?xml version=\"1.0\" encoding=\"UTF-8\"?>\n<root><request>" + API.MEMBER_EPISODES
+					+ "</request><code>1</code><episodes>\n");
+			for (int index = 0; index < nbEpisodes; ++index) {
+				final Episode episode = createEpisode(index);
+				writer.write("<episode><url>");
+				writer.write(Integer.toString(index % SHOWS.length));
+				writer.write("</url><show>");
+				writer.write(escape(episode.getShow()));
+				writer.write("</show><number>");
+				writer.write(episode.getNumber());
+				writer.write("</number><global>");
+				writer.write(episode.getGlobalNumber());
+				writer.write("</global><title>");
+				writer.write(escape(episode.getTitle()));
+				writer.write("</title><episode>");
+				writer.write(Integer.toString(index % EPISODES_PER_SEASON + 1));
+				writer.write("</episode></episode>\n");
+			}
+			writer.write("</episodes><errors/></root>\n");
+			writer.close();
+		} catch (final IOException e) {
+			throw new IllegalStateException("Cannot build the response", e);
+		}
+		return output.toByteArray();
+	}
+
+	/**
+	 * Build a list of episodes.
+	 * @param nbEpisodes
+	 *            the number of episodes.
+	 * @return the list of episodes.
+	 */
+	public static List<Episode> createEpisodes (final int nbEpisodes) {
+		final List<Episode> episodes = new ArrayList<Episode>(nbEpisodes);
+		for (int index = 0; index < nbEpisodes; ++index) {
+			episodes.add(createEpisode(index));
+		}
+		return episodes;
+	}
+
+	/**
+	 * Build the episode at the given position of a list.
+	 * @param index
+	 *            the position of the episode.
+	 * @return the episode.
+	 */
+	private static Episode createEpisode (final int index) {
+		final int season = index / EPISODES_PER_SEASON + 1;
+		final int number = index % EPISODES_PER_SEASON + 1;
+		return new Episode(SHOWS[index % SHOWS.length], String.format("S%02dE%02d", season, number),
+				Integer.toString(index + 1), TITLES[index % TITLES.length]);
+	}
+
+	/**
+	 * Escape the XML special characters of a text.
+	 * @param text
+	 *            the text.
+	 * @return the escaped text.
+	 */
+	private static String escape (final String text) {
+		return text.replace("&", "&amp;").replace("<", "&lt;").replace(">", "&gt;");
+	}
+}
@@ -0,0 +1,100 @@
+package com.alexrnl.betaseriesexporter;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.charset.Charset;
+import java.util.Collections;
+import java.util.Date;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import com.alexrnl.betaseriesexporter.export.ExportOutput;
+import com.alexrnl.betaseriesexporter.export.Exporter;
+import com.alexrnl.betaseriesexporter.export.Exporters;
+
+/**
+ * Benchmarks of the writing of the export file, in each format.
+ * @author Alex
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode({ Mode.Throughput, Mode.SampleTime })
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(value = 1, jvmArgsAppend = "-Xmx2g")
+public class OutputBenchmark {
+	private static final Charset	UTF_8	= Charset.forName("UTF-8");
+
+	/** The number of episodes to write */
+	@Param({ "10", "1000", "100000", "1000000" })
+	public int						episodes;
+	/** The format of the export */
+	@Param({ "text", "csv", "json", "html", "xml" })
+	public String					format;
+
+	private List<Episode>			list;
+	private Configuration			configuration;
+	private File					file;
+	private File					written;
+
+	/**
+	 * Build the episodes and the export file.
+	 * @throws IOException
+	 *             if the export file could not be created.
+	 */
+	@Setup
+	public void setUp () throws IOException {
+		BenchmarkData.disableLogging();
+		list = BenchmarkData.createEpisodes(episodes);
+		configuration = new Configuration();
+		file = File.createTempFile("episodes", ".txt");
+		written = ExportOutput.getFile(file.getPath(), Exporters.create(format));
+	}
+
+	/**
+	 * Delete the export files.
+	 */
+	@TearDown
+	public void tearDown () {
+		for (final File current : new File[] { file, written }) {
+			if (current.exists() && !current.delete()) {
+				current.deleteOnExit();
+			}
+		}
+	}
+
+	/**
+	 * Write the episodes in the export file.
+	 * @return the size of the file written.
+	 * @throws IOException
+	 *             if the file could not be written.
+	 */
+	@Benchmark
+	public long write () throws IOException {
+		final Exporter exporter = Exporters.create(format);
+		final ExportOutput output = new ExportOutput(Collections.singletonList(exporter), file.getPath(), UTF_8);
+		try {
+			output.start(new Date(), configuration);
+			for (final Episode episode : list) {
+				output.handle(episode);
+			}
+			output.end();
+		} finally {
+			output.close();
+		}
+		return written.length();
+	}
+}
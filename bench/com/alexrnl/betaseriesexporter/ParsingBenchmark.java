@@ -0,0 +1,194 @@
+package com.alexrnl.betaseriesexporter;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import java.util.zip.GZIPInputStream;
+import java.util.zip.GZIPOutputStream;
+
+import javax.xml.parsers.DocumentBuilderFactory;
+import javax.xml.stream.XMLStreamException;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Blackhole;
+import org.w3c.dom.Document;
+import org.w3c.dom.Element;
+import org.w3c.dom.NodeList;
+import org.xml.sax.SAXException;
+
+/**
+ * Benchmarks of the parsing of the episodes response.<br />
+ * Compare the DOM parsing, the extraction of the episodes from the DOM and the streaming parser.
+ * The DOM parsing with the builders reused by {@link XmlParsers} is compared with the creation
+ * of a factory and a builder for each response, and the streaming parser is measured on a
+ * compressed response to know the cost of the decompression.
+ * @author Alex
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode({ Mode.Throughput, Mode.SampleTime })
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(value = 1, jvmArgsAppend = "-Xmx4g")
+public class ParsingBenchmark {
+	/** The number of episodes in the response */
+	@Param({ "10", "1000", "100000", "1000000" })
+	public int				episodes;
+
+	private byte[]			response;
+	private byte[]			compressedResponse;
+	private Document		document;
+	private List<Element>	records;
+
+	/**
+	 * Build the response and its document.
+	 * @throws Exception
+	 *             if the response could not be parsed.
+	 */
+	@Setup
+	public void setUp () throws Exception {
+		BenchmarkData.disableLogging();
+		response = BenchmarkData.createResponse(episodes);
+		final ByteArrayOutputStream compressed = new ByteArrayOutputStream();
+		final GZIPOutputStream gzip = new GZIPOutputStream(compressed);
+		gzip.write(response);
+		gzip.close();
+		compressedResponse = compressed.toByteArray();
+		document = parseDocument();
+		records = new ArrayList<Element>(episodes);
+		final NodeList nodes = document.getElementsByTagName(API.EPISODE);
+		for (int index = 0; index < nodes.getLength(); ++index) {
+			final Element element = (Element) nodes.item(index);
+			if (element.getFirstChild().getNextSibling() != null) {
+				records.add(element);
+			}
+		}
+	}
+
+	/**
+	 * Parse the response in a DOM, as {@link QueryManager#execute(String, java.util.Map)}.
+	 * @return the document.
+	 * @throws Exception
+	 *             if the response could not be parsed.
+	 */
+	@Benchmark
+	public Document domParse () throws Exception {
+		return parseDocument();
+	}
+
+	/**
+	 * Parse the response in a DOM with a new factory and a new builder.
+	 * @return the document.
+	 * @throws Exception
+	 *             if the response could not be parsed.
+	 */
+	@Benchmark
+	public Document domParseNewFactory () throws Exception {
+		return DocumentBuilderFactory.newInstance().newDocumentBuilder().parse(new ByteArrayInputStream(response));
+	}
+
+	/**
+	 * Extract the episodes from the DOM.
+	 * @return the episodes.
+	 */
+	@Benchmark
+	public List<Episode> domExtract () {
+		return BetaSeriesClient.parseEpisodes(document);
+	}
+
+	/**
+	 * Read the fields of each record with {@link QueryManager#getTextValue(Element, String)}.
+	 * @param blackhole
+	 *            the sink for the values.
+	 */
+	@Benchmark
+	public void textValues (final Blackhole blackhole) {
+		for (final Element record : records) {
+			blackhole.consume(QueryManager.getTextValue(record, API.SHOW));
+			blackhole.consume(QueryManager.getTextValue(record, API.NUMBER));
+			blackhole.consume(QueryManager.getTextValue(record, API.GLOBAL_NUMBER));
+			blackhole.consume(QueryManager.getTextValue(record, API.TITLE));
+		}
+	}
+
+	/**
+	 * Parse the response with the {@link EpisodeStreamParser}.
+	 * @param blackhole
+	 *            the sink for the episodes.
+	 * @return the number of episodes parsed.
+	 * @throws XMLStreamException
+	 *             if the response could not be parsed.
+	 * @throws IOException
+	 *             if the response could not be read.
+	 */
+	@Benchmark
+	public int streamParse (final Blackhole blackhole) throws XMLStreamException, IOException {
+		return streamParse(new ByteArrayInputStream(response), blackhole);
+	}
+
+	/**
+	 * Decompress the response sent with gzip while parsing it with the
+	 * {@link EpisodeStreamParser}, as the transport does.
+	 * @param blackhole
+	 *            the sink for the episodes.
+	 * @return the number of episodes parsed.
+	 * @throws XMLStreamException
+	 *             if the response could not be parsed.
+	 * @throws IOException
+	 *             if the response could not be read.
+	 */
+	@Benchmark
+	public int streamParseGzip (final Blackhole blackhole) throws XMLStreamException, IOException {
+		return streamParse(new GZIPInputStream(new ByteArrayInputStream(compressedResponse)), blackhole);
+	}
+
+	/**
+	 * Parse a response with the {@link EpisodeStreamParser}.
+	 * @param input
+	 *            the stream of the response.
+	 * @param blackhole
+	 *            the sink for the episodes.
+	 * @return the number of episodes parsed.
+	 * @throws XMLStreamException
+	 *             if the response could not be parsed.
+	 * @throws IOException
+	 *             if the response could not be read.
+	 */
+	private static int streamParse (final InputStream input, final Blackhole blackhole)
+			throws XMLStreamException, IOException {
+		final EpisodeStreamParser parser = new EpisodeStreamParser();
+		parser.parse(input, new EpisodeHandler() {
+			@Override
+			public void handle (final Episode episode) {
+				blackhole.consume(episode);
+			}
+		});
+		return parser.getNbEpisodes();
+	}
+
+	/**
+	 * Parse the response in a DOM.
+	 * @return the document.
+	 * @throws SAXException
+	 *             if the response is not valid.
+	 * @throws IOException
+	 *             if the response could not be read.
+	 */
+	private Document parseDocument () throws SAXException, IOException {
+		return XmlParsers.parse(new ByteArrayInputStream(response));
+	}
+}
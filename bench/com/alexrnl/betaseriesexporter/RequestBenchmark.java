@@ -0,0 +1,82 @@
+package com.alexrnl.betaseriesexporter;
+
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Benchmarks of the preparation of the requests: formatting of the parameters, building of the
+ * URL and hashing of the password.
+ * @author Alex
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode({ Mode.Throughput, Mode.SampleTime })
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class RequestBenchmark {
+	private Map<String, String>	params;
+	private Map<String, String>	requestParams;
+	private QueryManager		api;
+	private String				password;
+
+	/**
+	 * Build the parameters of an episodes request.
+	 */
+	@Setup
+	public void setUp () {
+		BenchmarkData.disableLogging();
+		params = new HashMap<String, String>();
+		params.put(API.KEY_PARAM, API.KEY);
+		params.put(API.USER_AGENT_PARAM, API.USER_AGENT);
+		params.put(API.TOKEN, "0123456789abcdef0123456789abcdef");
+		params.put(API.VIEW, API.NEXT);
+		requestParams = new HashMap<String, String>();
+		requestParams.put(API.TOKEN, "0123456789abcdef0123456789abcdef");
+		requestParams.put(API.VIEW, API.NEXT);
+		final Map<String, String> compulsoryParams = new HashMap<String, String>();
+		compulsoryParams.put(API.KEY_PARAM, API.KEY);
+		compulsoryParams.put(API.USER_AGENT_PARAM, API.USER_AGENT);
+		api = new QueryManager(API.HOST, compulsoryParams);
+		password = "un mot de passe assez long";
+	}
+
+	/**
+	 * Format the parameters of the request.
+	 * @return the formatted parameters.
+	 */
+	@Benchmark
+	public String formatParams () {
+		return QueryManager.formatParamForRequest(params);
+	}
+
+	/**
+	 * Build the URL of an episodes request, the compulsory parameters being encoded once.
+	 * @return the URL.
+	 */
+	@Benchmark
+	public String buildUrl () {
+		return api.buildUrl(API.MEMBER_EPISODES, requestParams);
+	}
+
+	/**
+	 * Hash the password for the login request.
+	 * @return the hash of the password.
+	 */
+	@Benchmark
+	public String md5 () {
+		return ExportSession.getMD5(password);
+	}
+}
@@ -0,0 +1,300 @@
+package com.alexrnl.betaseriesexporter.load;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+import com.alexrnl.betaseriesexporter.Configuration;
+import com.alexrnl.betaseriesexporter.ExportSession;
+import com.alexrnl.betaseriesexporter.ExportStatus;
+import com.alexrnl.betaseriesexporter.Notifier;
+import com.alexrnl.betaseriesexporter.metrics.LatencyHistogram;
+
+/**
+ * Load test of the export sessions against a {@link MockApiServer}.<br />
+ * Each client runs its exports one after the other (login, export of the episodes, logout), in
+ * a new {@link ExportSession} each time; the clients run at the same time. The throughput and
+ * the percentiles of the duration of the exports are printed at the end. The test runs offline:
+ * the mock server is started on the loopback interface, unless another host is given.
+ * @author Alex
+ */
+public final class LoadDriver {
+	private static final Logger		APPLICATION_LOGGER	= Logger.getLogger("com.alexrnl.betaseriesexporter");
+
+	private static final double[]	PERCENTILES			= { 50, 95, 99 };
+	private static final double		MILLIS_PER_SECOND	= 1000.0;
+	private static final double		MICROS_PER_MILLI	= 1000.0;
+	private static final String		PASSWORD			= "password";
+
+	/** Notifier which drops the messages, the clients have no user */
+	private static final Notifier	SILENT				= new Notifier() {
+		@Override
+		public void info (final String title, final String message) {
+			// No user
+		}
+
+		@Override
+		public void error (final String title, final String message) {
+			// No user
+		}
+
+		@Override
+		public String ask (final String title, final String question) {
+			return null;
+		}
+	};
+
+	private int						nbClients			= 4;
+	private int						nbExports			= 25;
+	private int						nbEpisodes			= 100;
+	private int						latency				= 20;
+	private int						jitter				= 10;
+	private double					httpErrorRate;
+	private double					apiErrorRate;
+	private File					recorded;
+	private String					host;
+	private String					parser				= "stream";
+	private boolean					compression;
+	private boolean					verbose;
+
+	private final LatencyHistogram	durations			= new LatencyHistogram();
+	private final AtomicLongArray	results				= new AtomicLongArray(ExportStatus.values().length);
+
+	/**
+	 * Constructor #1.<br />
+	 */
+	private LoadDriver () {
+		super();
+	}
+
+	/**
+	 * Run the load test.
+	 * @param args
+	 *            the options of the test, see {@link #usage()}.
+	 * @throws IOException
+	 *             if the mock server could not be started.
+	 * @throws InterruptedException
+	 *             if the test is interrupted.
+	 */
+	public static void main (final String[] args) throws IOException, InterruptedException {
+		final LoadDriver driver = new LoadDriver();
+		try {
+			driver.parseArguments(args);
+		} catch (final IllegalArgumentException e) {
+			System.err.println(e.getMessage());
+			usage();
+			System.exit(ExportStatus.CONFIGURATION_ERROR.getExitCode());
+			return;
+		}
+		driver.run();
+	}
+
+	/**
+	 * Print the options of the test.
+	 */
+	private static void usage () {
+		System.err.println("Usage: LoadDriver [options]");
+		System.err.println("  --clients <n>        number of clients at the same time (4)");
+		System.err.println("  --exports <n>        number of exports of each client (25)");
+		System.err.println("  --episodes <n>       number of episodes of each response (100)");
+		System.err.println("  --latency <ms>       minimum latency of the responses (20)");
+		System.err.println("  --jitter <ms>        maximum random latency added (10)");
+		System.err.println("  --errors <rate>      rate of the HTTP 503 errors, between 0 and 1 (0)");
+		System.err.println("  --api-errors <rate>  rate of the errors of the API, between 0 and 1 (0)");
+		System.err.println("  --recorded <dir>     directory with the recorded responses to replay");
+		System.err.println("  --host <url>         test another server instead of the mock server");
+		System.err.println("  --parser <name>      parser of the responses, stream or dom (stream)");
+		System.err.println("  --gzip               compress the responses of the mock server");
+		System.err.println("  --verbose            keep the logs of the application");
+	}
+
+	/**
+	 * Read the options of the test.
+	 * @param args
+	 *            the options.
+	 * @throws IllegalArgumentException
+	 *             if an option is not valid.
+	 */
+	private void parseArguments (final String[] args) {
+		for (int index = 0; index < args.length; ++index) {
+			final String option = args[index];
+			if ("--verbose".equals(option)) {
+				verbose = true;
+				continue;
+			}
+			if ("--gzip".equals(option)) {
+				compression = true;
+				continue;
+			}
+			if (index + 1 >= args.length) {
+				throw new IllegalArgumentException("Missing value for " + option);
+			}
+			final String value = args[++index];
+			try {
+				if ("--clients".equals(option)) {
+					nbClients = Integer.parseInt(value);
+				} else if ("--exports".equals(option)) {
+					nbExports = Integer.parseInt(value);
+				} else if ("--episodes".equals(option)) {
+					nbEpisodes = Integer.parseInt(value);
+				} else if ("--latency".equals(option)) {
+					latency = Integer.parseInt(value);
+				} else if ("--jitter".equals(option)) {
+					jitter = Integer.parseInt(value);
+				} else if ("--errors".equals(option)) {
+					httpErrorRate = Double.parseDouble(value);
+				} else if ("--api-errors".equals(option)) {
+					apiErrorRate = Double.parseDouble(value);
+				} else if ("--recorded".equals(option)) {
+					recorded = new File(value);
+				} else if ("--host".equals(option)) {
+					host = value;
+				} else if ("--parser".equals(option)) {
+					parser = value;
+				} else {
+					throw new IllegalArgumentException("Unknown option " + option);
+				}
+			} catch (final NumberFormatException e) {
+				throw new IllegalArgumentException("Invalid value for " + option + ": " + value);
+			}
+		}
+		if (nbClients < 1 || nbExports < 1) {
+			throw new IllegalArgumentException("At least one client and one export are required");
+		}
+	}
+
+	/**
+	 * Run the clients and print the results.
+	 * @throws IOException
+	 *             if the mock server could not be started.
+	 * @throws InterruptedException
+	 *             if the test is interrupted.
+	 */
+	private void run () throws IOException, InterruptedException {
+		if (!verbose) {
+			// The failures are counted, the warnings of each session would flood the console
+			APPLICATION_LOGGER.setLevel(Level.OFF);
+		}
+		MockApiServer server = null;
+		if (host == null) {
+			server = new MockApiServer(0, nbClients);
+			server.setEpisodes(nbEpisodes);
+			server.setLatency(latency, jitter);
+			server.setHttpErrorRate(httpErrorRate);
+			server.setApiErrorRate(apiErrorRate);
+			server.setCompression(compression);
+			if (recorded != null) {
+				server.loadRecorded(recorded);
+			}
+			server.start();
+			host = server.getUrl();
+		}
+		final File outputDirectory = File.createTempFile("load", "");
+		if (!outputDirectory.delete() || !outputDirectory.mkdir()) {
+			throw new IOException("Cannot create the directory " + outputDirectory);
+		}
+
+		System.out.println("Load test on " + host + ": " + nbClients + " client(s), " + nbExports
+				+ " export(s) each, " + parser + " parser");
+		final CountDownLatch done = new CountDownLatch(nbClients);
+		final long start = System.nanoTime();
+		for (int client = 0; client < nbClients; ++client) {
+			final String login = "client" + client;
+			final File outputFile = new File(outputDirectory, login + ".txt");
+			final Thread thread = new Thread(new Runnable() {
+				@Override
+				public void run () {
+					try {
+						for (int export = 0; export < nbExports; ++export) {
+							runExport(login, outputFile);
+						}
+					} finally {
+						done.countDown();
+					}
+				}
+			}, login);
+			thread.start();
+		}
+		done.await();
+		final long elapsed = System.nanoTime() - start;
+		if (server != null) {
+			server.stop();
+		}
+		for (final File file : outputDirectory.listFiles()) {
+			file.delete();
+		}
+		outputDirectory.delete();
+		printResults(elapsed, server);
+	}
+
+	/**
+	 * Run one export of a client, in a new session.
+	 * @param login
+	 *            the login of the client.
+	 * @param outputFile
+	 *            the export file of the client.
+	 */
+	private void runExport (final String login, final File outputFile) {
+		final Configuration configuration = new Configuration();
+		configuration.setProperty("apiHost", host);
+		configuration.setProperty("outputFile", outputFile.getPath());
+		configuration.setProperty("formats", "text");
+		configuration.setProperty("parser", parser);
+		configuration.setProperty("dateFormat", "yyyy-MM-dd HH:mm");
+		// No cache, no limit: each export must reach the server
+		configuration.setProperty("rateLimit", "0");
+		configuration.setProperty("rateLimitPerToken", "0");
+		configuration.setProperty("circuitBreakerThreshold", "0");
+		configuration.setProperty("retryMaxAttempts.members/auth.xml", "1");
+
+		final long start = System.nanoTime();
+		final ExportSession session = new ExportSession(configuration, SILENT);
+		final String token = session.login(login, PASSWORD);
+		ExportStatus status = ExportStatus.LOGIN_ERROR;
+		if (token != null) {
+			status = session.export(token);
+			session.close(token);
+		}
+		durations.record(System.nanoTime() - start);
+		results.incrementAndGet(status.ordinal());
+	}
+
+	/**
+	 * Print the results of the test.
+	 * @param elapsed
+	 *            the duration of the test, in nanoseconds.
+	 * @param server
+	 *            the mock server, <code>null</code> if another server was tested.
+	 */
+	private void printResults (final long elapsed, final MockApiServer server) {
+		final double seconds = elapsed / (double) TimeUnit.SECONDS.toNanos(1);
+		final long nbRuns = durations.getCount();
+		System.out.println(String.format("%d export(s) in %.2f s: %.1f export(s)/s", nbRuns, seconds, nbRuns
+				/ seconds));
+		final StringBuilder latencies = new StringBuilder("Duration of the exports (ms):");
+		for (final double percentile : PERCENTILES) {
+			latencies.append(String.format(" p%.0f=%.1f", percentile, durations.getPercentile(percentile)
+					/ MICROS_PER_MILLI));
+		}
+		latencies.append(String.format(" max=%.1f mean=%.1f", durations.getMax() / MICROS_PER_MILLI,
+				durations.getTotal() / MICROS_PER_MILLI / Math.max(1, nbRuns)));
+		System.out.println(latencies);
+		final StringBuilder statuses = new StringBuilder("Results:");
+		for (final ExportStatus status : ExportStatus.values()) {
+			if (results.get(status.ordinal()) > 0) {
+				statuses.append(' ').append(status).append('=').append(results.get(status.ordinal()));
+			}
+		}
+		System.out.println(statuses);
+		if (server != null) {
+			System.out.println(String.format("Server: %d request(s), %.1f request(s)/s, %d HTTP error(s), %d API "
+					+ "error(s), %d byte(s) sent%s", server.getRequests(), server.getRequests() / seconds,
+					server.getHttpErrors(), server.getApiErrors(), server.getBytesSent(), compression ? " (gzip)" : ""));
+		}
+		System.out.println(String.format("Test duration: %.0f ms", seconds * MILLIS_PER_SECOND));
+	}
+}
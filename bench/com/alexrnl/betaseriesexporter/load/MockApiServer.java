@@ -0,0 +1,442 @@
+package com.alexrnl.betaseriesexporter.load;
+
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.HttpURLConnection;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.net.URLDecoder;
+import java.nio.charset.Charset;
+import java.nio.file.Files;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.WeakHashMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.logging.Logger;
+import java.util.zip.GZIPOutputStream;
+
+import com.alexrnl.betaseriesexporter.API;
+import com.alexrnl.betaseriesexporter.BenchmarkData;
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpHandler;
+import com.sun.net.httpserver.HttpServer;
+
+/**
+ * Local stand-in for the BetaSeries API, to test the application without the real service.<br />
+ * The server answers {@value API#LOGIN_PAGE}, {@value API#MEMBER_EPISODES},
+ * {@value API#LOGOUT_PAGE} and {@value API#TOKEN_CHECK_PAGE} with synthetic responses, or with
+ * the responses recorded in a directory (the file <code>members/episodes/all.xml</code> of the
+ * directory for the page {@value API#MEMBER_EPISODES}, for example). The latency of the
+ * responses, the rate of the HTTP and API errors, the number of episodes and the compression of
+ * the responses can be changed while the server runs.
+ * @author Alex
+ */
+public class MockApiServer {
+	private static Logger				lg					= Logger.getLogger(MockApiServer.class.getName());
+
+	/** The login refused by the server */
+	public static final String			INVALID_LOGIN		= "invalid";
+
+	private static final Charset		UTF_8				= Charset.forName("UTF-8");
+	private static final String			XML_HEADER			= "<?xml version=\"1.0\" encoding=\"UTF-8\"?>\n";
+	private static final String			NO_ERROR			= "<errors/>";
+	private static final byte[]			OK_RESPONSE			= (XML_HEADER + "<root><code>1</code>" + NO_ERROR
+																	+ "</root>").getBytes(UTF_8);
+	private static final String			LOGIN_ERROR_CODE	= "4003";
+	private static final String			SIMULATED_ERROR_CODE	= "1001";
+
+	private final HttpServer			server;
+	private final ExecutorService		executor;
+	private final Map<String, byte[]>	recorded;
+	private final AtomicLong			tokens;
+	private final AtomicLong			requests;
+	private final AtomicLong			httpErrors;
+	private final AtomicLong			apiErrors;
+	private final AtomicLong			bytesSent;
+	/** The compressed responses, by response (the arrays are compared by identity) */
+	private final Map<byte[], byte[]>	compressed;
+	private volatile byte[]				episodes;
+	private volatile int				latency;
+	private volatile int				latencyJitter;
+	private volatile double				httpErrorRate;
+	private volatile double				apiErrorRate;
+	private volatile boolean			compression;
+
+	/**
+	 * Constructor #1.<br />
+	 * Bind the server on the loopback interface; the server is not started.
+	 * @param port
+	 *            the port of the server, <code>0</code> for any free port.
+	 * @param nbThreads
+	 *            the number of requests handled at the same time.
+	 * @throws IOException
+	 *             if the server could not be bound to the port.
+	 */
+	public MockApiServer (final int port, final int nbThreads) throws IOException {
+		if (nbThreads < 1) {
+			throw new IllegalArgumentException("The server needs at least one thread: " + nbThreads);
+		}
+		this.server = HttpServer.create(new InetSocketAddress(InetAddress.getLoopbackAddress(), port), 0);
+		this.executor = Executors.newFixedThreadPool(nbThreads, new ThreadFactory() {
+			@Override
+			public Thread newThread (final Runnable runnable) {
+				final Thread thread = new Thread(runnable, "mock-api");
+				thread.setDaemon(true);
+				return thread;
+			}
+		});
+		this.recorded = new ConcurrentHashMap<String, byte[]>();
+		this.tokens = new AtomicLong();
+		this.requests = new AtomicLong();
+		this.httpErrors = new AtomicLong();
+		this.apiErrors = new AtomicLong();
+		this.bytesSent = new AtomicLong();
+		this.compressed = Collections.synchronizedMap(new WeakHashMap<byte[], byte[]>());
+		setEpisodes(BenchmarkData.createResponse(1));
+		server.setExecutor(executor);
+		server.createContext("/", new HttpHandler() {
+			@Override
+			public void handle (final HttpExchange exchange) throws IOException {
+				try {
+					serve(exchange);
+				} catch (final IOException e) {
+					lg.warning("Cannot answer " + exchange.getRequestURI() + " (" + e.getMessage() + ")");
+				} finally {
+					exchange.close();
+				}
+			}
+		});
+	}
+
+	/**
+	 * Start the server.
+	 */
+	public void start () {
+		server.start();
+		lg.info("Mock API listening on " + getUrl());
+	}
+
+	/**
+	 * Stop the server, without waiting for the requests in progress.
+	 */
+	public void stop () {
+		server.stop(0);
+		executor.shutdownNow();
+	}
+
+	/**
+	 * Return the URL of the server, to use as the host of the API.
+	 * @return the URL.
+	 */
+	public String getUrl () {
+		return "http://" + server.getAddress().getHostString() + ":" + server.getAddress().getPort();
+	}
+
+	/**
+	 * Answer the episodes requests with synthetic episodes.
+	 * @param nbEpisodes
+	 *            the number of episodes of the responses.
+	 */
+	public void setEpisodes (final int nbEpisodes) {
+		if (nbEpisodes < 0) {
+			throw new IllegalArgumentException("The number of episodes cannot be negative: " + nbEpisodes);
+		}
+		setEpisodes(BenchmarkData.createResponse(nbEpisodes));
+	}
+
+	/**
+	 * Answer the episodes requests with a response.
+	 * @param response
+	 *            the XML response.
+	 */
+	private void setEpisodes (final byte[] response) {
+		episodes = response;
+	}
+
+	/**
+	 * Replay the responses recorded in a directory.<br />
+	 * The response of a page is the file with the path of the page in the directory; the pages
+	 * without a file keep their synthetic response.
+	 * @param directory
+	 *            the directory with the responses.
+	 * @throws IOException
+	 *             if a response could not be read.
+	 */
+	public void loadRecorded (final File directory) throws IOException {
+		if (!directory.isDirectory()) {
+			throw new IOException(directory + " is not a directory");
+		}
+		for (final String page : new String[] { API.LOGIN_PAGE, API.MEMBER_EPISODES, API.LOGOUT_PAGE,
+				API.TOKEN_CHECK_PAGE }) {
+			final File response = new File(directory, page);
+			if (response.isFile()) {
+				recorded.put(page, Files.readAllBytes(response.toPath()));
+				lg.info("Replaying " + response + " for " + page);
+			}
+		}
+	}
+
+	/**
+	 * Delay the responses.
+	 * @param millis
+	 *            the minimum delay, in milliseconds.
+	 * @param jitter
+	 *            the maximum random delay added, in milliseconds.
+	 */
+	public void setLatency (final int millis, final int jitter) {
+		if (millis < 0 || jitter < 0) {
+			throw new IllegalArgumentException("The latency cannot be negative: " + millis + "+" + jitter);
+		}
+		latency = millis;
+		latencyJitter = jitter;
+	}
+
+	/**
+	 * Answer a part of the requests with an HTTP error <code>503</code>.
+	 * @param rate
+	 *            the rate of the errors, between 0 and 1.
+	 */
+	public void setHttpErrorRate (final double rate) {
+		httpErrorRate = checkRate(rate);
+	}
+
+	/**
+	 * Answer a part of the requests with an error of the API.
+	 * @param rate
+	 *            the rate of the errors, between 0 and 1.
+	 */
+	public void setApiErrorRate (final double rate) {
+		apiErrorRate = checkRate(rate);
+	}
+
+	/**
+	 * Compress the responses with gzip when the client accepts it.
+	 * @param compression
+	 *            <code>true</code> to compress the responses.
+	 */
+	public void setCompression (final boolean compression) {
+		this.compression = compression;
+	}
+
+	/**
+	 * Check a rate.
+	 * @param rate
+	 *            the rate.
+	 * @return the rate.
+	 * @throws IllegalArgumentException
+	 *             if the rate is not between 0 and 1.
+	 */
+	private static double checkRate (final double rate) {
+		if (rate < 0 || rate > 1) {
+			throw new IllegalArgumentException("The rate must be between 0 and 1: " + rate);
+		}
+		return rate;
+	}
+
+	/**
+	 * Return the number of requests received.
+	 * @return the number of requests.
+	 */
+	public long getRequests () {
+		return requests.get();
+	}
+
+	/**
+	 * Return the number of requests answered with an HTTP error.
+	 * @return the number of HTTP errors.
+	 */
+	public long getHttpErrors () {
+		return httpErrors.get();
+	}
+
+	/**
+	 * Return the number of requests answered with an error of the API.
+	 * @return the number of API errors.
+	 */
+	public long getApiErrors () {
+		return apiErrors.get();
+	}
+
+	/**
+	 * Return the number of bytes sent in the bodies of the responses, compressed or not.
+	 * @return the number of bytes.
+	 */
+	public long getBytesSent () {
+		return bytesSent.get();
+	}
+
+	/**
+	 * Answer a request.
+	 * @param exchange
+	 *            the request and its response.
+	 * @throws IOException
+	 *             if the response could not be sent.
+	 */
+	private void serve (final HttpExchange exchange) throws IOException {
+		requests.incrementAndGet();
+		final InputStream body = exchange.getRequestBody();
+		while (body.read() != -1) {
+			// Draining the request
+		}
+		final ThreadLocalRandom random = ThreadLocalRandom.current();
+		final int delay = latency + (latencyJitter > 0 ? random.nextInt(latencyJitter + 1) : 0);
+		if (delay > 0) {
+			try {
+				Thread.sleep(delay);
+			} catch (final InterruptedException e) {
+				Thread.currentThread().interrupt();
+				return;
+			}
+		}
+
+		final String page = exchange.getRequestURI().getPath().substring(1);
+		if (random.nextDouble() < httpErrorRate) {
+			httpErrors.incrementAndGet();
+			send(exchange, HttpURLConnection.HTTP_UNAVAILABLE, "Simulated error\n".getBytes(UTF_8));
+			return;
+		}
+		byte[] response = recorded.get(page);
+		if (response == null) {
+			response = createResponse(page, getParams(exchange.getRequestURI().getRawQuery()));
+		}
+		if (response == null) {
+			send(exchange, HttpURLConnection.HTTP_NOT_FOUND, ("Unknown page " + page + "\n").getBytes(UTF_8));
+			return;
+		}
+		if (random.nextDouble() < apiErrorRate) {
+			response = createError(SIMULATED_ERROR_CODE, "Erreur simule");
+		}
+		final String acceptEncoding = exchange.getRequestHeaders().getFirst("Accept-Encoding");
+		if (compression && acceptEncoding != null && acceptEncoding.contains("gzip")) {
+			exchange.getResponseHeaders().set("Content-Encoding", "gzip");
+			response = compress(response);
+		}
+		send(exchange, HttpURLConnection.HTTP_OK, response);
+	}
+
+	/**
+	 * Compress a response with gzip.<br />
+	 * The compressed responses are kept while the response is used, so the list of episodes is
+	 * compressed only once.
+	 * @param response
+	 *            the response.
+	 * @return the compressed response.
+	 * @throws IOException
+	 *             if the response could not be compressed.
+	 */
+	private byte[] compress (final byte[] response) throws IOException {
+		byte[] result = compressed.get(response);
+		if (result == null) {
+			final ByteArrayOutputStream output = new ByteArrayOutputStream();
+			final GZIPOutputStream gzip = new GZIPOutputStream(output);
+			gzip.write(response);
+			gzip.close();
+			result = output.toByteArray();
+			compressed.put(response, result);
+		}
+		return result;
+	}
+
+	/**
+	 * Create the synthetic response of a page.
+	 * @param page
+	 *            the page.
+	 * @param params
+	 *            the parameters of the request.
+	 * @return the response, <code>null</code> if the page is not simulated.
+	 */
+	private byte[] createResponse (final String page, final Map<String, String> params) {
+		if (API.LOGIN_PAGE.equals(page)) {
+			final String login = params.get(API.LOGIN);
+			if (login == null || login.isEmpty() || INVALID_LOGIN.equals(login) || !params.containsKey(API.PASSWORD)) {
+				return createError(LOGIN_ERROR_CODE, "Identifiant ou mot de passe incorrect.");
+			}
+			final String token = String.format("%032x", tokens.incrementAndGet());
+			return (XML_HEADER + "<root><code>1</code><member><login>" + escape(login) + "</login><token>" + token
+					+ "</token></member>" + NO_ERROR + "</root>").getBytes(UTF_8);
+		}
+		if (API.MEMBER_EPISODES.equals(page)) {
+			return episodes;
+		}
+		if (API.LOGOUT_PAGE.equals(page) || API.TOKEN_CHECK_PAGE.equals(page)) {
+			return OK_RESPONSE;
+		}
+		return null;
+	}
+
+	/**
+	 * Create a response with an error of the API.
+	 * @param code
+	 *            the code of the error.
+	 * @param content
+	 *            the message of the error.
+	 * @return the response.
+	 */
+	private byte[] createError (final String code, final String content) {
+		apiErrors.incrementAndGet();
+		return (XML_HEADER + "<root><code>0</code><errors><error><code>" + code + "</code><content>" + content
+				+ "</content></error></errors></root>").getBytes(UTF_8);
+	}
+
+	/**
+	 * Decode the parameters of a query.
+	 * @param query
+	 *            the raw query, may be <code>null</code>.
+	 * @return the parameters.
+	 * @throws IOException
+	 *             if the query is not valid.
+	 */
+	private static Map<String, String> getParams (final String query) throws IOException {
+		final Map<String, String> params = new HashMap<String, String>();
+		if (query == null) {
+			return params;
+		}
+		for (final String param : query.split("&")) {
+			final int separator = param.indexOf('=');
+			if (separator > 0) {
+				params.put(param.substring(0, separator), URLDecoder.decode(param.substring(separator + 1), "UTF-8"));
+			}
+		}
+		return params;
+	}
+
+	/**
+	 * Escape the XML special characters of a text.
+	 * @param text
+	 *            the text.
+	 * @return the escaped text.
+	 */
+	private static String escape (final String text) {
+		return text.replace("&", "&amp;").replace("<", "&lt;").replace(">", "&gt;");
+	}
+
+	/**
+	 * Send a response.
+	 * @param exchange
+	 *            the request and its response.
+	 * @param code
+	 *            the status code.
+	 * @param body
+	 *            the body of the response.
+	 * @throws IOException
+	 *             if the response could not be sent.
+	 */
+	private void send (final HttpExchange exchange, final int code, final byte[] body) throws IOException {
+		exchange.getResponseHeaders().set("Content-Type", code == HttpURLConnection.HTTP_OK
+				? "text/xml; charset=UTF-8" : "text/plain; charset=UTF-8");
+		exchange.sendResponseHeaders(code, body.length);
+		bytesSent.addAndGet(body.length);
+		final OutputStream output = exchange.getResponseBody();
+		output.write(body);
+		output.close();
+	}
+}
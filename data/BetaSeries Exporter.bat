@@ -1 +1 @@
-start javaw -Djava.util.logging.config.file=./conf/loggingClient.properties -Xmx30m -jar "BetaSeries Exporter.jar"
\ No newline at end of file
+start javaw -XX:+IgnoreUnrecognizedVMOptions -Xshare:auto -XX:SharedArchiveFile="BetaSeries Exporter.jsa" -Djava.util.logging.config.file=./conf/loggingClient.properties -Xmx30m -jar "BetaSeries Exporter.jar"
\ No newline at end of file
@@ -0,0 +1,4 @@
+#!/bin/sh
+# Export the episodes from the command line, without graphical interface.
+cd "$(dirname "$0")"
+exec java -XX:+IgnoreUnrecognizedVMOptions -Xshare:auto -XX:SharedArchiveFile="BetaSeries Exporter.jsa" -Djava.awt.headless=true -Djava.util.logging.config.file=./conf/loggingClient.properties -Xmx30m -cp "BetaSeries Exporter.jar" com.alexrnl.betaseriesexporter.CommandLine "$@"
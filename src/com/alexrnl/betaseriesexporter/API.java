@@ -34,7 +34,7 @@ public final class API {
 	public static final String	USER_AGENT_PARAM	= "user-agent";
 
 	/**
-	 * The host of the service
+	 * The host of the service, unless the <code>apiHost</code> of the configuration overrides it
 	 */
 	public static final String	HOST				= "https://api.betaseries.com";
 
@@ -53,6 +53,21 @@ public final class API {
 	 */
 	public static final String	LOGOUT_PAGE			= "members/destroy.xml";
 
+	/**
+	 * The method for checking if a token is still valid
+	 */
+	public static final String	TOKEN_CHECK_PAGE	= "members/is_active.xml";
+
+	/**
+	 * The method for retrieving the informations of a member, including his shows
+	 */
+	public static final String	MEMBER_INFOS		= "members/infos.xml";
+
+	/**
+	 * The method for retrieving all the episodes of a show (followed by the url of the show)
+	 */
+	public static final String	SHOW_EPISODES		= "shows/episodes/";
+
 	/**
 	 * The parameter for the login
 	 */
@@ -118,6 +133,21 @@ public final class API {
 	 */
 	public static final String	NEXT				= "next";
 
+	/**
+	 * The tag for the list of shows of a member
+	 */
+	public static final String	SHOWS				= "shows";
+
+	/**
+	 * The tag for the url of a show (and the parameter to filter by show)
+	 */
+	public static final String	URL					= "url";
+
+	/**
+	 * The tag which indicates if the episode has been watched
+	 */
+	public static final String	HAS_SEEN			= "has_seen";
+
 	/**
 	 * The tag name for the error content
 	 */
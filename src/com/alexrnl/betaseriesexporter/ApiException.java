@@ -0,0 +1,32 @@
+package com.alexrnl.betaseriesexporter;
+
+/**
+ * Exception thrown when the API answers a request with an error.<br />
+ * The message is the content of the error, as written by the API.
+ * @author Alex
+ */
+public class ApiException extends Exception {
+	private static final long	serialVersionUID	= 1L;
+
+	private final String		code;
+
+	/**
+	 * Constructor #1.<br />
+	 * @param code
+	 *            the code of the error.
+	 * @param message
+	 *            the content of the error.
+	 */
+	public ApiException (final String code, final String message) {
+		super(message);
+		this.code = code;
+	}
+
+	/**
+	 * Return the code of the error.
+	 * @return the code.
+	 */
+	public String getCode () {
+		return code;
+	}
+}
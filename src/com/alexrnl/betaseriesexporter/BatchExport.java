@@ -0,0 +1,403 @@
+package com.alexrnl.betaseriesexporter;
+
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.lang.reflect.Method;
+import java.util.ArrayList;
+import java.util.EnumMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Properties;
+import java.util.TreeMap;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.logging.Logger;
+
+import com.alexrnl.betaseriesexporter.transport.KeepAliveTransport;
+import com.alexrnl.betaseriesexporter.transport.RequestScheduler;
+
+/**
+ * Class which exports the episodes of several accounts at the same time.<br />
+ * Each account is exported by an independent task (login, export, logout) with its own
+ * {@link ExportSession}, on virtual threads when the JVM provides them, or else on a fixed pool of
+ * threads. The sessions share one transport and one rate limiter, so the limit of the API key
+ * holds for the whole batch, and the number of accounts exported at the same time is capped. The
+ * files of an account are the files of the configuration, suffixed with its login (e.g.
+ * <code>export-alice.txt</code>).
+ * @author Alex
+ */
+public class BatchExport {
+	private static Logger			lg					= Logger.getLogger(BatchExport.class.getName());
+
+	/** The default number of accounts exported at the same time */
+	public static final int			DEFAULT_CONCURRENCY	= 4;
+	/** The entries of the configuration with a file of each account */
+	private static final String[]	ACCOUNT_FILES		= { "outputFile", "snapshotFile", "tokenFile", "metricsFile" };
+	private static final String		NEW_LINE			= System.getProperty("line.separator");
+
+	private final Configuration		configuration;
+	private final Notifier			notifier;
+	private final int				concurrency;
+
+	/**
+	 * Constructor #1.<br />
+	 * @param configuration
+	 *            the configuration shared by the accounts.
+	 * @param notifier
+	 *            the notifier for the messages to the user.
+	 * @param concurrency
+	 *            the maximum number of accounts exported at the same time.
+	 * @throws IllegalArgumentException
+	 *             if the concurrency is not strictly positive.
+	 */
+	public BatchExport (final Configuration configuration, final Notifier notifier, final int concurrency) {
+		if (concurrency < 1) {
+			throw new IllegalArgumentException("Invalid number of accounts exported at the same time: "
+					+ concurrency);
+		}
+		this.configuration = configuration;
+		this.notifier = notifier;
+		this.concurrency = concurrency;
+	}
+
+	/**
+	 * Result of the export of an account.
+	 * @author Alex
+	 */
+	public static final class AccountResult {
+		private final String		login;
+		private final ExportStatus	status;
+		private final long			duration;
+		private final String		outputFile;
+
+		/**
+		 * Constructor #1.<br />
+		 * @param login
+		 *            the login of the account.
+		 * @param status
+		 *            the result of the export.
+		 * @param duration
+		 *            the duration of the export, in milliseconds.
+		 * @param outputFile
+		 *            the export file of the account.
+		 */
+		AccountResult (final String login, final ExportStatus status, final long duration, final String outputFile) {
+			this.login = login;
+			this.status = status;
+			this.duration = duration;
+			this.outputFile = outputFile;
+		}
+
+		/**
+		 * Return the login of the account.
+		 * @return the login.
+		 */
+		public String getLogin () {
+			return login;
+		}
+
+		/**
+		 * Return the result of the export.
+		 * @return the status of the export.
+		 */
+		public ExportStatus getStatus () {
+			return status;
+		}
+
+		/**
+		 * Return the duration of the export, from the login to the logout.
+		 * @return the duration, in milliseconds.
+		 */
+		public long getDuration () {
+			return duration;
+		}
+
+		/**
+		 * Return the export file of the account.
+		 * @return the name of the file.
+		 */
+		public String getOutputFile () {
+			return outputFile;
+		}
+
+		@Override
+		public String toString () {
+			return login + " : " + status + " (" + duration + " ms) -> " + outputFile;
+		}
+	}
+
+	/**
+	 * Notifier which prefixes the messages with the login of the account.
+	 * @author Alex
+	 */
+	private static class AccountNotifier implements Notifier {
+		private final Notifier	notifier;
+		private final String	prefix;
+
+		/**
+		 * Constructor #1.<br />
+		 * @param notifier
+		 *            the notifier of the batch.
+		 * @param login
+		 *            the login of the account.
+		 */
+		public AccountNotifier (final Notifier notifier, final String login) {
+			this.notifier = notifier;
+			this.prefix = "[" + login + "] ";
+		}
+
+		@Override
+		public void info (final String title, final String message) {
+			notifier.info(prefix + title, message);
+		}
+
+		@Override
+		public void error (final String title, final String message) {
+			notifier.error(prefix + title, message);
+		}
+
+		@Override
+		public String ask (final String title, final String question) {
+			return notifier.ask(prefix + title, question);
+		}
+	}
+
+	/**
+	 * Load the accounts of a properties file, whose keys are the logins and values the passwords.
+	 * @param file
+	 *            the file of the accounts.
+	 * @return the passwords of the accounts, sorted by login.
+	 * @throws IOException
+	 *             if the file could not be read.
+	 */
+	public static Map<String, String> loadAccounts (final File file) throws IOException {
+		final Properties properties = new Properties();
+		final InputStream input = new FileInputStream(file);
+		try {
+			properties.load(input);
+		} finally {
+			input.close();
+		}
+		final Map<String, String> accounts = new TreeMap<String, String>();
+		for (final String login : properties.stringPropertyNames()) {
+			if (!login.trim().isEmpty()) {
+				accounts.put(login.trim(), properties.getProperty(login));
+			}
+		}
+		return accounts;
+	}
+
+	/**
+	 * Export the episodes of the accounts and notify the summary of the batch.<br />
+	 * The method returns once every account has been exported.
+	 * @param accounts
+	 *            the passwords of the accounts, by login.
+	 * @return the results of the accounts, in the order of the map.
+	 * @throws InterruptedException
+	 *             if the thread was interrupted while waiting for the exports; the exports in
+	 *             progress are interrupted.
+	 */
+	public List<AccountResult> run (final Map<String, String> accounts) throws InterruptedException {
+		final long start = System.nanoTime();
+		final KeepAliveTransport transport = ExportSession.createTransport(configuration, concurrency);
+		final RequestScheduler scheduler = ExportSession.createScheduler(configuration);
+		final Semaphore permits = new Semaphore(concurrency);
+		final ExecutorService executor = createExecutor();
+		final List<Future<AccountResult>> futures = new ArrayList<Future<AccountResult>>(accounts.size());
+		final List<AccountResult> results = new ArrayList<AccountResult>(accounts.size());
+		lg.info("Exporting " + accounts.size() + " account(s), " + concurrency + " at the same time");
+		try {
+			for (final Map.Entry<String, String> account : accounts.entrySet()) {
+				futures.add(executor.submit(new Callable<AccountResult>() {
+					@Override
+					public AccountResult call () throws InterruptedException {
+						permits.acquire();
+						try {
+							return export(account.getKey(), account.getValue(), transport, scheduler);
+						} finally {
+							permits.release();
+						}
+					}
+				}));
+			}
+			for (final Future<AccountResult> future : futures) {
+				try {
+					results.add(future.get());
+				} catch (final ExecutionException e) {
+					// Cannot happen: the errors of an export are in its result
+					throw new IllegalStateException("Export of an account failed", e.getCause());
+				}
+			}
+		} finally {
+			executor.shutdownNow();
+			if (scheduler != null) {
+				lg.info("Request scheduler: " + scheduler);
+				scheduler.unregister();
+			}
+		}
+		lg.info("Transport statistics: " + transport.getStatistics());
+		notifier.info("Export par lot", getSummary(results, TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start)));
+		return results;
+	}
+
+	/**
+	 * Return the status of a batch.
+	 * @param results
+	 *            the results of the accounts.
+	 * @return the status of the first account whose export failed, {@link ExportStatus#SUCCESS} if
+	 *         every export succeeded.
+	 */
+	public static ExportStatus getStatus (final List<AccountResult> results) {
+		for (final AccountResult result : results) {
+			if (result.getStatus() != ExportStatus.SUCCESS) {
+				return result.getStatus();
+			}
+		}
+		return ExportStatus.SUCCESS;
+	}
+
+	/**
+	 * Build the summary of a batch for the user.
+	 * @param results
+	 *            the results of the accounts.
+	 * @param duration
+	 *            the duration of the batch, in milliseconds.
+	 * @return the summary.
+	 */
+	private String getSummary (final List<AccountResult> results, final long duration) {
+		final Map<ExportStatus, Integer> counts = new EnumMap<ExportStatus, Integer>(ExportStatus.class);
+		final StringBuilder summary = new StringBuilder();
+		summary.append(results.size()).append(" compte(s) en ").append(duration).append(" ms, ").append(concurrency)
+				.append("  la fois :");
+		for (final AccountResult result : results) {
+			summary.append(NEW_LINE).append("  ").append(result);
+			final Integer count = counts.get(result.getStatus());
+			counts.put(result.getStatus(), count == null ? 1 : count + 1);
+		}
+		summary.append(NEW_LINE).append("Rsultats :");
+		for (final Map.Entry<ExportStatus, Integer> count : counts.entrySet()) {
+			summary.append(' ').append(count.getKey()).append('=').append(count.getValue());
+		}
+		return summary.toString();
+	}
+
+	/**
+	 * Run the export of an account: login, export of the episodes and logout.
+	 * @param login
+	 *            the login of the account.
+	 * @param password
+	 *            the password of the account.
+	 * @param transport
+	 *            the transport shared by the accounts.
+	 * @param scheduler
+	 *            the rate limiter shared by the accounts, <code>null</code> if none.
+	 * @return the result of the export.
+	 */
+	private AccountResult export (final String login, final String password, final KeepAliveTransport transport,
+			final RequestScheduler scheduler) {
+		final long start = System.nanoTime();
+		final Configuration accountConfiguration = createConfiguration(login);
+		final Notifier accountNotifier = new AccountNotifier(notifier, login);
+		ExportStatus status;
+		try {
+			final ExportSession session = new ExportSession(accountConfiguration, accountNotifier, transport,
+					scheduler);
+			String token = null;
+			try {
+				token = session.getStoredToken(login);
+				if (token == null) {
+					token = CommandLine.login(session, accountNotifier, login, password);
+				}
+				if (token == null) {
+					status = ExportStatus.LOGIN_ERROR;
+				} else {
+					status = session.export(token);
+					if (status == ExportStatus.INVALID_TOKEN) {
+						token = CommandLine.login(session, accountNotifier, login, password);
+						status = token == null ? ExportStatus.LOGIN_ERROR : session.export(token);
+					}
+				}
+			} finally {
+				session.close(token);
+			}
+		} catch (final RuntimeException e) {
+			lg.severe("Export of " + login + " failed (" + e + ")");
+			status = ExportStatus.API_ERROR;
+		}
+		final long duration = TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start);
+		lg.info("Export of " + login + " ended with status " + status + " in " + duration + " ms");
+		return new AccountResult(login, status, duration, accountConfiguration.getProperty("outputFile"));
+	}
+
+	/**
+	 * Create the configuration of an account: the files of the configuration are suffixed with the
+	 * login of the account.
+	 * @param login
+	 *            the login of the account.
+	 * @return the configuration of the account.
+	 */
+	private Configuration createConfiguration (final String login) {
+		final Configuration accountConfiguration = new Configuration(configuration);
+		for (final String entry : ACCOUNT_FILES) {
+			final String file = configuration.getProperty(entry);
+			if (file != null && !file.isEmpty()) {
+				accountConfiguration.setProperty(entry, getAccountFile(file, login));
+			}
+		}
+		return accountConfiguration;
+	}
+
+	/**
+	 * Return the name of the file of an account.
+	 * @param file
+	 *            the name of the file in the configuration.
+	 * @param login
+	 *            the login of the account.
+	 * @return the name of the file, suffixed with the login before its extension.
+	 */
+	static String getAccountFile (final String file, final String login) {
+		final String suffix = "-" + login.replaceAll("[^\\w.@-]", "_");
+		final int directory = Math.max(file.lastIndexOf('/'), file.lastIndexOf(File.separatorChar));
+		final int extension = file.lastIndexOf('.');
+		if (extension <= directory + 1) {
+			return file + suffix;
+		}
+		return file.substring(0, extension) + suffix + file.substring(extension);
+	}
+
+	/**
+	 * Create the executor of the exports.<br />
+	 * The executor starts a virtual thread for each account when the JVM provides them (from
+	 * Java 21); it is looked up by reflection, as the application is built for older versions. The
+	 * exports otherwise run on a fixed pool of threads, of the size of the concurrency.
+	 * @return the executor.
+	 */
+	private ExecutorService createExecutor () {
+		try {
+			final Method factory = Executors.class.getMethod("newVirtualThreadPerTaskExecutor");
+			final ExecutorService executor = (ExecutorService) factory.invoke(null);
+			lg.info("Exporting the accounts on virtual threads");
+			return executor;
+		} catch (final ReflectiveOperationException e) {
+			lg.info("No virtual threads in this JVM, exporting the accounts on " + concurrency + " threads");
+		}
+		final AtomicInteger threadCount = new AtomicInteger();
+		return Executors.newFixedThreadPool(concurrency, new ThreadFactory() {
+			@Override
+			public Thread newThread (final Runnable runnable) {
+				final Thread thread = new Thread(runnable, "batch-export-" + threadCount.incrementAndGet());
+				thread.setDaemon(true);
+				return thread;
+			}
+		});
+	}
+}
@@ -0,0 +1,274 @@
+package com.alexrnl.betaseriesexporter;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+import org.w3c.dom.Document;
+import org.w3c.dom.Element;
+import org.w3c.dom.NodeList;
+
+/**
+ * Typed client of the BetaSeries API, built on a {@link QueryManager}.<br />
+ * Each method sends one request of the {@link API} and returns the records of the response
+ * ({@link Episode}, {@link Show}, token), so the callers never read the XML documents. A
+ * request which could not be sent throws an {@link IOException}; an error returned by the API
+ * throws an {@link ApiException}.
+ * @author Alex
+ */
+public class BetaSeriesClient {
+	private static Logger		lg	= Logger.getLogger(BetaSeriesClient.class.getName());
+
+	private final QueryManager	api;
+
+	/**
+	 * Constructor #1.<br />
+	 * @param api
+	 *            the query manager which sends the requests, with the compulsory parameters of
+	 *            the API.
+	 */
+	public BetaSeriesClient (final QueryManager api) {
+		this.api = api;
+	}
+
+	/**
+	 * Return the query manager which sends the requests.
+	 * @return the query manager.
+	 */
+	public QueryManager getQueryManager () {
+		return api;
+	}
+
+	/**
+	 * Login to an account.
+	 * @param login
+	 *            the login of the user.
+	 * @param passwordHash
+	 *            the MD5 hash of the password of the user.
+	 * @return the token of the session.
+	 * @throws IOException
+	 *             if the request failed.
+	 * @throws ApiException
+	 *             if the API refused the login, or did not return a token.
+	 */
+	public String login (final String login, final String passwordHash) throws IOException, ApiException {
+		final Map<String, String> params = new HashMap<String, String>();
+		params.put(API.LOGIN, login);
+		params.put(API.PASSWORD, passwordHash);
+		final Document doc = query(API.LOGIN_PAGE, params);
+		final String token = QueryManager.getTextValue(doc.getDocumentElement(), API.TOKEN);
+		if (token == null || token.isEmpty()) {
+			throw new ApiException(null, "No token in the response");
+		}
+		return token;
+	}
+
+	/**
+	 * Check if a token is still valid.
+	 * @param token
+	 *            the token to check.
+	 * @return <code>true</code> if the token can still be used.
+	 * @throws IOException
+	 *             if the request failed.
+	 */
+	public boolean isTokenValid (final String token) throws IOException {
+		try {
+			query(API.TOKEN_CHECK_PAGE, tokenParams(token));
+			return true;
+		} catch (final ApiException e) {
+			lg.info("Token refused (" + e.getMessage() + ")");
+			return false;
+		}
+	}
+
+	/**
+	 * Destroy a token.
+	 * @param token
+	 *            the token to destroy.
+	 * @throws IOException
+	 *             if the request failed.
+	 * @throws ApiException
+	 *             if the API refused to destroy the token.
+	 */
+	public void logout (final String token) throws IOException, ApiException {
+		query(API.LOGOUT_PAGE, tokenParams(token));
+	}
+
+	/**
+	 * Return the next episode to watch of each show of the user.
+	 * @param token
+	 *            the token of the user.
+	 * @return the episodes, in the order of the API.
+	 * @throws IOException
+	 *             if the request failed.
+	 * @throws ApiException
+	 *             if the API returned an error.
+	 */
+	public List<Episode> nextEpisodes (final String token) throws IOException, ApiException {
+		return parseEpisodes(query(API.MEMBER_EPISODES, nextEpisodesParams(token)));
+	}
+
+	/**
+	 * Open the response with the next episodes of the user, to parse it while it is read.<br />
+	 * The response is read from the cache of the query manager when possible. The caller is in
+	 * charge of closing the stream, and of recording the parsing in the metrics.
+	 * @param scope
+	 *            the scope of the response in the cache (the account of the user).
+	 * @param token
+	 *            the token of the user, <code>null</code> to read a fresh response of the cache.
+	 * @return the stream with the XML response of the API.
+	 * @throws IOException
+	 *             if the request failed.
+	 * @see QueryManager#openCachedStream(String, String, Map)
+	 */
+	public InputStream openNextEpisodes (final String scope, final String token) throws IOException {
+		return api.openCachedStream(scope, API.MEMBER_EPISODES, nextEpisodesParams(token));
+	}
+
+	/**
+	 * Check if the cache has a fresh response with the next episodes of the user.
+	 * @param scope
+	 *            the scope of the response in the cache (the account of the user).
+	 * @return <code>true</code> if the episodes can be read without any request to the API.
+	 */
+	public boolean hasFreshNextEpisodes (final String scope) {
+		return api.hasFreshResponse(scope, API.MEMBER_EPISODES, nextEpisodesParams(null));
+	}
+
+	/**
+	 * Return the shows followed by the user.
+	 * @param token
+	 *            the token of the user.
+	 * @return the shows, in the order of the account.
+	 * @throws IOException
+	 *             if the request failed.
+	 * @throws ApiException
+	 *             if the API returned an error.
+	 */
+	public List<Show> shows (final String token) throws IOException, ApiException {
+		final Document doc = query(API.MEMBER_INFOS, tokenParams(token));
+		final Element showList = (Element) doc.getElementsByTagName(API.SHOWS).item(0);
+		if (showList == null) {
+			return Collections.emptyList();
+		}
+		final NodeList nodes = showList.getElementsByTagName(API.SHOW);
+		final List<Show> shows = new ArrayList<Show>(nodes.getLength());
+		for (int index = 0; index < nodes.getLength(); ++index) {
+			final Element show = (Element) nodes.item(index);
+			final String url = QueryManager.getTextValue(show, API.URL);
+			if (url != null && !url.isEmpty()) {
+				shows.add(new Show(url, QueryManager.getTextValue(show, API.TITLE)));
+			}
+		}
+		return shows;
+	}
+
+	/**
+	 * Return the page of the request for the unwatched episodes of a show.
+	 * @param token
+	 *            the token of the user.
+	 * @param show
+	 *            the show.
+	 * @return the page to fetch.
+	 */
+	public static PagedEpisodeFetcher.Page unwatchedEpisodesPage (final String token, final Show show) {
+		final Map<String, String> params = tokenParams(token);
+		params.put(API.SHOW, show.getUrl());
+		return new PagedEpisodeFetcher.Page(API.MEMBER_EPISODES, params, null);
+	}
+
+	/**
+	 * Return the page of the request for all the episodes of a show.
+	 * @param token
+	 *            the token of the user.
+	 * @param show
+	 *            the show.
+	 * @return the page to fetch.
+	 */
+	public static PagedEpisodeFetcher.Page showEpisodesPage (final String token, final Show show) {
+		return new PagedEpisodeFetcher.Page(API.SHOW_EPISODES + show.getUrl() + ".xml", tokenParams(token),
+				show.getTitle());
+	}
+
+	/**
+	 * Send a request and check its response.
+	 * @param page
+	 *            the page to query.
+	 * @param params
+	 *            the parameters of the request.
+	 * @return the response, without error.
+	 * @throws IOException
+	 *             if the request failed.
+	 * @throws ApiException
+	 *             if the API returned an error.
+	 */
+	private Document query (final String page, final Map<String, String> params) throws IOException, ApiException {
+		final Document doc = api.query(page, params);
+		if (QueryManager.hasError(doc)) {
+			final Element errors = (Element) doc.getElementsByTagName(API.ERRORS).item(0);
+			final String content = errors == null ? null : QueryManager.getTextValue(errors, API.ERROR_CONTENT);
+			final String code = QueryManager.getErrorCode(doc);
+			throw new ApiException(code, content == null ? "Erreur de l'API (code " + code + ")" : content);
+		}
+		return doc;
+	}
+
+	/**
+	 * Build the parameters of a request of the user.
+	 * @param token
+	 *            the token of the user, <code>null</code> to build the parameters without token.
+	 * @return the parameters, which can be completed.
+	 */
+	private static Map<String, String> tokenParams (final String token) {
+		final Map<String, String> params = new HashMap<String, String>();
+		if (token != null) {
+			params.put(API.TOKEN, token);
+		}
+		return params;
+	}
+
+	/**
+	 * Build the parameters of the request for the next episodes of the user.
+	 * @param token
+	 *            the token of the user, <code>null</code> to build the parameters without token.
+	 * @return the parameters of the request.
+	 */
+	private static Map<String, String> nextEpisodesParams (final String token) {
+		final Map<String, String> params = tokenParams(token);
+		params.put(API.VIEW, API.NEXT);
+		return params;
+	}
+
+	/**
+	 * Create the list of the episodes of a response.
+	 * @param doc
+	 *            the response to read.
+	 * @return the episodes.
+	 */
+	static List<Episode> parseEpisodes (final Document doc) {
+		final NodeList nodes = doc.getElementsByTagName(API.EPISODE);
+		final List<Episode> episodes = new ArrayList<Episode>(nodes.getLength());
+		for (int index = 0; index < nodes.getLength(); ++index) {
+			final Element episode = (Element) nodes.item(index);
+			// Checking if the node is a 'real episode'
+			if (episode == null || !episode.hasChildNodes() || episode.getFirstChild().getNextSibling() == null) {
+				continue;
+			}
+			final Episode record = new Episode(QueryManager.getTextValue(episode, API.SHOW),
+					QueryManager.getTextValue(episode, API.NUMBER), QueryManager.getTextValue(episode,
+							API.GLOBAL_NUMBER), QueryManager.getTextValue(episode, API.TITLE));
+			if (lg.isLoggable(Level.FINE)) {
+				lg.log(Level.FINE, "Episode parsed: show={0}, number={1}, global={2}, title={3}", new Object[] {
+						record.getShow(), record.getNumber(), record.getGlobalNumber(), record.getTitle() });
+			}
+			episodes.add(record);
+		}
+		return episodes;
+	}
+}
@@ -0,0 +1,392 @@
+package com.alexrnl.betaseriesexporter;
+
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.List;
+import java.util.Map;
+import java.util.Properties;
+import java.util.concurrent.TimeUnit;
+import java.util.logging.Logger;
+
+import com.alexrnl.betaseriesexporter.export.TextExporter;
+
+/**
+ * Entry point of the application for the command line.<br />
+ * Runs the export without any graphical component, so it can be scheduled on a headless system.
+ * The credentials are read, by order of priority, from the arguments, from a credentials file
+ * or from the environment variables {@value #LOGIN_VARIABLE} and {@value #PASSWORD_VARIABLE}.
+ * The exit code of the program is the one of the {@link ExportStatus} of the export.
+ * @author Alex
+ */
+public final class CommandLine {
+	private static Logger		lg					= Logger.getLogger(CommandLine.class.getName());
+
+	/** The environment variable with the login of the user */
+	public static final String	LOGIN_VARIABLE		= "BETASERIES_LOGIN";
+	/** The environment variable with the password of the user */
+	public static final String	PASSWORD_VARIABLE	= "BETASERIES_PASSWORD";
+
+	private static final String	CONFIGURATION_FILE	= "conf/configuration.xml";
+	private static final long	MILLIS_PER_SECOND	= 1000L;
+	private static final String	USAGE				= "Usage: CommandLine [options]\n"
+			+ "  -c, --config <file>       configuration file (default: " + CONFIGURATION_FILE + ")\n"
+			+ "  -l, --login <login>       login of the BetaSeries account\n"
+			+ "  -p, --password <password> password of the BetaSeries account\n"
+			+ "  --credentials <file>      properties file with the 'login' and 'password' keys\n"
+			+ "  -o, --output <file>       export file (overrides the configuration)\n"
+			+ "  --parser <dom|stream>     parser used for the episodes (overrides the configuration)\n"
+			+ "  -f, --format <formats>    formats of the export, separated by commas: text, csv, json,\n"
+			+ "                            html, xml (overrides the configuration)\n"
+			+ "  -d, --daemon              keep running and refresh the export on the schedule of the\n"
+			+ "                            configuration, until the process is stopped\n"
+			+ "  --offline                 export the episodes of the snapshot file of the configuration,\n"
+			+ "                            without connecting to BetaSeries\n"
+			+ "  --host <url>              host of the API (overrides the configuration), e.g. a test server\n"
+			+ "  -b, --batch <file>        export the accounts of a properties file (login=password), each\n"
+			+ "                            in its own files, suffixed with the login\n"
+			+ "  --concurrency <n>         number of accounts exported at the same time in a batch\n"
+			+ "                            (overrides the configuration)\n"
+			+ "  -s, --search <query>      print the exported episodes matching the query: show:<prefix>,\n"
+			+ "                            a range of numbers (S02E03-S03E05, S02) and words of the title\n"
+			+ "  -h, --help                print this message\n"
+			+ "The credentials can also be set with the " + LOGIN_VARIABLE + " and " + PASSWORD_VARIABLE
+			+ " environment variables.";
+
+	/**
+	 * Constructor #1.<br />
+	 * Default constructor declared to avoid creating an instance of the class anywhere.
+	 */
+	private CommandLine () {
+	}
+
+	/**
+	 * Launcher of the command line.
+	 * @param args the arguments from the command line.
+	 */
+	public static void main (final String[] args) {
+		System.exit(run(args).getExitCode());
+	}
+
+	/**
+	 * Run the export with the arguments of the command line.
+	 * @param args the arguments from the command line.
+	 * @return the result of the export.
+	 */
+	public static ExportStatus run (final String[] args) {
+		lg.info("Starting command line");
+		System.setProperty("java.awt.headless", "true");
+		final Notifier notifier = new ConsoleNotifier();
+
+		String configurationFile = CONFIGURATION_FILE;
+		String login = null;
+		String password = null;
+		String credentialsFile = null;
+		String output = null;
+		String parser = null;
+		String formats = null;
+		boolean daemon = false;
+		boolean offline = false;
+		String query = null;
+		String host = null;
+		String batchFile = null;
+		String concurrency = null;
+		try {
+			for (int index = 0; index < args.length; ++index) {
+				final String arg = args[index];
+				if ("-h".equals(arg) || "--help".equals(arg)) {
+					System.out.println(USAGE);
+					return ExportStatus.SUCCESS;
+				} else if ("-c".equals(arg) || "--config".equals(arg)) {
+					configurationFile = args[++index];
+				} else if ("-l".equals(arg) || "--login".equals(arg)) {
+					login = args[++index];
+				} else if ("-p".equals(arg) || "--password".equals(arg)) {
+					password = args[++index];
+				} else if ("--credentials".equals(arg)) {
+					credentialsFile = args[++index];
+				} else if ("-o".equals(arg) || "--output".equals(arg)) {
+					output = args[++index];
+				} else if ("--parser".equals(arg)) {
+					parser = args[++index];
+				} else if ("--host".equals(arg)) {
+					host = args[++index];
+				} else if ("-b".equals(arg) || "--batch".equals(arg)) {
+					batchFile = args[++index];
+				} else if ("--concurrency".equals(arg)) {
+					concurrency = args[++index];
+				} else if ("-s".equals(arg) || "--search".equals(arg)) {
+					query = args[++index];
+				} else if ("--offline".equals(arg)) {
+					offline = true;
+				} else if ("-d".equals(arg) || "--daemon".equals(arg)) {
+					daemon = true;
+				} else if ("-f".equals(arg) || "--format".equals(arg)) {
+					formats = args[++index];
+				} else {
+					notifier.error("Argument inconnu", arg + "\n" + USAGE);
+					return ExportStatus.CONFIGURATION_ERROR;
+				}
+			}
+		} catch (final ArrayIndexOutOfBoundsException e) {
+			notifier.error("Argument incomplet", args[args.length - 1] + "\n" + USAGE);
+			return ExportStatus.CONFIGURATION_ERROR;
+		}
+
+		// Loading configuration
+		final Configuration configuration = new Configuration();
+		try {
+			configuration.load(configurationFile);
+		} catch (final IOException e) {
+			lg.warning("Could not load configuration (" + e.getMessage() + ")");
+		}
+		if (output != null) {
+			configuration.setProperty("outputFile", output);
+		}
+		if (parser != null) {
+			configuration.setProperty("parser", parser);
+		}
+		if (formats != null) {
+			configuration.setProperty("formats", formats);
+		}
+		if (host != null) {
+			configuration.setProperty("apiHost", host);
+		}
+		if (concurrency != null) {
+			configuration.setProperty("batchConcurrency", concurrency);
+		}
+		if (configuration.getProperty("outputFile") == null) {
+			notifier.error("Fichier d'export", "Aucun fichier d'export, utilisez l'option --output.");
+			return ExportStatus.CONFIGURATION_ERROR;
+		}
+
+		if (offline) {
+			final ExportSession session = new ExportSession(configuration, notifier);
+			session.setKeepIndex(query != null);
+			final ExportStatus status = search(session, notifier, query, session.exportFromSnapshot());
+			lg.info("Exiting command line with status " + status + " (offline)");
+			return status;
+		}
+
+		if (batchFile != null) {
+			return runBatch(configuration, notifier, batchFile);
+		}
+
+		// Retrieving the credentials
+		if (credentialsFile != null && (login == null || password == null)) {
+			final Properties credentials = new Properties();
+			try {
+				final InputStream input = new FileInputStream(credentialsFile);
+				try {
+					credentials.load(input);
+				} finally {
+					input.close();
+				}
+			} catch (final IOException e) {
+				notifier.error("Identifiants", "Le fichier " + credentialsFile + " n'a pas pu tre charg ("
+						+ e.getMessage() + ").");
+				return ExportStatus.CONFIGURATION_ERROR;
+			}
+			login = login == null ? credentials.getProperty(API.LOGIN) : login;
+			password = password == null ? credentials.getProperty(API.PASSWORD) : password;
+		}
+		login = login == null ? System.getenv(LOGIN_VARIABLE) : login;
+		password = password == null ? System.getenv(PASSWORD_VARIABLE) : password;
+		if (login == null || login.isEmpty()) {
+			notifier.error("Identifiants", "Le compte doit tre renseign.\n" + USAGE);
+			return ExportStatus.CONFIGURATION_ERROR;
+		}
+
+		final ExportSession session = new ExportSession(configuration, notifier);
+		if (daemon) {
+			return runDaemon(session, notifier, configuration, login, password);
+		}
+		session.setKeepIndex(query != null);
+		// The session is closed on every path, so the metrics are always written
+		String token = null;
+		try {
+			final ExportStatus cachedStatus = session.exportFromCache(login);
+			if (cachedStatus != null) {
+				lg.info("Exiting command line with status " + cachedStatus + " (from cache)");
+				return search(session, notifier, query, cachedStatus);
+			}
+
+			token = session.getStoredToken(login);
+			if (token == null) {
+				token = login(session, notifier, login, password);
+				if (token == null) {
+					return ExportStatus.LOGIN_ERROR;
+				}
+			}
+
+			ExportStatus status = session.export(token);
+			if (status == ExportStatus.INVALID_TOKEN) {
+				token = login(session, notifier, login, password);
+				if (token == null) {
+					return ExportStatus.LOGIN_ERROR;
+				}
+				status = session.export(token);
+			}
+			status = search(session, notifier, query, status);
+			lg.info("Exiting command line with status " + status);
+			return status;
+		} finally {
+			session.close(token);
+			lg.info("Transport statistics: " + session.getQueryManager().getTransport().getStatistics());
+		}
+	}
+
+	/**
+	 * Print the exported episodes matching a query.
+	 * @param session the session of the export.
+	 * @param notifier the notifier for the errors.
+	 * @param query the query, <code>null</code> if no search was asked.
+	 * @param status the result of the export.
+	 * @return the result of the export, or {@link ExportStatus#CONFIGURATION_ERROR} if the query
+	 *         is not valid.
+	 */
+	private static ExportStatus search (final ExportSession session, final Notifier notifier, final String query,
+			final ExportStatus status) {
+		final EpisodeIndex index = session.getIndex();
+		if (query == null || index == null) {
+			return status;
+		}
+		try {
+			final long start = System.nanoTime();
+			final List<Episode> episodes = index.search(query);
+			for (final Episode episode : episodes) {
+				System.out.println(episode);
+			}
+			lg.info("Found " + episodes.size() + " of " + index.size() + " episodes in "
+					+ TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start) + " ms");
+		} catch (final IllegalArgumentException e) {
+			notifier.error("Recherche", e.getMessage());
+			return ExportStatus.CONFIGURATION_ERROR;
+		}
+		return status;
+	}
+
+	/**
+	 * Run the export as a daemon, until the process is stopped (e.g. by a <code>SIGTERM</code>).<br />
+	 * If a <code>serverPort</code> is set in the configuration, the last export is also served
+	 * by a local {@link ExportServer}.
+	 * @param session the session of the export.
+	 * @param notifier the notifier for the errors.
+	 * @param configuration the configuration of the application.
+	 * @param login the login of the user.
+	 * @param password the password of the user.
+	 * @return the result of the last export.
+	 */
+	private static ExportStatus runDaemon (final ExportSession session, final Notifier notifier,
+			final Configuration configuration, final String login, final String password) {
+		final ExportDaemon daemon;
+		try {
+			daemon = new ExportDaemon(session, notifier, login, password,
+					configuration.getIntProperty("daemonInterval", ExportDaemon.DEFAULT_INTERVAL) * MILLIS_PER_SECOND,
+					configuration.getIntProperty("daemonJitter", ExportDaemon.DEFAULT_JITTER) * MILLIS_PER_SECOND);
+		} catch (final IllegalArgumentException e) {
+			notifier.error("Planification", e.getMessage());
+			return ExportStatus.CONFIGURATION_ERROR;
+		}
+
+		// The server for the last export
+		final int serverPort = configuration.getIntProperty("serverPort", 0);
+		ExportServer exportServer = null;
+		if (serverPort > 0) {
+			final String formats = configuration.getProperty("formats");
+			try {
+				exportServer = new ExportServer(session, serverPort,
+						formats == null || formats.isEmpty() ? TextExporter.FORMAT : formats.split(",")[0].trim());
+			} catch (final IOException e) {
+				notifier.error("Serveur", "Le port " + serverPort + " n'a pas pu tre ouvert (" + e.getMessage() + ").");
+				return ExportStatus.CONFIGURATION_ERROR;
+			}
+			session.setKeepSnapshot(true);
+			session.loadSnapshot();
+			exportServer.start();
+		}
+		final ExportServer server = exportServer;
+
+		Runtime.getRuntime().addShutdownHook(new Thread("export-shutdown") {
+			@Override
+			public void run () {
+				if (server != null) {
+					server.stop();
+				}
+				daemon.stop();
+			}
+		});
+		daemon.start();
+		try {
+			final ExportStatus status = daemon.awaitStop();
+			lg.info("Exiting daemon with status " + status);
+			return status == null ? ExportStatus.SUCCESS : status;
+		} catch (final InterruptedException e) {
+			Thread.currentThread().interrupt();
+			daemon.stop();
+			return ExportStatus.SUCCESS;
+		}
+	}
+
+	/**
+	 * Export the accounts of a file, see {@link BatchExport}.
+	 * @param configuration the configuration of the application.
+	 * @param notifier the notifier for the errors and the summary.
+	 * @param batchFile the properties file of the accounts.
+	 * @return the result of the first export which failed, {@link ExportStatus#SUCCESS} if every
+	 *         export succeeded.
+	 */
+	private static ExportStatus runBatch (final Configuration configuration, final Notifier notifier,
+			final String batchFile) {
+		final BatchExport batch;
+		final Map<String, String> accounts;
+		try {
+			batch = new BatchExport(configuration, notifier,
+					configuration.getIntProperty("batchConcurrency", BatchExport.DEFAULT_CONCURRENCY));
+			accounts = BatchExport.loadAccounts(new File(batchFile));
+		} catch (final IllegalArgumentException e) {
+			notifier.error("Export par lot", e.getMessage());
+			return ExportStatus.CONFIGURATION_ERROR;
+		} catch (final IOException e) {
+			notifier.error("Export par lot", "Le fichier " + batchFile + " n'a pas pu tre charg (" + e.getMessage()
+					+ ").");
+			return ExportStatus.CONFIGURATION_ERROR;
+		}
+		if (accounts.isEmpty()) {
+			notifier.error("Export par lot", "Aucun compte dans le fichier " + batchFile + ".");
+			return ExportStatus.CONFIGURATION_ERROR;
+		}
+		try {
+			final ExportStatus status = BatchExport.getStatus(batch.run(accounts));
+			lg.info("Exiting batch with status " + status);
+			return status;
+		} catch (final InterruptedException e) {
+			Thread.currentThread().interrupt();
+			lg.warning("Batch interrupted");
+			return ExportStatus.API_ERROR;
+		}
+	}
+
+	/**
+	 * Login to the BetaSeries account.
+	 * @param session the session of the export.
+	 * @param notifier the notifier for the errors.
+	 * @param login the login of the user.
+	 * @param password the password of the user.
+	 * @return the token of the user, <code>null</code> if the login failed.
+	 */
+	static String login (final ExportSession session, final Notifier notifier, final String login,
+			final String password) {
+		if (password == null || password.isEmpty()) {
+			notifier.error("Identifiants", "Le mot de passe doit tre renseign.\n" + USAGE);
+			return null;
+		}
+		final String token = session.login(login, password);
+		if (token == null || token.isEmpty()) {
+			notifier.error("Erreur de connection", "chec de connection  BetaSeries, vrifiez vos identifiants.");
+			return null;
+		}
+		return token;
+	}
+}
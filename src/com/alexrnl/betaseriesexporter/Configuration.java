@@ -0,0 +1,104 @@
+package com.alexrnl.betaseriesexporter;
+
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.Properties;
+import java.util.logging.Logger;
+
+/**
+ * Class which holds the configuration of the application.<br />
+ * The configuration is stored in a XML properties file.
+ * @author Alex
+ */
+public class Configuration {
+	private static Logger		lg	= Logger.getLogger(Configuration.class.getName());
+
+	private final Properties	properties;
+
+	/**
+	 * Constructor #1.<br />
+	 * Build an empty configuration.
+	 */
+	public Configuration () {
+		properties = new Properties();
+	}
+
+	/**
+	 * Constructor #2.<br />
+	 * Build a copy of a configuration, whose properties can then be changed without changing the
+	 * original.
+	 * @param configuration
+	 *            the configuration to copy.
+	 */
+	public Configuration (final Configuration configuration) {
+		this();
+		properties.putAll(configuration.properties);
+	}
+
+	/**
+	 * Load the properties of the file in the configuration.
+	 * @param file
+	 *            the path to the XML properties file.
+	 * @throws IOException
+	 *             if the file could not be read.
+	 */
+	public void load (final String file) throws IOException {
+		final InputStream input = new FileInputStream(file);
+		try {
+			properties.loadFromXML(input);
+		} finally {
+			input.close();
+		}
+	}
+
+	/**
+	 * Check if the configuration contains any property.
+	 * @return <code>true</code> if no property has been loaded.
+	 */
+	public boolean isEmpty () {
+		return properties.isEmpty();
+	}
+
+	/**
+	 * Get the value of a property.
+	 * @param property
+	 *            the name of the property to retrieve.
+	 * @return the value of the property, <code>null</code> if it is not set.
+	 */
+	public String getProperty (final String property) {
+		return properties.getProperty(property);
+	}
+
+	/**
+	 * Get the integer value of a property.
+	 * @param property
+	 *            the name of the property to retrieve.
+	 * @param defaultValue
+	 *            the value to use if the property is not set or not a number.
+	 * @return the value of the property.
+	 */
+	public int getIntProperty (final String property, final int defaultValue) {
+		final String value = getProperty(property);
+		if (value == null) {
+			return defaultValue;
+		}
+		try {
+			return Integer.parseInt(value.trim());
+		} catch (final NumberFormatException e) {
+			lg.warning("Could not parse value of property " + property + " (" + e.getMessage() + ").");
+			return defaultValue;
+		}
+	}
+
+	/**
+	 * Set the value of a property, overriding the value of the file.
+	 * @param property
+	 *            the name of the property.
+	 * @param value
+	 *            the value of the property.
+	 */
+	public void setProperty (final String property, final String value) {
+		properties.setProperty(property, value);
+	}
+}
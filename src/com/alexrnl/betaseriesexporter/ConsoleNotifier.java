@@ -0,0 +1,52 @@
+package com.alexrnl.betaseriesexporter;
+
+import java.io.PrintStream;
+
+/**
+ * Notifier which prints the messages on the console.<br />
+ * Does not use any graphical component, so it can be used on a headless system.
+ * @author Alex
+ */
+public class ConsoleNotifier implements Notifier {
+	private final PrintStream	out;
+	private final PrintStream	err;
+
+	/**
+	 * Constructor #1.<br />
+	 * Build a notifier which prints on the standard output and error streams.
+	 */
+	public ConsoleNotifier () {
+		this(System.out, System.err);
+	}
+
+	/**
+	 * Constructor #2.<br />
+	 * @param out
+	 *            the stream for the information messages.
+	 * @param err
+	 *            the stream for the error messages.
+	 */
+	public ConsoleNotifier (final PrintStream out, final PrintStream err) {
+		this.out = out;
+		this.err = err;
+	}
+
+	@Override
+	public void info (final String title, final String message) {
+		out.println(title + ": " + message);
+	}
+
+	@Override
+	public void error (final String title, final String message) {
+		err.println(title + ": " + message);
+	}
+
+	/**
+	 * No question can be asked without interaction: always answers <code>null</code>.
+	 */
+	@Override
+	public String ask (final String title, final String question) {
+		err.println(title + ": " + question);
+		return null;
+	}
+}
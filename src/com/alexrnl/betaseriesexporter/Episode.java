@@ -0,0 +1,117 @@
+package com.alexrnl.betaseriesexporter;
+
+/**
+ * Class which represents an episode returned by the API.<br />
+ * Instances are immutable.
+ * @author Alex
+ */
+public final class Episode {
+	private final String	show;
+	private final String	number;
+	private final String	globalNumber;
+	private final String	title;
+
+	/**
+	 * Constructor #1.<br />
+	 * Build an episode with the values read from the API.
+	 * @param show
+	 *            the name of the show.
+	 * @param number
+	 *            the number of the episode (SxxExx).
+	 * @param globalNumber
+	 *            the global number of the episode in the show.
+	 * @param title
+	 *            the title of the episode, may be <code>null</code> or empty.
+	 */
+	public Episode (final String show, final String number, final String globalNumber, final String title) {
+		this.show = show;
+		this.number = number;
+		this.globalNumber = globalNumber;
+		this.title = title == null ? "" : title;
+	}
+
+	/**
+	 * Return the name of the show.
+	 * @return the show.
+	 */
+	public String getShow () {
+		return show;
+	}
+
+	/**
+	 * Return the number of the episode (SxxExx).
+	 * @return the number.
+	 */
+	public String getNumber () {
+		return number;
+	}
+
+	/**
+	 * Return the global number of the episode in the show.
+	 * @return the global number.
+	 */
+	public String getGlobalNumber () {
+		return globalNumber;
+	}
+
+	/**
+	 * Return the title of the episode.
+	 * @return the title, or an empty string if the episode has no title.
+	 */
+	public String getTitle () {
+		return title;
+	}
+
+	/**
+	 * Return the key which identifies the episode in a list: its show and its global number.
+	 * @return the key of the episode.
+	 */
+	public String getKey () {
+		return show + "#" + globalNumber;
+	}
+
+	@Override
+	public int hashCode () {
+		final int prime = 31;
+		int result = 1;
+		result = prime * result + (show == null ? 0 : show.hashCode());
+		result = prime * result + (number == null ? 0 : number.hashCode());
+		result = prime * result + (globalNumber == null ? 0 : globalNumber.hashCode());
+		result = prime * result + title.hashCode();
+		return result;
+	}
+
+	@Override
+	public boolean equals (final Object obj) {
+		if (this == obj) {
+			return true;
+		}
+		if (!(obj instanceof Episode)) {
+			return false;
+		}
+		final Episode other = (Episode) obj;
+		return equals(show, other.show) && equals(number, other.number)
+				&& equals(globalNumber, other.globalNumber) && title.equals(other.title);
+	}
+
+	/**
+	 * Check if two values, which may be <code>null</code>, are equal.
+	 * @param first
+	 *            the first value.
+	 * @param second
+	 *            the second value.
+	 * @return <code>true</code> if the values are equal.
+	 */
+	private static boolean equals (final String first, final String second) {
+		return first == null ? second == null : first.equals(second);
+	}
+
+	/**
+	 * Return the line used to display the episode in the export.<br />
+	 * Format: <code>show #global SxxExx - title</code>
+	 */
+	@Override
+	public String toString () {
+		return show + " #" + globalNumber + " " + number + (title.isEmpty() ? "" : " - " + title);
+	}
+}
@@ -0,0 +1,280 @@
+package com.alexrnl.betaseriesexporter;
+
+import java.io.BufferedReader;
+import java.io.BufferedWriter;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.nio.charset.Charset;
+import java.text.SimpleDateFormat;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.Date;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+import com.alexrnl.betaseriesexporter.export.AtomicFileWriter;
+
+/**
+ * Class which holds the differences between two lists of episodes.<br />
+ * The episodes are identified by their {@link Episode#getKey() key}: an episode with the same key
+ * but different values is considered changed.<br />
+ * Also reads and writes the state of the last export, and the changelog of the exports, as
+ * tab-separated files. A missing value is written <code>\N</code>, so it is not confused with an
+ * empty value.
+ * @author Alex
+ */
+public final class EpisodeDelta {
+	private static final Charset	CHARSET			= Charset.forName("UTF-8");
+	private static final String		DATE_FORMAT		= "yyyy-MM-dd'T'HH:mm:ssZ";
+	private static final String		ADDED			= "added";
+	private static final String		REMOVED			= "removed";
+	private static final String		CHANGED			= "changed";
+	private static final int		NB_FIELDS		= 4;
+	private static final String		NULL_VALUE		= "\\N";
+
+	private final List<Episode>		added;
+	private final List<Episode>		removed;
+	private final List<Episode>		changed;
+
+	/**
+	 * Constructor #1.<br />
+	 * @param added
+	 *            the episodes added.
+	 * @param removed
+	 *            the episodes removed.
+	 * @param changed
+	 *            the new values of the episodes changed.
+	 */
+	private EpisodeDelta (final List<Episode> added, final List<Episode> removed, final List<Episode> changed) {
+		this.added = Collections.unmodifiableList(added);
+		this.removed = Collections.unmodifiableList(removed);
+		this.changed = Collections.unmodifiableList(changed);
+	}
+
+	/**
+	 * Compute the differences between the previous and the current list of episodes.
+	 * @param previous
+	 *            the episodes of the last export.
+	 * @param current
+	 *            the episodes returned by the API.
+	 * @return the differences between the lists.
+	 */
+	public static EpisodeDelta compute (final Collection<Episode> previous, final Collection<Episode> current) {
+		final Map<String, Episode> previousByKey = new LinkedHashMap<String, Episode>();
+		for (final Episode episode : previous) {
+			previousByKey.put(episode.getKey(), episode);
+		}
+
+		final List<Episode> added = new ArrayList<Episode>();
+		final List<Episode> changed = new ArrayList<Episode>();
+		for (final Episode episode : current) {
+			final Episode previousEpisode = previousByKey.remove(episode.getKey());
+			if (previousEpisode == null) {
+				added.add(episode);
+			} else if (!previousEpisode.equals(episode)) {
+				changed.add(episode);
+			}
+		}
+		return new EpisodeDelta(added, new ArrayList<Episode>(previousByKey.values()), changed);
+	}
+
+	/**
+	 * Check if the lists are identical.
+	 * @return <code>true</code> if no episode was added, removed or changed.
+	 */
+	public boolean isEmpty () {
+		return added.isEmpty() && removed.isEmpty() && changed.isEmpty();
+	}
+
+	/**
+	 * Return the episodes added.
+	 * @return the episodes added.
+	 */
+	public List<Episode> getAdded () {
+		return added;
+	}
+
+	/**
+	 * Return the episodes removed.
+	 * @return the episodes removed.
+	 */
+	public List<Episode> getRemoved () {
+		return removed;
+	}
+
+	/**
+	 * Return the new values of the episodes changed.
+	 * @return the episodes changed.
+	 */
+	public List<Episode> getChanged () {
+		return changed;
+	}
+
+	@Override
+	public String toString () {
+		return "added=" + added.size() + "; removed=" + removed.size() + "; changed=" + changed.size();
+	}
+
+	/**
+	 * Append the differences to the changelog.<br />
+	 * Each line has the date, the action (<code>added</code>, <code>removed</code> or
+	 * <code>changed</code>), the show, the number, the global number and the title of an episode,
+	 * separated by tabs.
+	 * @param changelog
+	 *            the changelog file.
+	 * @param date
+	 *            the date of the export.
+	 * @throws IOException
+	 *             if the file could not be written.
+	 */
+	public void appendTo (final File changelog, final Date date) throws IOException {
+		final String prefix = new SimpleDateFormat(DATE_FORMAT).format(date) + "\t";
+		final Writer writer = new BufferedWriter(new OutputStreamWriter(new FileOutputStream(changelog, true), CHARSET));
+		try {
+			writeEpisodes(writer, prefix + ADDED + "\t", added);
+			writeEpisodes(writer, prefix + REMOVED + "\t", removed);
+			writeEpisodes(writer, prefix + CHANGED + "\t", changed);
+		} finally {
+			writer.close();
+		}
+	}
+
+	/**
+	 * Load the episodes of the last export.
+	 * @param state
+	 *            the state file of the last export.
+	 * @return the episodes, an empty list if there is no state file.
+	 * @throws IOException
+	 *             if the file could not be read.
+	 */
+	public static List<Episode> loadState (final File state) throws IOException {
+		final List<Episode> episodes = new ArrayList<Episode>();
+		if (!state.isFile()) {
+			return episodes;
+		}
+		final BufferedReader reader = new BufferedReader(new InputStreamReader(new FileInputStream(state), CHARSET));
+		try {
+			String line;
+			while ((line = reader.readLine()) != null) {
+				final String[] fields = line.split("\t", -1);
+				if (fields.length != NB_FIELDS) {
+					throw new IOException("Invalid line in state file: " + line);
+				}
+				episodes.add(new Episode(unescape(fields[0]), unescape(fields[1]), unescape(fields[2]),
+						unescape(fields[3])));
+			}
+		} finally {
+			reader.close();
+		}
+		return episodes;
+	}
+
+	/**
+	 * Save the episodes of the current export.<br />
+	 * The state file is replaced atomically, so an interrupted export keeps the previous state.
+	 * @param state
+	 *            the state file.
+	 * @param episodes
+	 *            the episodes exported.
+	 * @throws IOException
+	 *             if the file could not be written.
+	 */
+	public static void saveState (final File state, final Collection<Episode> episodes) throws IOException {
+		final AtomicFileWriter writer = new AtomicFileWriter(state, CHARSET);
+		boolean written = false;
+		try {
+			writeEpisodes(writer, "", episodes);
+			writer.close();
+			written = true;
+		} finally {
+			if (!written) {
+				writer.abort();
+			}
+		}
+	}
+
+	/**
+	 * Write the episodes, one per line.
+	 * @param writer
+	 *            the writer.
+	 * @param prefix
+	 *            the prefix of each line.
+	 * @param episodes
+	 *            the episodes to write.
+	 * @throws IOException
+	 *             if the episodes could not be written.
+	 */
+	private static void writeEpisodes (final Writer writer, final String prefix, final Collection<Episode> episodes)
+			throws IOException {
+		for (final Episode episode : episodes) {
+			writer.write(prefix);
+			writer.write(escape(episode.getShow()));
+			writer.write('\t');
+			writer.write(escape(episode.getNumber()));
+			writer.write('\t');
+			writer.write(escape(episode.getGlobalNumber()));
+			writer.write('\t');
+			writer.write(escape(episode.getTitle()));
+			writer.write('\n');
+		}
+	}
+
+	/**
+	 * Escape the backslashes, tabs and line breaks of a value.
+	 * @param value
+	 *            the value, may be <code>null</code>.
+	 * @return the escaped value, {@value #NULL_VALUE} for a <code>null</code> value.
+	 */
+	private static String escape (final String value) {
+		if (value == null) {
+			return NULL_VALUE;
+		}
+		return value.replace("\\", "\\\\").replace("\t", "\\t").replace("\n", "\\n").replace("\r", "\\r");
+	}
+
+	/**
+	 * Revert the escaping of {@link #escape(String)}.
+	 * @param value
+	 *            the escaped value.
+	 * @return the original value.
+	 */
+	private static String unescape (final String value) {
+		if (NULL_VALUE.equals(value)) {
+			return null;
+		}
+		if (value.indexOf('\\') < 0) {
+			return value;
+		}
+		final StringBuilder result = new StringBuilder(value.length());
+		for (int index = 0; index < value.length(); ++index) {
+			final char current = value.charAt(index);
+			if (current != '\\' || index == value.length() - 1) {
+				result.append(current);
+				continue;
+			}
+			final char next = value.charAt(++index);
+			switch (next) {
+				case 't':
+					result.append('\t');
+					break;
+				case 'n':
+					result.append('\n');
+					break;
+				case 'r':
+					result.append('\r');
+					break;
+				default:
+					result.append(next);
+					break;
+			}
+		}
+		return result.toString();
+	}
+}
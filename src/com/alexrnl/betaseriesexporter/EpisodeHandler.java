@@ -0,0 +1,20 @@
+package com.alexrnl.betaseriesexporter;
+
+import java.io.IOException;
+
+/**
+ * Interface for the objects which receive the episodes one by one while the response of the
+ * API is being parsed.
+ * @author Alex
+ */
+public interface EpisodeHandler {
+
+	/**
+	 * Called for each episode read in the response.
+	 * @param episode
+	 *            the episode parsed.
+	 * @throws IOException
+	 *             if the episode could not be processed (e.g. written to the export file).
+	 */
+	void handle (Episode episode) throws IOException;
+}
@@ -0,0 +1,393 @@
+package com.alexrnl.betaseriesexporter;
+
+import java.text.Normalizer;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.BitSet;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.NavigableMap;
+import java.util.TreeMap;
+import java.util.concurrent.locks.ReadWriteLock;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+/**
+ * Index of the episodes of an export, to search them by show, by number and by title.<br />
+ * The index is an {@link EpisodeHandler}, so it can be built while the response of the API is
+ * parsed; it can be searched at the same time, from another thread. The show and title lookups
+ * ignore the case and the accents. The results are always in the order of the export.
+ * @author Alex
+ */
+public class EpisodeIndex implements EpisodeHandler {
+	/** The number of episodes per season in the encoding of the numbers */
+	private static final int					SEASON_FACTOR	= 100000;
+	private static final int					NO_NUMBER		= -1;
+	private static final String					NUMBER_REGEX	= "S(\\d{1,4})(?:E(\\d{1,4}))?";
+	private static final String					BOUND_REGEX		= "(S\\d{1,4}(?:E\\d{1,4})?)?";
+	private static final Pattern				NUMBER			= Pattern.compile(NUMBER_REGEX, Pattern.CASE_INSENSITIVE);
+	private static final Pattern				RANGE			= Pattern.compile(BOUND_REGEX + "(-)?" + BOUND_REGEX,
+			Pattern.CASE_INSENSITIVE);
+	/** The characters folded with a table: the Latin blocks */
+	private static final char					FOLD_TABLE_SIZE	= 0x250;
+	private static final char[]					FOLD_TABLE		= buildFoldTable();
+	private static final String					SHOW_PREFIX		= "show:";
+	private static final String					TITLE_PREFIX	= "title:";
+
+	private final ReadWriteLock					lock;
+	private final List<Episode>					episodes;
+	private final List<String>					titles;
+	private final Map<String, BitSet>			showsByName;
+	private final NavigableMap<String, BitSet>	shows;
+	private final NavigableMap<Integer, BitSet>	numbers;
+	private final Map<String, Integer>			codes;
+
+	/**
+	 * Constructor #1.<br />
+	 * Build an empty index.
+	 */
+	public EpisodeIndex () {
+		lock = new ReentrantReadWriteLock();
+		episodes = new ArrayList<Episode>();
+		titles = new ArrayList<String>();
+		showsByName = new HashMap<String, BitSet>();
+		shows = new TreeMap<String, BitSet>();
+		numbers = new TreeMap<Integer, BitSet>();
+		codes = new HashMap<String, Integer>();
+	}
+
+	/**
+	 * Build the index of a list of episodes.
+	 * @param episodes
+	 *            the episodes.
+	 * @return the index.
+	 */
+	public static EpisodeIndex of (final Collection<Episode> episodes) {
+		final EpisodeIndex index = new EpisodeIndex();
+		for (final Episode episode : episodes) {
+			index.handle(episode);
+		}
+		return index;
+	}
+
+	@Override
+	public void handle (final Episode episode) {
+		lock.writeLock().lock();
+		try {
+			final int id = episodes.size();
+			episodes.add(episode);
+			titles.add(fold(episode.getTitle()));
+
+			// The show, folded only once per show
+			final String show = episode.getShow() == null ? "" : episode.getShow();
+			BitSet ids = showsByName.get(show);
+			if (ids == null) {
+				final String key = fold(show);
+				ids = shows.get(key);
+				if (ids == null) {
+					ids = new BitSet();
+					shows.put(key, ids);
+				}
+				showsByName.put(show, ids);
+			}
+			ids.set(id);
+
+			// The number, parsed only once per number
+			Integer code = codes.get(episode.getNumber());
+			if (code == null) {
+				code = parseNumber(episode.getNumber(), 0);
+				codes.put(episode.getNumber(), code);
+			}
+			if (code != NO_NUMBER) {
+				BitSet numberIds = numbers.get(code);
+				if (numberIds == null) {
+					numberIds = new BitSet();
+					numbers.put(code, numberIds);
+				}
+				numberIds.set(id);
+			}
+		} finally {
+			lock.writeLock().unlock();
+		}
+	}
+
+	/**
+	 * Return the number of episodes in the index.
+	 * @return the number of episodes.
+	 */
+	public int size () {
+		lock.readLock().lock();
+		try {
+			return episodes.size();
+		} finally {
+			lock.readLock().unlock();
+		}
+	}
+
+	/**
+	 * Find the episodes of the shows whose name starts with a prefix.
+	 * @param prefix
+	 *            the beginning of the name of the show.
+	 * @return the episodes of the shows.
+	 */
+	public List<Episode> findByShow (final String prefix) {
+		return find(prefix, NO_NUMBER, NO_NUMBER, new ArrayList<String>());
+	}
+
+	/**
+	 * Find the episodes in a range of numbers, across all the shows.
+	 * @param from
+	 *            the first number (e.g. <code>S02E03</code>, or <code>S02</code> for the beginning
+	 *            of the season), <code>null</code> for no lower bound.
+	 * @param to
+	 *            the last number (e.g. <code>S03E05</code>, or <code>S03</code> for the end of
+	 *            the season), <code>null</code> for no upper bound.
+	 * @return the episodes in the range.
+	 * @throws IllegalArgumentException
+	 *             if a number is not valid.
+	 */
+	public List<Episode> findByNumber (final String from, final String to) {
+		return find(null, parseBound(from, 0), parseBound(to, SEASON_FACTOR - 1), new ArrayList<String>());
+	}
+
+	/**
+	 * Find the episodes whose title contains a text.
+	 * @param text
+	 *            the text to search.
+	 * @return the episodes.
+	 */
+	public List<Episode> findByTitle (final String text) {
+		return find(null, NO_NUMBER, NO_NUMBER, Arrays.asList(fold(text)));
+	}
+
+	/**
+	 * Search the episodes matching a query.<br />
+	 * The query is made of terms separated by spaces (a term with spaces is put between double
+	 * quotes), which must all match:
+	 * <ul>
+	 * <li><code>show:&lt;prefix&gt;</code>: the name of the show starts with the prefix;</li>
+	 * <li>a range of numbers such as <code>S02E03-S03E05</code>, <code>S02</code> (the whole
+	 * season), <code>S02-</code> or <code>-S03E05</code>;</li>
+	 * <li><code>title:&lt;text&gt;</code> or any other word: the title contains the text.</li>
+	 * </ul>
+	 * @param query
+	 *            the query.
+	 * @return the episodes matching the query.
+	 */
+	public List<Episode> search (final String query) {
+		String showPrefix = null;
+		int from = NO_NUMBER;
+		int to = NO_NUMBER;
+		final List<String> titleTerms = new ArrayList<String>();
+		for (final String term : tokenize(query)) {
+			final Matcher range = RANGE.matcher(term);
+			if (term.regionMatches(true, 0, SHOW_PREFIX, 0, SHOW_PREFIX.length())) {
+				showPrefix = term.substring(SHOW_PREFIX.length());
+			} else if (term.regionMatches(true, 0, TITLE_PREFIX, 0, TITLE_PREFIX.length())) {
+				titleTerms.add(fold(term.substring(TITLE_PREFIX.length())));
+			} else if (!"-".equals(term) && range.matches()) {
+				from = parseBound(range.group(1), 0);
+				to = range.group(2) == null ? parseBound(range.group(1), SEASON_FACTOR - 1)
+						: parseBound(range.group(3), SEASON_FACTOR - 1);
+			} else {
+				titleTerms.add(fold(term));
+			}
+		}
+		return find(showPrefix, from, to, titleTerms);
+	}
+
+	/**
+	 * Find the episodes matching all the criteria.
+	 * @param showPrefix
+	 *            the beginning of the name of the show, <code>null</code> for all the shows.
+	 * @param from
+	 *            the code of the first number, {@link #NO_NUMBER} for no lower bound.
+	 * @param to
+	 *            the code of the last number, {@link #NO_NUMBER} for no upper bound.
+	 * @param titleTerms
+	 *            the folded texts which the titles must contain.
+	 * @return the episodes, in the order of the export.
+	 */
+	private List<Episode> find (final String showPrefix, final int from, final int to, final List<String> titleTerms) {
+		lock.readLock().lock();
+		try {
+			BitSet candidates = null;
+			if (showPrefix != null) {
+				candidates = new BitSet();
+				final String key = fold(showPrefix);
+				for (final BitSet ids : shows.subMap(key, true, key + Character.MAX_VALUE, false).values()) {
+					candidates.or(ids);
+				}
+			}
+			if (from != NO_NUMBER || to != NO_NUMBER) {
+				final BitSet inRange = new BitSet();
+				for (final BitSet ids : numbers.subMap(from == NO_NUMBER ? 0 : from, true,
+						to == NO_NUMBER ? Integer.MAX_VALUE : to, true).values()) {
+					inRange.or(ids);
+				}
+				if (candidates == null) {
+					candidates = inRange;
+				} else {
+					candidates.and(inRange);
+				}
+			}
+			if (candidates == null) {
+				candidates = new BitSet();
+				candidates.set(0, episodes.size());
+			}
+
+			final List<Episode> result = new ArrayList<Episode>();
+			for (int id = candidates.nextSetBit(0); id >= 0; id = candidates.nextSetBit(id + 1)) {
+				if (containsAll(titles.get(id), titleTerms)) {
+					result.add(episodes.get(id));
+				}
+			}
+			return result;
+		} finally {
+			lock.readLock().unlock();
+		}
+	}
+
+	/**
+	 * Check if a text contains all the terms.
+	 * @param text
+	 *            the text.
+	 * @param terms
+	 *            the terms.
+	 * @return <code>true</code> if the text contains each term.
+	 */
+	private static boolean containsAll (final String text, final List<String> terms) {
+		for (final String term : terms) {
+			if (!text.contains(term)) {
+				return false;
+			}
+		}
+		return true;
+	}
+
+	/**
+	 * Split a query in terms, keeping the texts between double quotes together.
+	 * @param query
+	 *            the query.
+	 * @return the terms.
+	 */
+	private static List<String> tokenize (final String query) {
+		final List<String> terms = new ArrayList<String>();
+		final StringBuilder term = new StringBuilder();
+		boolean quoted = false;
+		for (int index = 0; index < query.length(); ++index) {
+			final char character = query.charAt(index);
+			if (character == '"') {
+				quoted = !quoted;
+			} else if (Character.isWhitespace(character) && !quoted) {
+				if (term.length() > 0) {
+					terms.add(term.toString());
+					term.setLength(0);
+				}
+			} else {
+				term.append(character);
+			}
+		}
+		if (term.length() > 0) {
+			terms.add(term.toString());
+		}
+		return terms;
+	}
+
+	/**
+	 * Parse the bound of a range of numbers.
+	 * @param number
+	 *            the number, <code>null</code> for no bound.
+	 * @param defaultEpisode
+	 *            the episode used when the number only has a season.
+	 * @return the code of the number, {@link #NO_NUMBER} for no bound.
+	 * @throws IllegalArgumentException
+	 *             if the number is not valid.
+	 */
+	private static int parseBound (final String number, final int defaultEpisode) {
+		if (number == null || number.isEmpty()) {
+			return NO_NUMBER;
+		}
+		final int code = parseNumber(number, defaultEpisode);
+		if (code == NO_NUMBER) {
+			throw new IllegalArgumentException("Invalid episode number: " + number);
+		}
+		return code;
+	}
+
+	/**
+	 * Parse the number of an episode.
+	 * @param number
+	 *            the number (e.g. <code>S05E01</code>).
+	 * @param defaultEpisode
+	 *            the episode used when the number only has a season.
+	 * @return the code of the number (season and episode), {@link #NO_NUMBER} if the number is
+	 *         not valid.
+	 */
+	private static int parseNumber (final String number, final int defaultEpisode) {
+		if (number == null) {
+			return NO_NUMBER;
+		}
+		final Matcher matcher = NUMBER.matcher(number.trim());
+		if (!matcher.matches()) {
+			return NO_NUMBER;
+		}
+		final int episode = matcher.group(2) == null ? defaultEpisode : Integer.parseInt(matcher.group(2));
+		return Integer.parseInt(matcher.group(1)) * SEASON_FACTOR + episode;
+	}
+
+	/**
+	 * Build the table which folds the Latin characters: lower case, without accents.
+	 * @return the table, indexed by the characters.
+	 */
+	private static char[] buildFoldTable () {
+		final char[] table = new char[FOLD_TABLE_SIZE];
+		for (char character = 0; character < FOLD_TABLE_SIZE; ++character) {
+			final String decomposed = Normalizer.normalize(String.valueOf(character), Normalizer.Form.NFD);
+			final String lowerCase = decomposed.substring(0, 1).toLowerCase(Locale.ROOT);
+			table[character] = lowerCase.length() == 1 ? lowerCase.charAt(0) : Character.toLowerCase(character);
+		}
+		return table;
+	}
+
+	/**
+	 * Fold a text for the lookups: lower case, without accents.<br />
+	 * The Latin characters are folded with a table; the other texts are decomposed.
+	 * @param text
+	 *            the text.
+	 * @return the folded text.
+	 */
+	static String fold (final String text) {
+		final char[] folded = new char[text.length()];
+		for (int index = 0; index < folded.length; ++index) {
+			final char character = text.charAt(index);
+			if (character >= FOLD_TABLE_SIZE) {
+				return foldDecomposed(text);
+			}
+			folded[index] = FOLD_TABLE[character];
+		}
+		return new String(folded);
+	}
+
+	/**
+	 * Fold a text by decomposing its characters and removing the accents.
+	 * @param text
+	 *            the text.
+	 * @return the folded text.
+	 */
+	private static String foldDecomposed (final String text) {
+		final String decomposed = Normalizer.normalize(text, Normalizer.Form.NFD);
+		final StringBuilder folded = new StringBuilder(decomposed.length());
+		for (int index = 0; index < decomposed.length(); ++index) {
+			final char character = decomposed.charAt(index);
+			if (Character.getType(character) != Character.NON_SPACING_MARK) {
+				folded.append(character);
+			}
+		}
+		return folded.toString().toLowerCase(Locale.ROOT);
+	}
+}
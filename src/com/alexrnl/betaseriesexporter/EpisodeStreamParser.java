@@ -0,0 +1,194 @@
+package com.alexrnl.betaseriesexporter;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+import javax.xml.stream.XMLStreamConstants;
+import javax.xml.stream.XMLStreamException;
+import javax.xml.stream.XMLStreamReader;
+
+/**
+ * Streaming parser for the episodes list returned by the API.<br />
+ * The response is read with a StAX reader and each episode is given to an
+ * {@link EpisodeHandler} as soon as its closing tag is reached, so the memory used does not
+ * depend on the number of episodes in the list.
+ * @author Alex
+ */
+public class EpisodeStreamParser {
+	private static Logger				lg				= Logger.getLogger(EpisodeStreamParser.class.getName());
+
+	/** The depth of the children of the root element (where the code and errors are) */
+	private static final int			RESPONSE_DEPTH	= 2;
+
+	private String						defaultShow;
+	private boolean						seenOnly;
+	private String						errorMessage;
+	private String						errorCode;
+	private int							nbEpisodes;
+
+	/**
+	 * Set the show of the episodes which do not have a show in the response (e.g. when all the
+	 * episodes of the response belong to the same show).
+	 * @param defaultShow
+	 *            the name of the show.
+	 */
+	public void setDefaultShow (final String defaultShow) {
+		this.defaultShow = defaultShow;
+	}
+
+	/**
+	 * Keep only the episodes marked as watched in the response.
+	 * @param seenOnly
+	 *            <code>true</code> to ignore the episodes which have not been watched.
+	 */
+	public void setSeenOnly (final boolean seenOnly) {
+		this.seenOnly = seenOnly;
+	}
+
+	/**
+	 * Parse the response of the API and send each episode to the handler.<br />
+	 * The stream is not closed by this method.
+	 * @param input
+	 *            the stream with the XML response of the API.
+	 * @param handler
+	 *            the handler which will receive the episodes.
+	 * @return <code>true</code> if the response did not contain any error.
+	 * @throws XMLStreamException
+	 *             if the response is not a valid XML document.
+	 * @throws IOException
+	 *             if the handler failed to process an episode.
+	 */
+	public boolean parse (final InputStream input, final EpisodeHandler handler)
+			throws XMLStreamException, IOException {
+		errorMessage = null;
+		errorCode = null;
+		nbEpisodes = 0;
+		boolean error = false;
+
+		final XMLStreamReader reader = XmlParsers.createStreamReader(input);
+		try {
+			int depth = 0;
+			int episodeDepth = 0;
+			int errorsDepth = 0;
+			boolean realEpisode = false;
+			String show = null;
+			String number = null;
+			String globalNumber = null;
+			String title = null;
+			boolean seen = false;
+
+			while (reader.hasNext()) {
+				final int event = reader.next();
+				if (event == XMLStreamConstants.END_ELEMENT) {
+					if (depth == episodeDepth) {
+						// Checking if the node is a 'real episode'
+						if (realEpisode && (seen || !seenOnly)) {
+							handler.handle(new Episode(show == null ? defaultShow : show, number, globalNumber, title));
+							++nbEpisodes;
+						}
+						episodeDepth = 0;
+					} else if (depth == errorsDepth) {
+						errorsDepth = 0;
+					}
+					--depth;
+					continue;
+				}
+				if (event != XMLStreamConstants.START_ELEMENT) {
+					continue;
+				}
+
+				++depth;
+				final String name = reader.getLocalName();
+				if (episodeDepth == 0 && errorsDepth == 0 && API.EPISODE.equals(name)) {
+					episodeDepth = depth;
+					realEpisode = false;
+					show = null;
+					number = null;
+					globalNumber = null;
+					title = null;
+					seen = false;
+				} else if (episodeDepth != 0 && depth == episodeDepth + 1) {
+					realEpisode = true;
+					if (API.SHOW.equals(name)) {
+						show = reader.getElementText();
+						--depth;
+					} else if (API.NUMBER.equals(name)) {
+						number = reader.getElementText();
+						--depth;
+					} else if (API.GLOBAL_NUMBER.equals(name)) {
+						globalNumber = reader.getElementText();
+						--depth;
+					} else if (API.TITLE.equals(name)) {
+						title = reader.getElementText();
+						--depth;
+					} else if (API.HAS_SEEN.equals(name)) {
+						seen = "1".equals(reader.getElementText().trim());
+						--depth;
+					}
+				} else if (depth == RESPONSE_DEPTH && API.CODE_OK.equals(name)) {
+					final String code = reader.getElementText();
+					--depth;
+					if (!"1".equals(code)) {
+						lg.info("'" + API.CODE_OK + "' was wrong: " + code);
+						error = true;
+					}
+				} else if (depth == RESPONSE_DEPTH && API.ERRORS.equals(name)) {
+					errorsDepth = depth;
+				} else if (errorsDepth != 0 && API.ERROR.equals(name)) {
+					lg.info("'" + API.ERROR + "' exists...");
+					error = true;
+				} else if (errorsDepth != 0 && API.CODE_OK.equals(name)) {
+					final String code = reader.getElementText();
+					--depth;
+					if (errorCode == null) {
+						errorCode = code;
+					}
+				} else if (errorsDepth != 0 && API.ERROR_CONTENT.equals(name)) {
+					final String content = reader.getElementText();
+					--depth;
+					if (errorMessage == null) {
+						errorMessage = content;
+					}
+				}
+			}
+		} finally {
+			reader.close();
+		}
+
+		if (error && errorMessage == null) {
+			errorMessage = "Unknown error returned by the API";
+		}
+		if (lg.isLoggable(Level.FINE)) {
+			lg.log(Level.FINE, "Response parsed: episodes={0}, error={1}", new Object[] { String.valueOf(nbEpisodes),
+					errorCode });
+		}
+		return !error;
+	}
+
+	/**
+	 * Return the first error message found in the last response parsed.
+	 * @return the error message, <code>null</code> if there was no error.
+	 */
+	public String getErrorMessage () {
+		return errorMessage;
+	}
+
+	/**
+	 * Return the code of the first error found in the last response parsed.
+	 * @return the error code, <code>null</code> if there was no error or if the error did not
+	 *         have any code.
+	 */
+	public String getErrorCode () {
+		return errorCode;
+	}
+
+	/**
+	 * Return the number of episodes found in the last response parsed.
+	 * @return the number of episodes.
+	 */
+	public int getNbEpisodes () {
+		return nbEpisodes;
+	}
+}
@@ -0,0 +1,229 @@
+package com.alexrnl.betaseriesexporter;
+
+import java.util.Random;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.logging.Logger;
+
+/**
+ * Class which refreshes the export on a schedule, keeping the same session (and so the same
+ * connections, token and warm JVM) between the refreshes.<br />
+ * The refreshes are spaced by the interval, plus or minus a random jitter so several daemons do
+ * not query the API at the same time. A refresh is skipped if the previous one is still running.
+ * @author Alex
+ */
+public class ExportDaemon {
+	private static Logger					lg					= Logger.getLogger(ExportDaemon.class.getName());
+
+	/** The default interval between two refreshes, in seconds */
+	public static final int					DEFAULT_INTERVAL	= 3600;
+	/** The default jitter of the refreshes, in seconds */
+	public static final int					DEFAULT_JITTER		= 60;
+	/** The time given to the current refresh to end when the daemon stops, in seconds */
+	private static final int				STOP_TIMEOUT		= 60;
+
+	private final ExportSession				session;
+	private final Notifier					notifier;
+	private final String					login;
+	private final String					password;
+	private final long						interval;
+	private final long						jitter;
+	private final Random					random;
+	private final ScheduledExecutorService	timer;
+	private final ExecutorService			worker;
+	private final AtomicBoolean				running;
+	private final CountDownLatch			stopped;
+	private volatile boolean				stopping;
+	private volatile ExportStatus			lastStatus;
+	// Written by the refreshes, read when the daemon is stopped
+	private volatile String					token;
+	private long							nextRun;
+	private volatile int					nbRefresh;
+	private volatile int					nbSkipped;
+
+	/**
+	 * Constructor #1.<br />
+	 * @param session
+	 *            the session used for the exports.
+	 * @param notifier
+	 *            the notifier for the errors.
+	 * @param login
+	 *            the login of the user.
+	 * @param password
+	 *            the password of the user, used if the stored token is not valid anymore.
+	 * @param interval
+	 *            the interval between two refreshes, in milliseconds.
+	 * @param jitter
+	 *            the maximum random variation of the interval, in milliseconds.
+	 * @throws IllegalArgumentException
+	 *             if the interval is not strictly positive, or if the jitter is negative or not
+	 *             lower than the interval.
+	 */
+	public ExportDaemon (final ExportSession session, final Notifier notifier, final String login,
+			final String password, final long interval, final long jitter) {
+		if (interval <= 0 || jitter < 0 || jitter >= interval) {
+			throw new IllegalArgumentException("Invalid schedule: interval=" + interval + " ms, jitter=" + jitter
+					+ " ms");
+		}
+		this.session = session;
+		this.notifier = notifier;
+		this.login = login;
+		this.password = password;
+		this.interval = interval;
+		this.jitter = jitter;
+		this.random = new Random();
+		this.timer = Executors.newSingleThreadScheduledExecutor(new NamedThreadFactory("export-timer"));
+		this.worker = Executors.newSingleThreadExecutor(new NamedThreadFactory("export-refresh"));
+		this.running = new AtomicBoolean();
+		this.stopped = new CountDownLatch(1);
+	}
+
+	/**
+	 * Thread factory which creates daemon threads with a name.
+	 * @author Alex
+	 */
+	private static class NamedThreadFactory implements ThreadFactory {
+		private final String	name;
+
+		/**
+		 * Constructor #1.<br />
+		 * @param name
+		 *            the name of the threads.
+		 */
+		public NamedThreadFactory (final String name) {
+			this.name = name;
+		}
+
+		@Override
+		public Thread newThread (final Runnable runnable) {
+			final Thread thread = new Thread(runnable, name);
+			thread.setDaemon(true);
+			return thread;
+		}
+	}
+
+	/**
+	 * Start the daemon: the first refresh is run immediately.
+	 */
+	public synchronized void start () {
+		lg.info("Starting daemon, refreshing every " + interval + " ms (+/- " + jitter + " ms)");
+		nextRun = System.currentTimeMillis();
+		timer.execute(new Runnable() {
+			@Override
+			public void run () {
+				tick();
+			}
+		});
+	}
+
+	/**
+	 * Start the refresh, unless the previous one is still running, and schedule the next one.<br />
+	 * The refreshes are planned at a fixed rate, so a long refresh does not shift the following
+	 * ones.
+	 */
+	private synchronized void tick () {
+		if (stopping) {
+			return;
+		}
+		if (running.compareAndSet(false, true)) {
+			worker.execute(new Runnable() {
+				@Override
+				public void run () {
+					try {
+						refresh();
+					} finally {
+						running.set(false);
+					}
+				}
+			});
+		} else {
+			++nbSkipped;
+			lg.warning("Previous refresh still running, skipping this one");
+		}
+
+		nextRun += interval;
+		final long delay = Math.max(0, nextRun + (long) ((random.nextDouble() * 2 - 1) * jitter)
+				- System.currentTimeMillis());
+		timer.schedule(new Runnable() {
+			@Override
+			public void run () {
+				tick();
+			}
+		}, delay, TimeUnit.MILLISECONDS);
+	}
+
+	/**
+	 * Refresh the export, login again if the token is not valid anymore.
+	 */
+	private void refresh () {
+		final long start = System.nanoTime();
+		ExportStatus status;
+		try {
+			if (token == null) {
+				token = session.getStoredToken(login);
+			}
+			if (token == null) {
+				token = CommandLine.login(session, notifier, login, password);
+			}
+			if (token == null) {
+				status = ExportStatus.LOGIN_ERROR;
+			} else {
+				status = session.export(token);
+				if (status == ExportStatus.INVALID_TOKEN) {
+					token = CommandLine.login(session, notifier, login, password);
+					status = token == null ? ExportStatus.LOGIN_ERROR : session.export(token);
+				}
+			}
+		} catch (final RuntimeException e) {
+			lg.severe("Refresh failed (" + e + ")");
+			status = ExportStatus.API_ERROR;
+		}
+		lastStatus = status;
+		++nbRefresh;
+		lg.info("Refresh #" + nbRefresh + " ended with status " + status + " in "
+				+ TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start) + " ms");
+	}
+
+	/**
+	 * Stop the daemon.<br />
+	 * The refresh in progress, if any, is given some time to end, then the session is closed.
+	 */
+	public void stop () {
+		synchronized (this) {
+			if (stopping) {
+				return;
+			}
+			stopping = true;
+		}
+		timer.shutdownNow();
+		worker.shutdown();
+		try {
+			if (!worker.awaitTermination(STOP_TIMEOUT, TimeUnit.SECONDS)) {
+				lg.warning("Refresh still running, interrupting it");
+				worker.shutdownNow();
+			}
+		} catch (final InterruptedException e) {
+			Thread.currentThread().interrupt();
+			worker.shutdownNow();
+		}
+		lg.info("Daemon stopped after " + nbRefresh + " refresh(es), " + nbSkipped + " skipped");
+		session.close(token);
+		stopped.countDown();
+	}
+
+	/**
+	 * Wait for the daemon to be {@link #stop() stopped}.
+	 * @return the result of the last refresh, <code>null</code> if no refresh was run.
+	 * @throws InterruptedException
+	 *             if the thread was interrupted while waiting.
+	 */
+	public ExportStatus awaitStop () throws InterruptedException {
+		stopped.await();
+		return lastStatus;
+	}
+}
@@ -0,0 +1,252 @@
+package com.alexrnl.betaseriesexporter;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.net.HttpURLConnection;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.text.SimpleDateFormat;
+import java.util.HashMap;
+import java.util.Locale;
+import java.util.Map;
+import java.util.TimeZone;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ThreadFactory;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+import com.alexrnl.betaseriesexporter.export.ExportSnapshot;
+import com.alexrnl.betaseriesexporter.export.Exporters;
+import com.sun.net.httpserver.Headers;
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpHandler;
+import com.sun.net.httpserver.HttpServer;
+
+/**
+ * Local HTTP server which serves the last export of a session from memory.<br />
+ * The episodes are available on {@value #CONTEXT}, in the format given by the
+ * <code>format</code> parameter of the query (the first format of the configuration by
+ * default). The responses have an entity tag, so a client which sends it back in
+ * <code>If-None-Match</code> gets a <code>304 Not Modified</code> while the list does not change.
+ * The snapshot of the session is replaced at once at the end of each export, so the requests
+ * never wait for an export in progress.
+ * @author Alex
+ */
+public class ExportServer {
+	private static Logger						lg						= Logger.getLogger(ExportServer.class.getName());
+
+	/** The path of the episodes */
+	public static final String					CONTEXT					= "/episodes";
+
+	private static final int					NB_THREADS				= 2;
+	private static final int					NO_CONTENT_LENGTH		= -1;
+	private static final String					FORMAT_PARAM			= "format=";
+	private static final String					DEFAULT_CONTENT_TYPE	= "application/octet-stream";
+	private static final Map<String, String>	CONTENT_TYPES			= new HashMap<String, String>();
+
+	static {
+		CONTENT_TYPES.put("txt", "text/plain");
+		CONTENT_TYPES.put("csv", "text/csv");
+		CONTENT_TYPES.put("json", "application/json");
+		CONTENT_TYPES.put("html", "text/html");
+		CONTENT_TYPES.put("xml", "application/xml");
+	}
+
+	private final ExportSession		session;
+	private final String			defaultFormat;
+	private final HttpServer		server;
+	private final ExecutorService	executor;
+
+	/**
+	 * Constructor #1.<br />
+	 * Bind the server on the loopback interface; the server is not started.
+	 * @param session
+	 *            the session whose exports are served.
+	 * @param port
+	 *            the port of the server.
+	 * @param defaultFormat
+	 *            the format used when the request does not specify one.
+	 * @throws IOException
+	 *             if the server could not be bound to the port.
+	 */
+	public ExportServer (final ExportSession session, final int port, final String defaultFormat) throws IOException {
+		this.session = session;
+		this.defaultFormat = defaultFormat;
+		this.server = HttpServer.create(new InetSocketAddress(InetAddress.getLoopbackAddress(), port), 0);
+		this.executor = Executors.newFixedThreadPool(NB_THREADS, new ThreadFactory() {
+			@Override
+			public Thread newThread (final Runnable runnable) {
+				final Thread thread = new Thread(runnable, "export-server");
+				thread.setDaemon(true);
+				return thread;
+			}
+		});
+		server.setExecutor(executor);
+		server.createContext(CONTEXT, new HttpHandler() {
+			@Override
+			public void handle (final HttpExchange exchange) throws IOException {
+				try {
+					serve(exchange);
+				} catch (final IOException e) {
+					lg.warning("Cannot answer " + exchange.getRequestURI() + " (" + e.getMessage() + ")");
+				} finally {
+					exchange.close();
+				}
+			}
+		});
+	}
+
+	/**
+	 * Start the server.
+	 */
+	public void start () {
+		server.start();
+		lg.info("Serving the episodes on http://" + server.getAddress().getHostString() + ":"
+				+ server.getAddress().getPort() + CONTEXT);
+	}
+
+	/**
+	 * Stop the server, without waiting for the requests in progress.
+	 */
+	public void stop () {
+		server.stop(0);
+		executor.shutdownNow();
+	}
+
+	/**
+	 * Answer a request.
+	 * @param exchange
+	 *            the request and its response.
+	 * @throws IOException
+	 *             if the response could not be sent.
+	 */
+	private void serve (final HttpExchange exchange) throws IOException {
+		final String method = exchange.getRequestMethod();
+		final boolean head = "HEAD".equals(method);
+		if (!head && !"GET".equals(method)) {
+			exchange.getResponseHeaders().set("Allow", "GET, HEAD");
+			sendError(exchange, HttpURLConnection.HTTP_BAD_METHOD, "Method not allowed");
+			return;
+		}
+		if (!CONTEXT.equals(exchange.getRequestURI().getPath())) {
+			sendError(exchange, HttpURLConnection.HTTP_NOT_FOUND, "Not found");
+			return;
+		}
+		final ExportSnapshot snapshot = session.getSnapshot();
+		if (snapshot == null) {
+			exchange.getResponseHeaders().set("Retry-After", "60");
+			sendError(exchange, HttpURLConnection.HTTP_UNAVAILABLE, "No export yet");
+			return;
+		}
+
+		final String format = getFormat(exchange.getRequestURI().getRawQuery());
+		final byte[] content;
+		final String extension;
+		try {
+			extension = Exporters.create(format).getExtension();
+			content = snapshot.render(format);
+		} catch (final IllegalArgumentException e) {
+			sendError(exchange, HttpURLConnection.HTTP_BAD_REQUEST, e.getMessage());
+			return;
+		}
+
+		final String eTag = snapshot.getETag(format);
+		final Headers headers = exchange.getResponseHeaders();
+		headers.set("ETag", eTag);
+		headers.set("Cache-Control", "no-cache");
+		headers.set("Last-Modified", formatHttpDate(snapshot.getDate().getTime()));
+		if (matches(exchange.getRequestHeaders().getFirst("If-None-Match"), eTag)) {
+			exchange.sendResponseHeaders(HttpURLConnection.HTTP_NOT_MODIFIED, NO_CONTENT_LENGTH);
+			return;
+		}
+		final String contentType = CONTENT_TYPES.get(extension);
+		headers.set("Content-Type", (contentType == null ? DEFAULT_CONTENT_TYPE : contentType) + "; charset="
+				+ snapshot.getCharset().name());
+		if (head) {
+			headers.set("Content-Length", String.valueOf(content.length));
+			exchange.sendResponseHeaders(HttpURLConnection.HTTP_OK, NO_CONTENT_LENGTH);
+			return;
+		}
+		exchange.sendResponseHeaders(HttpURLConnection.HTTP_OK, content.length);
+		final OutputStream body = exchange.getResponseBody();
+		body.write(content);
+		body.close();
+		if (lg.isLoggable(Level.FINE)) {
+			lg.fine("Served " + content.length + " bytes in " + format);
+		}
+	}
+
+	/**
+	 * Return the format asked in the query of a request.
+	 * @param query
+	 *            the query of the request, may be <code>null</code>.
+	 * @return the format of the query, or the default format.
+	 */
+	private String getFormat (final String query) {
+		if (query != null) {
+			for (final String param : query.split("&")) {
+				if (param.startsWith(FORMAT_PARAM) && param.length() > FORMAT_PARAM.length()) {
+					return param.substring(FORMAT_PARAM.length());
+				}
+			}
+		}
+		return defaultFormat;
+	}
+
+	/**
+	 * Check if an <code>If-None-Match</code> header matches an entity tag.<br />
+	 * The comparison is weak, as defined by RFC 7232.
+	 * @param ifNoneMatch
+	 *            the value of the header, may be <code>null</code>.
+	 * @param eTag
+	 *            the entity tag of the document.
+	 * @return <code>true</code> if the client already has the document.
+	 */
+	static boolean matches (final String ifNoneMatch, final String eTag) {
+		if (ifNoneMatch == null) {
+			return false;
+		}
+		final String opaqueTag = eTag.startsWith("W/") ? eTag.substring(2) : eTag;
+		for (String tag : ifNoneMatch.split(",")) {
+			tag = tag.trim();
+			if ("*".equals(tag) || opaqueTag.equals(tag.startsWith("W/") ? tag.substring(2) : tag)) {
+				return true;
+			}
+		}
+		return false;
+	}
+
+	/**
+	 * Format a date for an HTTP header.
+	 * @param time
+	 *            the time, in milliseconds since the epoch.
+	 * @return the date, in the format of RFC 7231.
+	 */
+	private static String formatHttpDate (final long time) {
+		final SimpleDateFormat format = new SimpleDateFormat("EEE, dd MMM yyyy HH:mm:ss 'GMT'", Locale.US);
+		format.setTimeZone(TimeZone.getTimeZone("GMT"));
+		return format.format(time);
+	}
+
+	/**
+	 * Send an error.
+	 * @param exchange
+	 *            the request and its response.
+	 * @param code
+	 *            the status code.
+	 * @param message
+	 *            the message of the error.
+	 * @throws IOException
+	 *             if the response could not be sent.
+	 */
+	private static void sendError (final HttpExchange exchange, final int code, final String message)
+			throws IOException {
+		final byte[] body = (message + "\n").getBytes("UTF-8");
+		exchange.getResponseHeaders().set("Content-Type", "text/plain; charset=UTF-8");
+		exchange.sendResponseHeaders(code, body.length);
+		final OutputStream output = exchange.getResponseBody();
+		output.write(body);
+		output.close();
+	}
+}
@@ -0,0 +1,983 @@
+package com.alexrnl.betaseriesexporter;
+
+import java.io.Closeable;
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.UnsupportedEncodingException;
+import java.nio.charset.Charset;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Date;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+import javax.xml.stream.XMLStreamException;
+
+
+import com.alexrnl.betaseriesexporter.export.ExportOutput;
+import com.alexrnl.betaseriesexporter.export.ExportSnapshot;
+import com.alexrnl.betaseriesexporter.export.Exporters;
+import com.alexrnl.betaseriesexporter.export.SnapshotFile;
+import com.alexrnl.betaseriesexporter.export.TextExporter;
+import com.alexrnl.betaseriesexporter.metrics.RequestMetrics;
+import com.alexrnl.betaseriesexporter.transport.CircuitBreaker;
+import com.alexrnl.betaseriesexporter.transport.KeepAliveTransport;
+import com.alexrnl.betaseriesexporter.transport.RequestScheduler;
+import com.alexrnl.betaseriesexporter.transport.ResponseCache;
+import com.alexrnl.betaseriesexporter.transport.RetryPolicy;
+
+/**
+ * Class which runs the steps of an export: login, retrieval of the episodes, generation of the
+ * file and logout.<br />
+ * Does not depend on any graphical component: the messages for the user are sent to a
+ * {@link Notifier}.
+ * @author Alex
+ */
+public class ExportSession {
+	private static Logger			lg							= Logger.getLogger(ExportSession.class.getName());
+
+	private static final int		DEFAULT_CACHE_TIME_TO_LIVE	= 3600;
+	private static final int		DEFAULT_CACHE_MAX_SIZE		= 10 * 1024 * 1024;
+	private static final long		MILLIS_PER_SECOND			= 1000L;
+	private static final String		STATE_EXTENSION				= ".state";
+	private static final String		CHANGELOG_EXTENSION			= ".changes";
+	private static final Charset	DEFAULT_OUTPUT_CHARSET		= Charset.forName("UTF-8");
+	private static final String		MODE_NEXT					= "next";
+	private static final String		MODE_UNWATCHED				= "unwatched";
+	private static final String		MODE_HISTORY				= "history";
+
+	private static final String		NEW_LINE					= System.getProperty("line.separator");
+
+	private final Configuration		configuration;
+	private final Notifier			notifier;
+	private final QueryManager		api;
+	private final BetaSeriesClient	client;
+	private final TokenStore		tokenStore;
+	private final boolean			logoutEnabled;
+	private final boolean			sharedScheduler;
+	private String					account;
+	private String					storedToken;
+	private boolean					keepSnapshot;
+	private boolean					keepIndex;
+	private volatile EpisodeIndex	index;
+	private volatile ExportSnapshot	snapshot;
+
+	/**
+	 * Constructor #1.<br />
+	 * Build the session and the query manager for the API, with their own transport and rate
+	 * limiter.
+	 * @param configuration
+	 *            the configuration of the application.
+	 * @param notifier
+	 *            the notifier for the messages to the user.
+	 */
+	public ExportSession (final Configuration configuration, final Notifier notifier) {
+		this(configuration, notifier, createTransport(configuration, 0), null);
+	}
+
+	/**
+	 * Constructor #2.<br />
+	 * Build the session and the query manager for the API on a transport and a rate limiter shared
+	 * with other sessions (e.g. the sessions of the accounts of a {@link BatchExport}).
+	 * @param configuration
+	 *            the configuration of the application.
+	 * @param notifier
+	 *            the notifier for the messages to the user.
+	 * @param transport
+	 *            the transport of the requests, see {@link #createTransport(Configuration, int)}.
+	 * @param scheduler
+	 *            the rate limiter of the requests, see {@link #createScheduler(Configuration)};
+	 *            <code>null</code> to create one from the configuration for this session.
+	 */
+	public ExportSession (final Configuration configuration, final Notifier notifier,
+			final KeepAliveTransport transport, final RequestScheduler scheduler) {
+		this.configuration = configuration;
+		this.notifier = notifier;
+
+		// Building the query manager, for the host of the configuration if any (e.g. a test server)
+		final String host = getHost(configuration);
+		final Map<String, String> compulsoryParams = new HashMap<String, String>();
+		compulsoryParams.put(API.KEY_PARAM, API.KEY);
+		compulsoryParams.put(API.USER_AGENT_PARAM, API.USER_AGENT);
+		api = new QueryManager(host, compulsoryParams, transport);
+		api.addPageGroup(API.SHOW_EPISODES);
+		client = new BetaSeriesClient(api);
+
+		// Building the resilience policies of the requests
+		final RetryPolicy retryPolicy = createRetryPolicy(null, new RetryPolicy(RetryPolicy.DEFAULT_MAX_ATTEMPTS,
+				RetryPolicy.DEFAULT_BASE_DELAY, RetryPolicy.DEFAULT_MAX_DELAY, RetryPolicy.DEFAULT_DEADLINE));
+		api.setRetryPolicy(retryPolicy);
+		for (final String page : new String[] { API.MEMBER_EPISODES, API.MEMBER_INFOS, API.SHOW_EPISODES,
+				API.TOKEN_CHECK_PAGE }) {
+			api.setRetryPolicy(page, createRetryPolicy(page, retryPolicy));
+		}
+		// The login and the logout are not retried, unless the configuration says otherwise
+		final RetryPolicy noRetry = new RetryPolicy(RetryPolicy.NO_RETRY.getMaxAttempts(),
+				retryPolicy.getBaseDelay(), retryPolicy.getMaxDelay(), retryPolicy.getDeadline());
+		for (final String page : new String[] { API.LOGIN_PAGE, API.LOGOUT_PAGE }) {
+			api.setRetryPolicy(page, createRetryPolicy(page, noRetry));
+		}
+		final int failureThreshold = configuration.getIntProperty("circuitBreakerThreshold",
+				CircuitBreaker.DEFAULT_FAILURE_THRESHOLD);
+		if (failureThreshold > 0) {
+			api.setCircuitBreaker(new CircuitBreaker(host, failureThreshold,
+					configuration.getIntProperty("circuitBreakerOpenTime", CircuitBreaker.DEFAULT_OPEN_TIME)));
+		}
+
+		// Building the rate limiter of the requests
+		sharedScheduler = scheduler != null;
+		api.setScheduler(sharedScheduler ? scheduler : createScheduler(configuration));
+
+		// Building the cache of the responses
+		final String cacheDirectory = configuration.getProperty("cacheDirectory");
+		if (cacheDirectory != null && !cacheDirectory.isEmpty()) {
+			api.setCache(new ResponseCache(new File(cacheDirectory),
+					configuration.getIntProperty("cacheTimeToLive", DEFAULT_CACHE_TIME_TO_LIVE) * MILLIS_PER_SECOND,
+					configuration.getIntProperty("cacheMaxSize", DEFAULT_CACHE_MAX_SIZE),
+					Boolean.parseBoolean(configuration.getProperty("cacheStaleWhileRevalidate"))));
+		}
+
+		// The token is destroyed at the end of the session if it is not stored
+		final String tokenFile = configuration.getProperty("tokenFile");
+		tokenStore = tokenFile == null || tokenFile.isEmpty() ? null : new TokenStore(new File(tokenFile));
+		final String logout = configuration.getProperty("logout");
+		logoutEnabled = logout == null ? tokenStore == null : Boolean.parseBoolean(logout);
+	}
+
+	/**
+	 * Return the host of the API in the configuration.
+	 * @param configuration
+	 *            the configuration of the application.
+	 * @return the <code>apiHost</code> of the configuration, or the host of BetaSeries.
+	 */
+	private static String getHost (final Configuration configuration) {
+		final String configuredHost = configuration.getProperty("apiHost");
+		return configuredHost == null || configuredHost.trim().isEmpty() ? API.HOST : configuredHost.trim();
+	}
+
+	/**
+	 * Create the transport of the requests from the configuration.<br />
+	 * Must be called before the first HTTP connection of the application, see
+	 * {@link KeepAliveTransport#KeepAliveTransport(int, int, int)}.
+	 * @param configuration
+	 *            the configuration of the application.
+	 * @param minConnections
+	 *            the minimum number of idle connections kept, whatever the configuration (e.g. the
+	 *            number of sessions sharing the transport).
+	 * @return the transport.
+	 */
+	public static KeepAliveTransport createTransport (final Configuration configuration, final int minConnections) {
+		final KeepAliveTransport transport = new KeepAliveTransport(
+				configuration.getIntProperty("connectTimeout", KeepAliveTransport.DEFAULT_CONNECT_TIMEOUT),
+				configuration.getIntProperty("readTimeout", KeepAliveTransport.DEFAULT_READ_TIMEOUT),
+				Math.max(minConnections,
+						configuration.getIntProperty("maxConnections", KeepAliveTransport.DEFAULT_MAX_CONNECTIONS)));
+		final String compression = configuration.getProperty("compression");
+		transport.setCompression(compression == null || Boolean.parseBoolean(compression));
+		return transport;
+	}
+
+	/**
+	 * Create the rate limiter of the requests from the configuration.<br />
+	 * The rate limiter is registered in the MBean server under the name of the host.
+	 * @param configuration
+	 *            the configuration of the application.
+	 * @return the rate limiter, <code>null</code> if the requests are not limited.
+	 */
+	public static RequestScheduler createScheduler (final Configuration configuration) {
+		final int keyRate = configuration.getIntProperty("rateLimit", RequestScheduler.DEFAULT_KEY_RATE);
+		final int tokenRate = configuration.getIntProperty("rateLimitPerToken", RequestScheduler.DEFAULT_TOKEN_RATE);
+		if (keyRate <= 0 && tokenRate <= 0) {
+			return null;
+		}
+		final RequestScheduler scheduler = new RequestScheduler(keyRate,
+				configuration.getIntProperty("rateLimitBurst", Math.max(1, keyRate)), tokenRate,
+				configuration.getIntProperty("rateLimitPerTokenBurst", Math.max(1, tokenRate)));
+		scheduler.register(getHost(configuration));
+		return scheduler;
+	}
+
+	/**
+	 * Create the retry policy of a page from the configuration.<br />
+	 * The entries of a page are suffixed with the page (e.g.
+	 * <code>retryMaxAttempts.members/auth.xml</code>); the missing entries are taken from the
+	 * default policy.
+	 * @param page
+	 *            the page, <code>null</code> for the default policy.
+	 * @param defaults
+	 *            the default policy.
+	 * @return the retry policy.
+	 */
+	private RetryPolicy createRetryPolicy (final String page, final RetryPolicy defaults) {
+		final String suffix = page == null ? "" : "." + page;
+		final int maxAttempts = configuration.getIntProperty("retryMaxAttempts" + suffix, defaults.getMaxAttempts());
+		final int baseDelay = configuration.getIntProperty("retryBaseDelay" + suffix, (int) defaults.getBaseDelay());
+		final int maxDelay = configuration.getIntProperty("retryMaxDelay" + suffix, (int) defaults.getMaxDelay());
+		final int deadline = configuration.getIntProperty("requestDeadline" + suffix, (int) defaults.getDeadline());
+		try {
+			final RetryPolicy retryPolicy = new RetryPolicy(maxAttempts, baseDelay, maxDelay, deadline);
+			lg.config("Retry policy" + (page == null ? "" : " of " + page) + ": " + retryPolicy);
+			return retryPolicy;
+		} catch (final IllegalArgumentException e) {
+			lg.warning(e.getMessage() + ", using " + defaults);
+			return defaults;
+		}
+	}
+
+	/**
+	 * Return the configuration of the session.
+	 * @return the configuration.
+	 */
+	public Configuration getConfiguration () {
+		return configuration;
+	}
+
+	/**
+	 * Return the query manager used by the session.
+	 * @return the query manager.
+	 */
+	public QueryManager getQueryManager () {
+		return api;
+	}
+
+	/**
+	 * Return the typed client of the API used by the session.
+	 * @return the client.
+	 */
+	public BetaSeriesClient getClient () {
+		return client;
+	}
+
+	/**
+	 * Keep a snapshot of the episodes of each successful export in memory.<br />
+	 * With the streaming parser, the list of episodes is then kept in memory during the export.
+	 * @param keepSnapshot
+	 *            <code>true</code> to keep the snapshots.
+	 */
+	public void setKeepSnapshot (final boolean keepSnapshot) {
+		this.keepSnapshot = keepSnapshot;
+	}
+
+	/**
+	 * Keep an index of the episodes of each successful export, to {@link #getIndex() search}
+	 * them.<br />
+	 * With the streaming parser, the index is built while the response is parsed.
+	 * @param keepIndex
+	 *            <code>true</code> to keep the index.
+	 */
+	public void setKeepIndex (final boolean keepIndex) {
+		this.keepIndex = keepIndex;
+	}
+
+	/**
+	 * Return the index of the episodes of the last successful export.<br />
+	 * Like the snapshot, the index is replaced at once at the end of each export.
+	 * @return the index, <code>null</code> if no export succeeded or if the index is not
+	 *         {@link #setKeepIndex(boolean) kept}.
+	 */
+	public EpisodeIndex getIndex () {
+		return index;
+	}
+
+	/**
+	 * Return the snapshot of the last successful export.<br />
+	 * The snapshot is replaced at once at the end of each export, so it can be read from any
+	 * thread without waiting for an export in progress.
+	 * @return the snapshot, <code>null</code> if no export succeeded or if the snapshots are not
+	 *         {@link #setKeepSnapshot(boolean) kept}.
+	 */
+	public ExportSnapshot getSnapshot () {
+		return snapshot;
+	}
+
+	/**
+	 * Load the snapshot from the <code>snapshotFile</code> of the configuration, so the last export
+	 * is available before the first request to the API.
+	 * @return <code>true</code> if the snapshot has been loaded.
+	 */
+	public boolean loadSnapshot () {
+		final File file = getSnapshotFile();
+		if (file == null || !file.isFile()) {
+			return false;
+		}
+		try {
+			snapshot = SnapshotFile.read(file, configuration, getOutputCharset());
+			if (keepIndex) {
+				index = EpisodeIndex.of(snapshot.getEpisodes());
+			}
+			return true;
+		} catch (final IOException e) {
+			lg.warning("Cannot load the snapshot " + file + " (" + e.getMessage() + ")");
+		} catch (final IllegalArgumentException e) {
+			lg.warning("Cannot load the snapshot " + file + " (" + e.getMessage() + ")");
+		}
+		return false;
+	}
+
+	/**
+	 * Export the episodes saved in the <code>snapshotFile</code> of the configuration, without any
+	 * request to the API.<br />
+	 * The files are dated when the episodes of the snapshot have been fetched.
+	 * @return the result of the export.
+	 */
+	public ExportStatus exportFromSnapshot () {
+		final File file = getSnapshotFile();
+		if (file == null) {
+			notifier.error("Export hors ligne", "Aucun fichier de sauvegarde, renseignez l'entre snapshotFile.");
+			return ExportStatus.CONFIGURATION_ERROR;
+		}
+		final ExportOutput output = createOutput();
+		if (output == null) {
+			return showExportResult(false);
+		}
+		final ExportSnapshot saved;
+		try {
+			saved = SnapshotFile.read(file, configuration, output.getCharset());
+		} catch (final IOException e) {
+			lg.severe("Cannot read the snapshot " + file + " (" + e.getMessage() + ")");
+			notifier.error("Export hors ligne", "Le fichier " + file + " n'a pas pu tre lu." + NEW_LINE + "Cause : "
+					+ e.getMessage());
+			return ExportStatus.CONFIGURATION_ERROR;
+		}
+
+		boolean success = false;
+		try {
+			output.start(saved.getDate(), configuration);
+			for (final Episode episode : saved.getEpisodes()) {
+				output.handle(episode);
+			}
+			output.end();
+			success = true;
+		} catch (final IOException e) {
+			lg.severe("Cannot write to file (" + e.getMessage() + ")");
+			notifier.error("Erreur d'criture", "criture dans le fichier " + output.getFiles() + " impossible." +
+					NEW_LINE + "Cause : " + e.getMessage());
+		} finally {
+			output.close();
+		}
+		if (keepSnapshot) {
+			snapshot = saved;
+		}
+		if (keepIndex) {
+			index = EpisodeIndex.of(saved.getEpisodes());
+		}
+		return showExportResult(success);
+	}
+
+	/**
+	 * Return the binary snapshot file of the configuration.
+	 * @return the file, <code>null</code> if the snapshots are not saved.
+	 */
+	private File getSnapshotFile () {
+		final String snapshotFile = configuration.getProperty("snapshotFile");
+		return snapshotFile == null || snapshotFile.isEmpty() ? null : new File(snapshotFile);
+	}
+
+	/**
+	 * Check if the episodes must be kept after their export, for the snapshots.
+	 * @return <code>true</code> if the episodes must be kept.
+	 */
+	private boolean isSnapshotNeeded () {
+		return keepSnapshot || keepIndex || getSnapshotFile() != null;
+	}
+
+	/**
+	 * Save the episodes of an export in the snapshot file, and replace the snapshot and the index
+	 * in memory if they are kept.<br />
+	 * The snapshot in memory is kept as is if the episodes did not change, so its renderings are
+	 * reused.
+	 * @param output the output of the export.
+	 * @param episodes the episodes exported, <code>null</code> if they have not been kept.
+	 * @param episodeIndex the index built during the export, <code>null</code> to build it from
+	 *            the episodes.
+	 */
+	private void publish (final ExportOutput output, final List<Episode> episodes, final EpisodeIndex episodeIndex) {
+		if (episodes == null) {
+			return;
+		}
+		if (keepIndex) {
+			index = episodeIndex == null ? EpisodeIndex.of(episodes) : episodeIndex;
+		}
+		final File file = getSnapshotFile();
+		if (file != null) {
+			try {
+				SnapshotFile.write(file, episodes, new Date());
+			} catch (final IOException e) {
+				lg.warning("Cannot write the snapshot " + file + " (" + e.getMessage() + ")");
+			}
+		}
+		if (!keepSnapshot) {
+			return;
+		}
+		final ExportSnapshot current = snapshot;
+		if (current != null && current.getEpisodes().equals(episodes)) {
+			return;
+		}
+		snapshot = new ExportSnapshot(episodes, new Date(), configuration, output.getCharset());
+	}
+
+	/**
+	 * Return the token stored by a previous session.
+	 * @param login
+	 *            the login of the user, <code>null</code> to accept the token of any user.
+	 * @return the token, <code>null</code> if no token is stored for the user.
+	 */
+	public String getStoredToken (final String login) {
+		if (tokenStore == null) {
+			return null;
+		}
+		final String[] stored = tokenStore.load(login);
+		if (stored == null) {
+			return null;
+		}
+		lg.info("Reusing the token stored for " + stored[0]);
+		account = stored[0];
+		storedToken = stored[1];
+		return storedToken;
+	}
+
+	/**
+	 * Login to the BetaSeries account.
+	 * @param login
+	 *            the login of the user.
+	 * @param password
+	 *            the password of the user, in clear.
+	 * @return the token of the user, <code>null</code> if the connection failed.
+	 */
+	public String login (final String login, final String password) {
+		account = login;
+		final String token;
+		try {
+			token = client.login(login, getMD5(password));
+		} catch (final IOException e) {
+			lg.warning("Connection to account has failed: " + e.getMessage());
+			return null;
+		} catch (final ApiException e) {
+			lg.warning("Connection to account has failed: " + e.getMessage());
+			return null;
+		}
+
+		if (tokenStore != null) {
+			tokenStore.save(login, token);
+		}
+		return token;
+	}
+
+	/**
+	 * Check if a token is still valid.
+	 * @param token
+	 *            the token to check.
+	 * @return <code>true</code> if the token can still be used.
+	 */
+	public boolean isTokenValid (final String token) {
+		try {
+			return client.isTokenValid(token);
+		} catch (final IOException e) {
+			lg.warning("Cannot check the token (" + e.getMessage() + ")");
+			return false;
+		}
+	}
+
+	/**
+	 * End the session.<br />
+	 * The token is destroyed only if the logout is enabled in the configuration (which is the
+	 * default when the token is not stored). The metrics of the requests are written in the
+	 * <code>metricsFile</code> of the configuration, if any, and the statistics of the rate
+	 * limiter are logged. Must be called at the end of every session, even when the user could
+	 * not login.
+	 * @param token
+	 *            the token of the user, <code>null</code> if the user is not logged in.
+	 */
+	public void close (final String token) {
+		// The token may still be used by the refresh of the cache
+		api.awaitPendingRefresh();
+		if (logoutEnabled && token != null) {
+			logout(token);
+			if (tokenStore != null) {
+				tokenStore.clear();
+			}
+		}
+
+		// Writing the metrics of the requests
+		final RequestMetrics metrics = api.getMetrics();
+		lg.info("Request metrics: " + metrics);
+		final String metricsFile = configuration.getProperty("metricsFile");
+		if (metricsFile != null && !metricsFile.isEmpty()) {
+			try {
+				metrics.dump(new File(metricsFile));
+			} catch (final IOException e) {
+				lg.warning("Cannot write the request metrics in " + metricsFile + " (" + e.getMessage() + ")");
+			}
+		}
+		metrics.unregister();
+		// A shared rate limiter is closed by its owner
+		final RequestScheduler scheduler = api.getScheduler();
+		if (scheduler != null && !sharedScheduler) {
+			lg.info("Request scheduler: " + scheduler);
+			scheduler.unregister();
+		}
+	}
+
+	/**
+	 * Logout the current token for the API.
+	 * @param token the token to destroy.
+	 */
+	public void logout (final String token) {
+		try {
+			client.logout(token);
+		} catch (final IOException e) {
+			lg.warning("Failed do destroy connection token properly (" + e.getMessage() + ").");
+		} catch (final ApiException e) {
+			lg.warning("Failed do destroy connection token properly (" + e.getMessage() + ").");
+		}
+	}
+
+	/**
+	 * Export the episodes of the user with the mode and the parser chosen in the configuration.<br />
+	 * The <code>exportMode</code> of the configuration selects the episodes exported:
+	 * <code>next</code> (the next episode of each show, by default), <code>unwatched</code> (all
+	 * the episodes not seen yet) or <code>history</code> (all the episodes seen).
+	 * @param token the token of the user.
+	 * @return the result of the export.
+	 */
+	public ExportStatus export (final String token) {
+		final String mode = getExportMode();
+		if (!MODE_NEXT.equals(mode)) {
+			return exportAll(token, mode);
+		}
+		if (Boolean.parseBoolean(configuration.getProperty("deltaExport"))) {
+			return exportWithDelta(token);
+		}
+		if (XmlParsers.Kind.forName(configuration.getProperty("parser")) == XmlParsers.Kind.DOM) {
+			return exportWithDom(token);
+		}
+		return exportWithStream(token);
+	}
+
+	/**
+	 * Export the episodes of the account from the cache, without any request to the API.<br />
+	 * Only a fresh response of the cache is used.
+	 * Only the <code>next</code> export mode is exported from the cache.
+	 * @param login the login of the user.
+	 * @return the result of the export, <code>null</code> if the cache has no fresh response.
+	 */
+	public ExportStatus exportFromCache (final String login) {
+		if (!MODE_NEXT.equals(getExportMode()) || configuration.getProperty("outputFile") == null || !client.hasFreshNextEpisodes(login)) {
+			return null;
+		}
+		account = login;
+		lg.info("Exporting episodes from the cache");
+		return exportWithStream(null);
+	}
+
+	/**
+	 * Export the episodes by loading the whole response of the API in a DOM document.
+	 * @param token the token of the user.
+	 * @return the result of the export.
+	 */
+	private ExportStatus exportWithDom (final String token) {
+		// The request for the episodes
+		final List<Episode> nextEpisodes;
+		try {
+			nextEpisodes = client.nextEpisodes(token);
+		} catch (final IOException e) {
+			lg.severe("Request to the API failed (" + e.getMessage() + ")");
+			return apiError(token, "La connection  l'API a chou.");
+		} catch (final ApiException e) {
+			return apiError(token, e.getMessage());
+		}
+
+		// Generating the files
+		final ExportOutput output = createOutput();
+		return showExportResult(output != null && writeEpisodes(output, nextEpisodes));
+	}
+
+	/**
+	 * Export the episodes only if they changed since the last export.<br />
+	 * The episodes of the last export are kept in a state file next to the export file; the
+	 * differences with the new list are appended to a changelog. When the list did not change, the
+	 * export file is not written at all.
+	 * @param token the token of the user.
+	 * @return the result of the export.
+	 */
+	private ExportStatus exportWithDelta (final String token) {
+		final ExportOutput output = createOutput();
+		if (output == null) {
+			return showExportResult(false);
+		}
+
+		// Parsing the episodes
+		final List<Episode> episodes = new ArrayList<Episode>();
+		InputStream response = null;
+		try {
+			response = client.openNextEpisodes(account, token);
+			final EpisodeStreamParser parser = new EpisodeStreamParser();
+			final long parseStart = System.nanoTime();
+			final boolean noError = parser.parse(response, new EpisodeHandler() {
+				@Override
+				public void handle (final Episode episode) {
+					episodes.add(episode);
+				}
+			});
+			api.recordParse(API.MEMBER_EPISODES, parser, parseStart, noError);
+			if (!noError) {
+				return apiError(token, parser.getErrorMessage());
+			}
+		} catch (final XMLStreamException e) {
+			lg.severe("Cannot parse the response of the API (" + e.getMessage() + ")");
+			notifier.error("Erreur de communication", "La connection  l'API a chou.\nCause : " + e.getMessage());
+			return ExportStatus.API_ERROR;
+		} catch (final IOException e) {
+			lg.severe("Cannot retrieve the episodes (" + e.getMessage() + ")");
+			notifier.error("Erreur de communication", "La connection  l'API a chou.\nCause : " + e.getMessage());
+			return ExportStatus.API_ERROR;
+		} finally {
+			close(response);
+		}
+
+		return writeChanges(output, episodes);
+	}
+
+	/**
+	 * Write the episodes only if they changed since the last export.<br />
+	 * The differences are appended to the changelog and the state file is updated. If the state
+	 * file cannot be read, the episodes are exported as if there was no previous export.
+	 * @param output the output for the export files.
+	 * @param episodes the episodes to export.
+	 * @return the result of the export.
+	 */
+	private ExportStatus writeChanges (final ExportOutput output, final List<Episode> episodes) {
+		final String fileName = output.getOutputFile();
+		final File state = new File(fileName + STATE_EXTENSION);
+		EpisodeDelta delta = null;
+		try {
+			delta = EpisodeDelta.compute(EpisodeDelta.loadState(state), episodes);
+		} catch (final IOException e) {
+			lg.warning("Cannot read the state of the last export, exporting all the episodes (" + e.getMessage()
+					+ ")");
+		}
+		try {
+			if (delta != null && delta.isEmpty() && allFilesExist(output.getFiles())) {
+				lg.info("Episodes unchanged since the last export, file not written");
+				publish(output, episodes, null);
+				notifier.info("Export inchang", "La liste des pisodes n'a pas chang depuis le dernier export.");
+				return ExportStatus.SUCCESS;
+			}
+			if (delta != null) {
+				lg.info("Episodes changed since the last export: " + delta);
+			}
+			if (!writeEpisodes(output, episodes)) {
+				return showExportResult(false);
+			}
+			EpisodeDelta.saveState(state, episodes);
+			// Without the previous state, the changes are not known
+			if (delta != null) {
+				delta.appendTo(new File(fileName + CHANGELOG_EXTENSION), new Date());
+			}
+		} catch (final IOException e) {
+			lg.severe("Cannot update the state of the export (" + e.getMessage() + ")");
+			return showExportResult(false);
+		}
+		return showExportResult(true);
+	}
+
+	/**
+	 * Export all the unwatched episodes, or the whole history, of the shows of the user.<br />
+	 * The episodes are fetched show by show, several shows at the same time (the
+	 * <code>fetchConcurrency</code> of the configuration), and exported in the order of the shows
+	 * of the account.
+	 * @param token the token of the user.
+	 * @param mode the export mode, {@link #MODE_UNWATCHED} or {@link #MODE_HISTORY}.
+	 * @return the result of the export.
+	 */
+	private ExportStatus exportAll (final String token, final String mode) {
+		final ExportOutput output = createOutput();
+		if (output == null) {
+			return showExportResult(false);
+		}
+
+		// The shows of the user
+		final List<Show> shows;
+		try {
+			shows = client.shows(token);
+		} catch (final IOException e) {
+			lg.severe("Request to the API failed (" + e.getMessage() + ")");
+			return apiError(token, "La connection  l'API a chou.");
+		} catch (final ApiException e) {
+			return apiError(token, e.getMessage());
+		}
+		final boolean history = MODE_HISTORY.equals(mode);
+		final List<PagedEpisodeFetcher.Page> pages = new ArrayList<PagedEpisodeFetcher.Page>(shows.size());
+		for (final Show show : shows) {
+			pages.add(history ? BetaSeriesClient.showEpisodesPage(token, show)
+					: BetaSeriesClient.unwatchedEpisodesPage(token, show));
+		}
+		lg.info("Exporting the " + mode + " episodes of " + pages.size() + " shows");
+
+		// Fetching the episodes of the shows
+		final PagedEpisodeFetcher fetcher = new PagedEpisodeFetcher(api, account,
+				configuration.getIntProperty("fetchConcurrency", PagedEpisodeFetcher.DEFAULT_CONCURRENCY));
+		try {
+			if (!fetcher.fetch(pages, history)) {
+				return apiError(token, fetcher.getErrorMessage());
+			}
+		} catch (final XMLStreamException e) {
+			lg.severe("Cannot parse the response of the API (" + e.getMessage() + ")");
+			notifier.error("Erreur de communication", "La connection  l'API a chou.\nCause : " + e.getMessage());
+			return ExportStatus.API_ERROR;
+		} catch (final IOException e) {
+			lg.severe("Cannot retrieve the episodes (" + e.getMessage() + ")");
+			notifier.error("Erreur de communication", "La connection  l'API a chou.\nCause : " + e.getMessage());
+			return ExportStatus.API_ERROR;
+		}
+
+		if (Boolean.parseBoolean(configuration.getProperty("deltaExport"))) {
+			return writeChanges(output, fetcher.getEpisodes());
+		}
+		return showExportResult(writeEpisodes(output, fetcher.getEpisodes()));
+	}
+
+	/**
+	 * Return the export mode chosen in the configuration.
+	 * @return the export mode, {@link #MODE_NEXT} if the mode is missing or unknown.
+	 */
+	private String getExportMode () {
+		final String mode = configuration.getProperty("exportMode");
+		if (mode == null || mode.isEmpty()) {
+			return MODE_NEXT;
+		}
+		if (!MODE_NEXT.equals(mode) && !MODE_UNWATCHED.equals(mode) && !MODE_HISTORY.equals(mode)) {
+			lg.warning("Unknown export mode " + mode + ", using " + MODE_NEXT);
+			return MODE_NEXT;
+		}
+		return mode;
+	}
+
+	/**
+	 * Create the output for the export files, in the formats and charset chosen in the
+	 * configuration.
+	 * @return the output, <code>null</code> if there is no export file or if a format or the
+	 *         charset is unknown.
+	 */
+	private ExportOutput createOutput () {
+		final String fileName = getOutputFileName();
+		if (fileName == null) {
+			return null;
+		}
+		final String formats = configuration.getProperty("formats");
+		try {
+			return new ExportOutput(Exporters.createAll(formats == null ? TextExporter.FORMAT : formats), fileName,
+					getOutputCharset());
+		} catch (final IllegalArgumentException e) {
+			lg.severe("Cannot create the exporters (" + e.getMessage() + ")");
+			notifier.error("Format d'export", e.getMessage());
+			return null;
+		}
+	}
+
+	/**
+	 * Return the charset of the export files chosen in the configuration.
+	 * @return the charset.
+	 * @throws IllegalArgumentException
+	 *             if the charset is unknown.
+	 */
+	private Charset getOutputCharset () {
+		final String charset = configuration.getProperty("outputCharset");
+		return charset == null ? DEFAULT_OUTPUT_CHARSET : Charset.forName(charset);
+	}
+
+	/**
+	 * Write the episodes in the export files.
+	 * @param output the output for the export files.
+	 * @param episodes the episodes to write.
+	 * @return <code>true</code> if the files have been written.
+	 */
+	private boolean writeEpisodes (final ExportOutput output, final List<Episode> episodes) {
+		try {
+			output.start(new Date(), configuration);
+			for (final Episode episode : episodes) {
+				output.handle(episode);
+			}
+			output.end();
+			publish(output, episodes, null);
+			return true;
+		} catch (final IOException e) {
+			lg.severe("Cannot write to file (" + e.getMessage() + ")");
+			notifier.error("Erreur d'criture", "criture dans le fichier " + output.getFiles() + " impossible." +
+					NEW_LINE + "Cause : " + e.getMessage());
+			return false;
+		} finally {
+			output.close();
+		}
+	}
+
+	/**
+	 * Check if all the files exist.
+	 * @param files the files.
+	 * @return <code>true</code> if every file exists.
+	 */
+	private static boolean allFilesExist (final Collection<File> files) {
+		for (final File file : files) {
+			if (!file.isFile()) {
+				return false;
+			}
+		}
+		return true;
+	}
+
+	/**
+	 * Export the episodes by streaming the response of the API.<br />
+	 * Each episode is written in the file as soon as it is parsed, so the memory used does not
+	 * depend on the size of the list.
+	 * @param token the token of the user.
+	 * @return the result of the export.
+	 */
+	private ExportStatus exportWithStream (final String token) {
+		final ExportOutput output = createOutput();
+		if (output == null) {
+			return showExportResult(false);
+		}
+		
+		InputStream response = null;
+		boolean success = false;
+		final List<Episode> episodes = isSnapshotNeeded() ? new ArrayList<Episode>() : null;
+		final EpisodeIndex streamIndex = keepIndex ? new EpisodeIndex() : null;
+		try {
+			response = client.openNextEpisodes(account, token);
+			output.start(new Date(), configuration);
+			final EpisodeStreamParser parser = new EpisodeStreamParser();
+			final long parseStart = System.nanoTime();
+			final boolean noError = parser.parse(response, episodes == null ? output : new EpisodeHandler() {
+				@Override
+				public void handle (final Episode episode) throws IOException {
+					output.handle(episode);
+					episodes.add(episode);
+					if (streamIndex != null) {
+						streamIndex.handle(episode);
+					}
+				}
+			});
+			api.recordParse(API.MEMBER_EPISODES, parser, parseStart, noError);
+			if (!noError) {
+				return apiError(token, parser.getErrorMessage());
+			}
+			output.end();
+			publish(output, episodes, streamIndex);
+			success = true;
+		} catch (final XMLStreamException e) {
+			lg.severe("Cannot parse the response of the API (" + e.getMessage() + ")");
+			notifier.error("Erreur de communication", "La connection  l'API a chou.\nCause : " + e.getMessage());
+			return ExportStatus.API_ERROR;
+		} catch (final IOException e) {
+			lg.severe("Cannot export the episodes (" + e.getMessage() + ")");
+			notifier.error("Erreur d'criture", "criture dans le fichier " + output.getFiles() + " impossible." +
+					NEW_LINE + "Cause : " + e.getMessage());
+		} finally {
+			close(response);
+			output.close();
+		}
+		return showExportResult(success);
+	}
+
+	/**
+	 * Handle an error returned by the API.<br />
+	 * If the request used a stored token which is not valid anymore, the token is forgotten so
+	 * the caller can login again; otherwise the error is reported to the user.
+	 * @param token the token of the user.
+	 * @param errorMessage the error returned by the API.
+	 * @return the result of the export.
+	 */
+	private ExportStatus apiError (final String token, final String errorMessage) {
+		if (token != null && token.equals(storedToken) && !isTokenValid(token)) {
+			lg.info("The stored token is not valid anymore");
+			storedToken = null;
+			tokenStore.clear();
+			return ExportStatus.INVALID_TOKEN;
+		}
+		notifier.error("Erreur de communication", errorMessage);
+		return ExportStatus.API_ERROR;
+	}
+
+	/**
+	 * Inform the user of the result of the export.
+	 * @param success <code>true</code> if the file has been written.
+	 * @return the result of the export.
+	 */
+	private ExportStatus showExportResult (final boolean success) {
+		if (success) {
+			notifier.info("Export russi", "Liste des pisodes exports avec succs.");
+			return ExportStatus.SUCCESS;
+		}
+		notifier.error("Export chou", "Echec lors de l'criture du fichier, consultez les logs ('%TEMP%\\java_bsexporter.log') " +
+				"pour plus de dtails.");
+		return ExportStatus.WRITE_ERROR;
+	}
+
+	/**
+	 * Close a stream, logging the error if it fails.
+	 * @param stream the stream to close, may be <code>null</code>.
+	 */
+	private static void close (final Closeable stream) {
+		if (stream != null) {
+			try {
+				stream.close();
+			} catch (final IOException e) {
+				lg.warning("Cannot close stream (" + e.getMessage() + ")");
+			}
+		}
+	}
+
+	/**
+	 * Return the name of the export file.<br />
+	 * Ask the user if the name is not available in the configuration file.
+	 * @return the name of the file, <code>null</code> if the user did not specify any.
+	 */
+	private String getOutputFileName () {
+		String fileName = configuration.getProperty("outputFile");
+		if (fileName == null) {
+			fileName = notifier.ask("Fichier d'export",
+					"Fichier de configuration non charg, veuillez spcifier le nom du fichier d'export :");
+		}
+		return fileName;
+	}
+
+	/**
+	 * Computes the MD5 of a string.
+	 * @param text the text to hash
+	 * @return the hash of the text
+	 */
+	public static String getMD5 (final String text) {
+		try {
+			final StringBuffer buffer = new StringBuffer();
+			final MessageDigest msgDigest = MessageDigest.getInstance("MD5");
+			msgDigest.update(text.getBytes("UTF-8"));
+			
+			final byte[] digest = msgDigest.digest();
+			for (final byte element : digest) {
+				int value = element;
+				if (value < 0) {
+					value += 256;
+				}
+				// Add a zero in case of 'short' hash.
+				if (value <= 14) {
+					buffer.append("0" + Integer.toHexString(value));
+				} else {
+					buffer.append(Integer.toHexString(value));
+				}
+			}
+			return buffer.toString();
+		} catch (final NoSuchAlgorithmException e) {
+			lg.warning("Error while computing MD5, no MD5 algorithm found (" + e.getMessage() + ").");
+			return null;
+		} catch (final UnsupportedEncodingException e) {
+			lg.warning("Error while computing MD5, encoding not supported (" + e.getMessage() + ").");
+			return null;
+		}
+	}
+}
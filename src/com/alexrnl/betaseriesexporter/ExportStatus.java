@@ -0,0 +1,40 @@
+package com.alexrnl.betaseriesexporter;
+
+/**
+ * Enumeration of the results of an export.<br />
+ * Each result has the exit code returned by the command line.
+ * @author Alex
+ */
+public enum ExportStatus {
+	/** The episodes have been exported */
+	SUCCESS(0),
+	/** The arguments or the configuration are not valid */
+	CONFIGURATION_ERROR(1),
+	/** The user could not be logged in */
+	LOGIN_ERROR(2),
+	/** The token of the user is not valid anymore: the user must login again */
+	INVALID_TOKEN(2),
+	/** The request to the API failed or returned an error */
+	API_ERROR(3),
+	/** The export file could not be written */
+	WRITE_ERROR(4);
+
+	private final int	exitCode;
+
+	/**
+	 * Constructor #1.<br />
+	 * @param exitCode
+	 *            the exit code of the command line.
+	 */
+	private ExportStatus (final int exitCode) {
+		this.exitCode = exitCode;
+	}
+
+	/**
+	 * Return the exit code of the command line for this result.
+	 * @return the exit code.
+	 */
+	public int getExitCode () {
+		return exitCode;
+	}
+}
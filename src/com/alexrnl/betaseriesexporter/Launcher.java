@@ -1,31 +1,8 @@
 package com.alexrnl.betaseriesexporter;
 
-import java.io.File;
-import java.io.FileInputStream;
-import java.io.FileOutputStream;
 import java.io.IOException;
-import java.nio.ByteBuffer;
-import java.nio.channels.FileChannel;
-import java.nio.charset.Charset;
-import java.nio.charset.CharsetEncoder;
-import java.text.SimpleDateFormat;
-import java.util.ArrayList;
-import java.util.Calendar;
-import java.util.HashMap;
-import java.util.List;
-import java.util.Map;
-import java.util.Properties;
 import java.util.logging.Logger;
 
-import javax.swing.JOptionPane;
-import javax.swing.UIManager;
-import javax.swing.UIManager.LookAndFeelInfo;
-import javax.swing.UnsupportedLookAndFeelException;
-
-import org.w3c.dom.Document;
-import org.w3c.dom.Element;
-import org.w3c.dom.NodeList;
-
 /**
  * The main class of the project.<br />
  * Allow a member of BetaSeries.com to log in and export its episodes list.
@@ -33,32 +10,24 @@ import org.w3c.dom.NodeList;
  * @author Alex
  */
 public final class Launcher {
-	private static Logger		lg					= Logger.getLogger(Launcher.class.getName());
+	private static Logger			lg					= Logger.getLogger(Launcher.class.getName());
 
-	private static final String	CONFIGURATION_FILE	= "conf/configuration.xml";
-	private static final String DEFAULT_DATE_FORMAT = "EEEE d MMMM yyyy  HH'h'mm";
+	private static final String		CONFIGURATION_FILE	= "conf/configuration.xml";
 
-	private static QueryManager	api					= null;
-	private static Properties	configuration		= null;
-	private static String		newLine				= System.getProperty("line.separator");
+	private final UserInterface		userInterface;
+	private final Notifier			notifier;
+	private final ExportSession		session;
 	
 	/**
 	 * Constructor #1.<br />
-	 * Default constructor declared to avoid creating an instance of the class anywhere.
+	 * @param userInterface the user interface of the application.
+	 * @param notifier the notifier for the messages to the user.
+	 * @param session the session of the export.
 	 */
-	private Launcher() {
-	}
-	
-	/**
-	 * Get the value of the property specified in the configuration file.
-	 * @param property the name of the property to retrieve.
-	 * @return the value of the property.
-	 */
-	public static String getProperty (String property) {
-		if (configuration == null || configuration.isEmpty()) {
-			return null;
-		}
-		return configuration.getProperty(property);
+	private Launcher (final UserInterface userInterface, final Notifier notifier, final ExportSession session) {
+		this.userInterface = userInterface;
+		this.notifier = notifier;
+		this.session = session;
 	}
 	
 	/**
@@ -67,208 +36,76 @@ public final class Launcher {
 	 */
 	public static void main (final String args[]) {
 		lg.info("Starting program");
+		// The interface is prepared while the configuration is loaded and the export started
+		final UserInterface userInterface = UserInterface.start();
+		final Notifier notifier = new SwingNotifier(userInterface);
 		// Loading configuration
-		configuration = new Properties();
+		final Configuration configuration = new Configuration();
+		IOException configurationError = null;
 		try {
-			configuration.loadFromXML(new FileInputStream(CONFIGURATION_FILE));
+			configuration.load(CONFIGURATION_FILE);
 		} catch (final IOException e) {
-			lg.severe("Could not load configuration (" + e.getMessage() + ")");
-			JOptionPane.showMessageDialog(null, "Le fichier de configuration " + CONFIGURATION_FILE +
-					" n'a pas pu tre charg.", "Fichier de configuration", JOptionPane.ERROR_MESSAGE);
+			configurationError = e;
 		}
-		
-		if (!configuration.isEmpty()) {
-			setLookAndFeel();
+		userInterface.setLookAndFeel(configuration.isEmpty() ? null : configuration.getProperty("lookAndFeel"));
+		if (configurationError != null) {
+			lg.severe("Could not load configuration (" + configurationError.getMessage() + ")");
+			notifier.error("Fichier de configuration", "Le fichier de configuration " + CONFIGURATION_FILE +
+					" n'a pas pu tre charg.");
 		}
 		
-		// Building the query manager
-		final Map<String, String> compulsoryParams = new HashMap<String, String>();
-		compulsoryParams.put(API.KEY_PARAM, API.KEY);
-		compulsoryParams.put(API.USER_AGENT_PARAM, API.USER_AGENT);
-		api = new QueryManager(API.HOST, compulsoryParams);
-
-		// Retrieve the token for the user
-		final String token = LoginForm.getToken(api);
-		if (token == null || token.isEmpty()) {
-			JOptionPane.showMessageDialog(null,
-					"Vous devez tre connect  BetaSeries pour utiliser" + "cette application",
-					"Erreur", JOptionPane.ERROR_MESSAGE);
-			return;
-		}
+		final ExportSession session = new ExportSession(configuration, notifier);
+		session.setKeepIndex(Boolean.parseBoolean(configuration.getProperty("searchWindow")));
 
-		// The request for the episodes
-		final Map<String, String> params = new HashMap<String, String>();
-		params.put(API.VIEW, API.NEXT);
-		params.put(API.TOKEN, token);
-		final Document doc = api.execute(API.MEMBER_EPISODES, params);
-
-		if (doc == null || QueryManager.hasError(doc)) {
-			String errorMessage;
-			if (doc == null) {
-				errorMessage = "Null response";
-			} else  {
-				errorMessage = QueryManager.getTextValue((Element) doc.getElementsByTagName(API.ERRORS)
-					.item(0), API.ERROR_CONTENT);
-			}
-			JOptionPane.showMessageDialog(null, errorMessage, "Erreur de communication",
-					JOptionPane.ERROR_MESSAGE);
-			logout(token);
-			return;
-		}
-
-		// Building the list of episodes from the documents
-		final List<String> nextEpisodes = createListEpisodes(doc);
-
-		// Generating the file
-		final StringBuilder output = new StringBuilder("Prochains pisodes  regarder:");
-		for (final String episode : nextEpisodes) {
-			output.append(newLine + "\t" + episode);
-		}
-		// Append the date
-		final String dateFormat = configuration.isEmpty() ? DEFAULT_DATE_FORMAT : configuration.getProperty("dateFormat");
-		output.append(newLine + "Mis  jour le " + new SimpleDateFormat(dateFormat).format(Calendar.getInstance().getTime()));
-		final String episodesOutput = output.toString();
-		lg.fine(episodesOutput);
-		
-		if (createFile(episodesOutput)) {
-			JOptionPane.showMessageDialog(null, "Liste des pisodes exports avec succs.", "Export russi", JOptionPane.INFORMATION_MESSAGE);
+		// Retrieve the token for the user; the export is chained on the login
+		final Launcher launcher = new Launcher(userInterface, notifier, session);
+		final String token = session.getStoredToken(null);
+		if (token == null) {
+			launcher.exportWithLogin(true);
 		} else {
-			JOptionPane.showMessageDialog(null, "Echec lors de l'criture du fichier, consultez les logs ('%TEMP%\\java_bsexporter.log') " +
-					"pour plus de dtails.",
-					"Export chou", JOptionPane.ERROR_MESSAGE);
+			launcher.export(token, true);
 		}
-		
-		logout(token);
-		lg.info("Exiting program.");
-		
 	}
 
 	/**
-	 * Sets the look and feel of the application
+	 * Show the login form and run the export as soon as the user is logged in.<br />
+	 * The calling thread does not wait for the login.
+	 * @param canRetry <code>true</code> if the login may be asked again when the token is refused.
 	 */
-	private static void setLookAndFeel () {
-		final String lookAndFeelName = configuration.getProperty("lookAndFeel");
-		boolean lookAndFeelFound = false;
-		for (final LookAndFeelInfo laf : UIManager.getInstalledLookAndFeels()) {
-			lg.fine(laf.getName());
-			if (laf.getName().equals(lookAndFeelName)) {
-				try {
-					UIManager.setLookAndFeel(laf.getClassName());
-					lookAndFeelFound = true;
-				} catch (final ClassNotFoundException e) {
-					lg.warning("Could not set the look and feel " + laf.getName() + ", class not found: " + e.getMessage());
-					lookAndFeelFound = false;
-				} catch (final InstantiationException e) {
-					lg.warning("Could not set the look and feel " + laf.getName() + ", instantiation failed: " + e.getMessage());
-					lookAndFeelFound = false;
-				} catch (final IllegalAccessException e) {
-					lg.warning("Could not set the look and feel " + laf.getName() + ", access to the class denied: " + e.getMessage());
-					lookAndFeelFound = false;
-				} catch (final UnsupportedLookAndFeelException e) {
-					lg.warning("Could not set the look and feel " + laf.getName() + ", look and feel not supported: " + e.getMessage());
-					lookAndFeelFound = false;
-				}
+	private void exportWithLogin (final boolean canRetry) {
+		userInterface.await();
+		LoginForm.requestToken(session, new LoginForm.LoginListener() {
+			@Override
+			public void loggedIn (final String token) {
+				export(token, canRetry);
 			}
-		}
-		if (!lookAndFeelFound) {
-			lg.warning("Could not find (or set) the look and feel " + lookAndFeelName
-					+ ". Using default look and feel.");
-		}
-	}
 
-	/**
-	 * Logout the current token for the API.
-	 * @param token the token to destroy.
-	 */
-	private static void logout (final String token) {
-		// Preparing the parameters for logging out
-		final Map<String, String> paramLogout = new HashMap<String, String>();
-		paramLogout.put(API.TOKEN, token);
-	
-		final Document doc = api.execute(API.LOGOUT_PAGE, paramLogout);
-		if (QueryManager.hasError(doc)) {
-			lg.warning("Failed do destroy connection token properly.");
-		}
-	}
-
-	/**
-	 * Create a list with the list of episodes from a document.
-	 * @param doc the document to parse.
-	 * @return the list with the episodes information, nicely formatted.
-	 */
-	private static List<String> createListEpisodes (final Document doc) {
-		final List<String> nextEpisodes = new ArrayList<String>();
-		final NodeList episodes = doc.getElementsByTagName(API.EPISODE);
-		
-		for (int currentEpisodeNb = 0; currentEpisodeNb < episodes.getLength(); ++currentEpisodeNb) {
-			final Element currentEpisode = (Element) episodes.item(currentEpisodeNb);
-			// Checking if the node is a 'real episode'
-			if (currentEpisode == null || !currentEpisode.hasChildNodes()
-					|| currentEpisode.getFirstChild().getNextSibling() == null) {
-				continue;
+			@Override
+			public void loginFailed (final Exception cause) {
+				lg.info("No login (" + cause + ")");
+				session.close(null);
+				notifier.error("Erreur", "Vous devez tre connect  BetaSeries pour utiliser" + "cette application");
 			}
-			
-			// Retrieving values
-			final String show = QueryManager.getTextValue(currentEpisode, API.SHOW);
-			final String episodeNumber = QueryManager.getTextValue(currentEpisode, API.NUMBER);
-			final String globalNumber = QueryManager.getTextValue(currentEpisode, API.GLOBAL_NUMBER);
-			final String episodeName = QueryManager.getTextValue(currentEpisode, API.TITLE);
-			
-			// Building string
-			final String display = show + " #" + globalNumber + " " + episodeNumber +
-					(episodeName.isEmpty() ? "" : " - " + episodeName);
-			lg.fine(display);
-			nextEpisodes.add(display);
-		}
-		return nextEpisodes;
+		});
 	}
 
 	/**
-	 * Creates the file with the content of the string.<br />
-	 * The name of the file is configurable through the configuration file.
-	 * @param content the content to write.
+	 * Export the episodes of the user, and close the session.
+	 * @param token the token of the user.
+	 * @param canRetry <code>true</code> if the login may be asked again when the token is refused.
 	 */
-	private static boolean createFile (final String content) {
-		boolean success = false;
-		FileOutputStream fos = null;
-		FileChannel channel = null;
-		String fileName = null;
+	private void export (final String token, final boolean canRetry) {
+		if (session.export(token) == ExportStatus.INVALID_TOKEN && canRetry) {
+			exportWithLogin(false);
+			return;
+		}
 		
-		try {
-			fileName = configuration.getProperty("outputFile");
-			if (fileName == null) {
-				fileName = JOptionPane.showInputDialog(null, "Fichier de configuration non charg, veuillez spcifier le nom du fichier d'export :",
-						"Fichier d'export", JOptionPane.QUESTION_MESSAGE);
-			}
-			if (fileName == null) {
-				return false;
-			}
-			fos = new FileOutputStream(new File(fileName));
-			channel = fos.getChannel();
-			final ByteBuffer buffer = ByteBuffer.allocate(content.length()*2);
-			buffer.asCharBuffer().put(content);
-			final CharsetEncoder cse = Charset.defaultCharset().newEncoder();
-			final int nbWrite = channel.write(cse.encode(buffer.asCharBuffer()));
-			if (nbWrite == content.length()) {
-				lg.info("Wrote the all the data in the file successfully.");
-				success = true;
-			} else {
-				lg.severe("Fail to write all the data: wrote=" + nbWrite + "; expected=" + content.length());
-			}
-			
-		} catch (final IOException e) {
-			lg.severe("Cannot write to file (" + e.getMessage() + ")");
-			JOptionPane.showMessageDialog(null, "criture dans le fichier " + fileName + " impossible." +
-					newLine + "Cause : " + e.getMessage(), "Erreur d'criture", JOptionPane.ERROR_MESSAGE);
-		} finally {
-			if (fos != null) {
-				try {
-					fos.close();
-				} catch (final IOException e) {
-					lg.warning("Cannot close file (" + e.getMessage() + ")");
-				}
-			}
+		session.close(token);
+		lg.info("Transport statistics: " + session.getQueryManager().getTransport().getStatistics());
+		if (session.getIndex() != null) {
+			userInterface.await();
+			SearchForm.show(session.getIndex());
 		}
-		return success;
+		lg.info("Exiting program.");
 	}
 }
@@ -11,16 +11,17 @@ import java.awt.event.KeyEvent;
 import java.awt.event.KeyListener;
 import java.awt.event.MouseEvent;
 import java.awt.event.MouseListener;
+import java.awt.event.WindowAdapter;
+import java.awt.event.WindowEvent;
 import java.io.File;
 import java.io.IOException;
-import java.io.UnsupportedEncodingException;
 import java.net.URI;
 import java.net.URISyntaxException;
-import java.security.MessageDigest;
-import java.security.NoSuchAlgorithmException;
-import java.util.HashMap;
-import java.util.Map;
-import java.util.logging.Level;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Future;
+import java.util.concurrent.FutureTask;
 import java.util.logging.Logger;
 
 import javax.imageio.ImageIO;
@@ -34,11 +35,11 @@ import javax.swing.JPasswordField;
 import javax.swing.JTextField;
 import javax.swing.SwingUtilities;
 
-import org.w3c.dom.Document;
-import org.w3c.dom.Element;
-
 /**
- * The class which generate the login form.
+ * The class which generate the login form.<br />
+ * The token is handed over through a {@link Future}, completed as soon as the user is logged in,
+ * or cancelled when the form is closed; a {@link LoginListener} can be notified at the same time
+ * to chain the export without blocking any thread.
  * @author Alex
  */
 public final class LoginForm {
@@ -47,6 +48,16 @@ public final class LoginForm {
 	 * @author Alex
 	 */
 	public static class ReturnValidateKeyListener implements KeyListener {
+		private final JButton	button;
+
+		/**
+		 * Constructor #1.<br />
+		 * @param button
+		 *            the button which validates the form.
+		 */
+		public ReturnValidateKeyListener (final JButton button) {
+			this.button = button;
+		}
 
 		/* (non-Javadoc)
 		 * @see java.awt.event.KeyListener#keyTyped(java.awt.event.KeyEvent)
@@ -71,76 +82,188 @@ public final class LoginForm {
 		public void keyReleased (final KeyEvent e) {}
 	}
 
+	/**
+	 * Interface for the objects notified of the end of the login.<br />
+	 * On success, the listener is called from the thread which sent the login request (not the
+	 * event dispatch thread), so it can run the export directly.
+	 * @author Alex
+	 */
+	public interface LoginListener {
+		/**
+		 * Called when the user is logged in.
+		 * @param token
+		 *            the token of the user.
+		 */
+		void loggedIn (String token);
+
+		/**
+		 * Called when the login is aborted.
+		 * @param cause
+		 *            the cause: a {@link CancellationException} if the form was closed, or the
+		 *            error which occurred during the login.
+		 */
+		void loginFailed (Exception cause);
+	}
+
+	/**
+	 * Future completed by the form with the token of the user.
+	 * @author Alex
+	 */
+	private static final class LoginFuture extends FutureTask<String> {
+		private final LoginListener	listener;
+		private final JFrame		frame;
+
+		/**
+		 * Constructor #1.<br />
+		 * @param frame
+		 *            the frame of the form, closed when the login ends.
+		 * @param listener
+		 *            the listener to notify, <code>null</code> if none.
+		 */
+		public LoginFuture (final JFrame frame, final LoginListener listener) {
+			super(new Callable<String>() {
+				@Override
+				public String call () {
+					throw new IllegalStateException("The token is set by the login form");
+				}
+			});
+			this.frame = frame;
+			this.listener = listener;
+		}
+
+		/**
+		 * Complete the login with the token of the user.
+		 * @param token
+		 *            the token.
+		 */
+		public void complete (final String token) {
+			set(token);
+		}
+
+		/**
+		 * Complete the login with an error.
+		 * @param cause
+		 *            the error.
+		 */
+		public void fail (final Exception cause) {
+			setException(cause);
+		}
+
+		@Override
+		protected void done () {
+			SwingUtilities.invokeLater(new Runnable() {
+				@Override
+				public void run () {
+					frame.dispose();
+				}
+			});
+			if (listener == null) {
+				return;
+			}
+			try {
+				listener.loggedIn(get());
+			} catch (final CancellationException e) {
+				listener.loginFailed(e);
+			} catch (final ExecutionException e) {
+				listener.loginFailed(e.getCause() instanceof Exception ? (Exception) e.getCause() : e);
+			} catch (final InterruptedException e) {
+				// Cannot happen: the future is done
+				Thread.currentThread().interrupt();
+			}
+		}
+	}
+
 	private static Logger			lg				= Logger.getLogger(LoginForm.class.getName());
 
-	private static final int		WAITING_TIME	= 200;
 	private static final int		DEFAULT_WIDTH	= 420;
 	private static final int		DEFAULT_HEIGHT	= 180;
-	
-	private static JFrame			frame;
-	private static JTextField		login;
-	private static JPasswordField	password;
-	private static JButton			button;
-	private static QueryManager		api;
-	private static String			token;
+
+	private final ExportSession		session;
+	private final JFrame			frame;
+	private final JTextField		login;
+	private final JPasswordField	password;
+	private final JButton			button;
+	private final LoginFuture		result;
 
 	/**
 	 * Constructor #1.<br />
-	 * Default constructor declared to avoid creating an instance of the class anywhere.
+	 * Build the form; must be called from the event dispatch thread.
+	 * @param session
+	 *            the session used to login to the api.
+	 * @param listener
+	 *            the listener to notify at the end of the login, <code>null</code> if none.
 	 */
-	private LoginForm() {
-		
+	private LoginForm (final ExportSession session, final LoginListener listener) {
+		this.session = session;
+		frame = new JFrame("BetaSeries Exporter");
+		login = new JTextField(20);
+		password = new JPasswordField(20);
+		button = new JButton("Connection");
+		result = new LoginFuture(frame, listener);
+		buildGui();
 	}
-	
+
 	/**
-	 * Build and show a login form
-	 * @param apiQM the reference to the object managing the queries to the api.
-	 * @return the token matching the user's account
+	 * Show a login form.<br />
+	 * The future is completed with the token as soon as the user is logged in, or cancelled when
+	 * the form is closed; cancelling the future closes the form.
+	 * @param exportSession
+	 *            the session used to login to the api.
+	 * @param listener
+	 *            the listener to notify at the end of the login, <code>null</code> if none.
+	 * @return the future token of the user's account.
 	 */
-	public static String getToken (final QueryManager apiQM) {
-		LoginForm.api = apiQM;
-		token = null;
-		SwingUtilities.invokeLater(new Runnable() {
+	public static Future<String> requestToken (final ExportSession exportSession, final LoginListener listener) {
+		if (SwingUtilities.isEventDispatchThread()) {
+			return new LoginForm(exportSession, listener).result;
+		}
+		final FutureTask<Future<String>> form = new FutureTask<Future<String>>(new Callable<Future<String>>() {
 			@Override
-			public void run () {
-				buildGui();
+			public Future<String> call () {
+				return new LoginForm(exportSession, listener).result;
 			}
 		});
-
-		// Waiting for user information
-		while (token == null) {
-			synchronized (lg) {
-				try {
-					lg.wait(WAITING_TIME);
-				} catch (final InterruptedException e) {
-					lg.warning("Error while waiting for connection information (" + e.getMessage()
-							+ ").");
-					return null;
-				}
-			}
+		SwingUtilities.invokeLater(form);
+		try {
+			return form.get();
+		} catch (final InterruptedException e) {
+			Thread.currentThread().interrupt();
+			throw new IllegalStateException("Interrupted while building the login form", e);
+		} catch (final ExecutionException e) {
+			throw new IllegalStateException("Cannot build the login form", e.getCause());
 		}
+	}
 
-		SwingUtilities.invokeLater(new Runnable() {
-			@Override
-			public void run () {
-				frame.dispose();
-			}
-		});
-		return token;
+	/**
+	 * Build and show a login form, and wait for the user to login.
+	 * @param exportSession the session used to login to the api.
+	 * @return the token matching the user's account, <code>null</code> if the form was closed or
+	 *         if the login failed.
+	 */
+	public static String getToken (final ExportSession exportSession) {
+		final Future<String> token = requestToken(exportSession, null);
+		try {
+			return token.get();
+		} catch (final CancellationException e) {
+			lg.info("Login form closed");
+		} catch (final ExecutionException e) {
+			lg.warning("Login failed (" + e.getCause() + ")");
+		} catch (final InterruptedException e) {
+			Thread.currentThread().interrupt();
+			token.cancel(false);
+			lg.warning("Interrupted while waiting for connection information (" + e.getMessage() + ").");
+		}
+		return null;
 	}
 
 	/**
 	 * Build the simple form to login to BetaSeries
 	 */
-	private static void buildGui () {
-		frame = new JFrame("BetaSeries Exporter");
+	private void buildGui () {
 		final JPanel pane = new JPanel(new GridBagLayout());
 
-		login = new JTextField(20);
-		password = new JPasswordField(20);
-		login.addKeyListener(new ReturnValidateKeyListener());
-		password.addKeyListener(new ReturnValidateKeyListener());
-		button = new JButton("Connection");
+		login.addKeyListener(new ReturnValidateKeyListener(button));
+		password.addKeyListener(new ReturnValidateKeyListener(button));
 		button.addActionListener(new ActionListener() {
 			@Override
 			public void actionPerformed (final ActionEvent e) {
@@ -199,8 +322,9 @@ public final class LoginForm {
 		pane.add(button, c);
 		pane.setBorder(BorderFactory.createTitledBorder("Connectez vous  votre compte sur BetaSeries"));
 
+		final Configuration configuration = session.getConfiguration();
 		try {
-			frame.setIconImage(ImageIO.read(new File(Launcher.getProperty("icon"))));
+			frame.setIconImage(ImageIO.read(new File(configuration.getProperty("icon"))));
 		} catch (final IOException e) {
 			lg.warning("Error while loading icon, error while loading image (" + e.getMessage() + ")");
 		} catch (final IllegalArgumentException e) {
@@ -213,8 +337,8 @@ public final class LoginForm {
 		int height = DEFAULT_HEIGHT;
 		
 		try {
-			width = Integer.parseInt(Launcher.getProperty("loginWindowWidth"));
-			height = Integer.parseInt(Launcher.getProperty("loginWindowHeight"));
+			width = Integer.parseInt(configuration.getProperty("loginWindowWidth"));
+			height = Integer.parseInt(configuration.getProperty("loginWindowHeight"));
 		} catch (NumberFormatException e) {
 			lg.warning("Could not parse width or height value from the configuration file (" + e.getMessage() + ").");
 		}
@@ -225,43 +349,53 @@ public final class LoginForm {
 		frame.setVisible(true);
 		frame.setResizable(false);
 		frame.setLocationRelativeTo(null);
-		frame.setDefaultCloseOperation(JFrame.EXIT_ON_CLOSE);
+		frame.setDefaultCloseOperation(JFrame.DISPOSE_ON_CLOSE);
+		frame.addWindowListener(new WindowAdapter() {
+			@Override
+			public void windowClosing (final WindowEvent e) {
+				result.cancel(false);
+			}
+		});
 	}
 
 	/**
-	 * Login to the BetaSeries account
+	 * Login to the BetaSeries account.<br />
+	 * The request is sent from a new thread, so the form stays responsive; this thread then
+	 * completes the login, and so runs the {@link LoginListener listener}.
 	 */
-	private static void login () {
-		if (login == null || password == null ||
-				login.getText().isEmpty() || password.getPassword().length == 0) {
+	private void login () {
+		if (login.getText().isEmpty() || password.getPassword().length == 0 || result.isDone()) {
 			return;
 		}
-		final Map<String, String> params = new HashMap<String, String>();
-		params.put(API.LOGIN, login.getText());
-		params.put(API.PASSWORD, getMD5(password.getPassword()));
-		final Document doc = api.execute(API.LOGIN_PAGE, params);
-	
-		if (doc == null || QueryManager.hasError(doc)) {
-			token = null;
-			if (lg.isLoggable(Level.WARNING)) {
-				String error;
-				if (doc == null) {
-					error = "xml response was null";
-				} else {
-					error = QueryManager.getTextValue((Element) doc.getElementsByTagName(API.ERRORS).item(0), API.ERROR_CONTENT);
+		final String user = login.getText();
+		final String userPassword = new String(password.getPassword());
+		button.setEnabled(false);
+		new Thread(new Runnable() {
+			@Override
+			public void run () {
+				final String userToken;
+				try {
+					userToken = session.login(user, userPassword);
+				} catch (final RuntimeException e) {
+					lg.warning("Login failed (" + e + ")");
+					result.fail(e);
+					return;
+				}
+				if (userToken == null) {
+					SwingUtilities.invokeLater(new Runnable() {
+						@Override
+						public void run () {
+							button.setEnabled(true);
+							JOptionPane.showMessageDialog(frame,
+									"chec de connection  BetaSeries, vrifiez vos identifiants.",
+									"Erreur de connection", JOptionPane.ERROR_MESSAGE);
+						}
+					});
+					return;
 				}
-				lg.warning("Connection to account has failed: " + error);
+				result.complete(userToken);
 			}
-			JOptionPane.showMessageDialog(frame,
-					"chec de connection  BetaSeries, vrifiez vos identifiants.",
-					"Erreur de connection", JOptionPane.ERROR_MESSAGE);
-			return;
-		}
-	
-		token = QueryManager.getTextValue((Element) doc.getFirstChild(), API.TOKEN);
-		synchronized (lg) {
-			lg.notify();
-		}
+		}, "login").start();
 	}
 
 	/**
@@ -270,41 +404,7 @@ public final class LoginForm {
 	 * @return the hash of the text
 	 */
 	public static String getMD5 (final String text) {
-		try {
-			final StringBuffer buffer = new StringBuffer();
-			final MessageDigest msgDigest = MessageDigest.getInstance("MD5");
-			msgDigest.update(text.getBytes("UTF-8"));
-			
-			final byte[] digest = msgDigest.digest();
-			for (final byte element : digest) {
-				int value = element;
-				if (value < 0) {
-					value += 256;
-				}
-				// Add a zero in case of 'short' hash.
-				if (value <= 14) {
-					buffer.append("0" + Integer.toHexString(value));
-				} else {
-					buffer.append(Integer.toHexString(value));
-				}
-			}
-			return buffer.toString();
-		} catch (final NoSuchAlgorithmException e) {
-			lg.warning("Error while computing MD5, no MD5 algorithm found (" + e.getMessage() + ").");
-			return null;
-		} catch (final UnsupportedEncodingException e) {
-			lg.warning("Error while computing MD5, encoding not supported (" + e.getMessage() + ").");
-			return null;
-		}
-	}
-
-	/**
-	 * Computes the MD5 of a char sequence.
-	 * @param text the text to hash
-	 * @return the hash of the text
-	 */
-	private static String getMD5 (final char[] text) {
-		return getMD5(new String(text));
+		return ExportSession.getMD5(text);
 	}
 
 }
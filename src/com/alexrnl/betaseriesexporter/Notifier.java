@@ -0,0 +1,37 @@
+package com.alexrnl.betaseriesexporter;
+
+/**
+ * Interface for the objects which inform the user of the progress of the export.<br />
+ * Allow the export to run with a graphical interface or from the command line.
+ * @author Alex
+ */
+public interface Notifier {
+
+	/**
+	 * Display an information message.
+	 * @param title
+	 *            the title of the message.
+	 * @param message
+	 *            the message.
+	 */
+	void info (String title, String message);
+
+	/**
+	 * Display an error message.
+	 * @param title
+	 *            the title of the message.
+	 * @param message
+	 *            the message.
+	 */
+	void error (String title, String message);
+
+	/**
+	 * Ask a question to the user.
+	 * @param title
+	 *            the title of the question.
+	 * @param question
+	 *            the question.
+	 * @return the answer of the user, <code>null</code> if there is none.
+	 */
+	String ask (String title, String question);
+}
@@ -0,0 +1,252 @@
+package com.alexrnl.betaseriesexporter;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InterruptedIOException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.logging.Logger;
+
+import javax.xml.stream.XMLStreamException;
+
+/**
+ * Class which fetches the episodes of several pages of the API concurrently.<br />
+ * Each page is downloaded and parsed on its own thread, so the parsing of a page overlaps the
+ * download of the others; the number of requests in flight is limited by the concurrency (and
+ * by the rate limiter of the {@link QueryManager}). The episodes are merged in the order of the
+ * pages, whatever the order in which the responses arrive.
+ * @author Alex
+ */
+public class PagedEpisodeFetcher {
+	private static Logger			lg				= Logger.getLogger(PagedEpisodeFetcher.class.getName());
+
+	/** The default number of pages fetched at the same time */
+	public static final int			DEFAULT_CONCURRENCY	= 4;
+
+	private static AtomicInteger	threadCount		= new AtomicInteger();
+
+	private final QueryManager		api;
+	private final String			scope;
+	private final int				concurrency;
+	private List<Episode>			episodes;
+	private String					errorMessage;
+
+	/**
+	 * Class which describes a page to fetch.
+	 * @author Alex
+	 */
+	public static class Page {
+		private final String				page;
+		private final Map<String, String>	params;
+		private final String				show;
+
+		/**
+		 * Constructor #1.<br />
+		 * @param page
+		 *            the page of the API.
+		 * @param params
+		 *            the parameters of the request.
+		 * @param show
+		 *            the name of the show used for the episodes which do not specify it,
+		 *            <code>null</code> if the response always does.
+		 */
+		public Page (final String page, final Map<String, String> params, final String show) {
+			this.page = page;
+			this.params = params;
+			this.show = show;
+		}
+
+		@Override
+		public String toString () {
+			return page + (show == null ? "" : " (" + show + ")");
+		}
+	}
+
+	/**
+	 * Class which holds the result of a page.
+	 * @author Alex
+	 */
+	private static class PageResult {
+		private final List<Episode>	episodes;
+		private final String		errorMessage;
+
+		/**
+		 * Constructor #1.<br />
+		 * @param episodes
+		 *            the episodes of the page.
+		 * @param errorMessage
+		 *            the error returned by the API, <code>null</code> if there was none.
+		 */
+		public PageResult (final List<Episode> episodes, final String errorMessage) {
+			this.episodes = episodes;
+			this.errorMessage = errorMessage;
+		}
+	}
+
+	/**
+	 * Constructor #1.<br />
+	 * @param api
+	 *            the query manager used for the requests.
+	 * @param scope
+	 *            the scope of the cached responses (e.g. the login of the user).
+	 * @param concurrency
+	 *            the maximum number of pages fetched at the same time.
+	 * @throws IllegalArgumentException
+	 *             if the concurrency is not strictly positive.
+	 */
+	public PagedEpisodeFetcher (final QueryManager api, final String scope, final int concurrency) {
+		if (concurrency < 1) {
+			throw new IllegalArgumentException("The concurrency must be strictly positive (was " + concurrency + ")");
+		}
+		this.api = api;
+		this.scope = scope;
+		this.concurrency = concurrency;
+	}
+
+	/**
+	 * Fetch the episodes of the pages.<br />
+	 * The first failure cancels the pages not fetched yet.
+	 * @param pages
+	 *            the pages to fetch.
+	 * @param seenOnly
+	 *            <code>true</code> if only the episodes seen by the user should be kept.
+	 * @return <code>true</code> if all the pages have been fetched, <code>false</code> if the API
+	 *         returned an error (available with {@link #getErrorMessage()}).
+	 * @throws IOException
+	 *             if a request failed, or if the thread was interrupted.
+	 * @throws XMLStreamException
+	 *             if a response is not valid.
+	 */
+	public boolean fetch (final List<Page> pages, final boolean seenOnly) throws IOException, XMLStreamException {
+		episodes = new ArrayList<Episode>();
+		errorMessage = null;
+		if (pages.isEmpty()) {
+			return true;
+		}
+
+		final ExecutorService executor = Executors.newFixedThreadPool(Math.min(concurrency, pages.size()),
+				new ThreadFactory() {
+					@Override
+					public Thread newThread (final Runnable runnable) {
+						final Thread thread = new Thread(runnable, "episode-fetcher-" + threadCount.incrementAndGet());
+						thread.setDaemon(true);
+						return thread;
+					}
+				});
+		try {
+			final List<Future<PageResult>> results = new ArrayList<Future<PageResult>>(pages.size());
+			for (final Page page : pages) {
+				results.add(executor.submit(new Callable<PageResult>() {
+					@Override
+					public PageResult call () throws IOException, XMLStreamException {
+						return fetchPage(page, seenOnly);
+					}
+				}));
+			}
+
+			// Merging in the order of the pages
+			for (int index = 0; index < results.size(); ++index) {
+				final PageResult result = getResult(results.get(index));
+				if (result.errorMessage != null) {
+					lg.warning("Error returned for " + pages.get(index) + ": " + result.errorMessage);
+					errorMessage = result.errorMessage;
+					return false;
+				}
+				episodes.addAll(result.episodes);
+			}
+		} finally {
+			executor.shutdownNow();
+		}
+		lg.info("Fetched " + episodes.size() + " episodes from " + pages.size() + " pages");
+		return true;
+	}
+
+	/**
+	 * Wait for the result of a page.
+	 * @param future
+	 *            the future result of the page.
+	 * @return the result of the page.
+	 * @throws IOException
+	 *             if the request failed, or if the thread was interrupted.
+	 * @throws XMLStreamException
+	 *             if the response is not valid.
+	 */
+	private static PageResult getResult (final Future<PageResult> future) throws IOException, XMLStreamException {
+		try {
+			return future.get();
+		} catch (final InterruptedException e) {
+			Thread.currentThread().interrupt();
+			throw new InterruptedIOException("Interrupted while fetching the episodes");
+		} catch (final ExecutionException e) {
+			final Throwable cause = e.getCause();
+			if (cause instanceof IOException) {
+				throw (IOException) cause;
+			}
+			if (cause instanceof XMLStreamException) {
+				throw (XMLStreamException) cause;
+			}
+			if (cause instanceof RuntimeException) {
+				throw (RuntimeException) cause;
+			}
+			throw new IOException(cause);
+		}
+	}
+
+	/**
+	 * Download and parse a page.
+	 * @param page
+	 *            the page to fetch.
+	 * @param seenOnly
+	 *            <code>true</code> if only the episodes seen by the user should be kept.
+	 * @return the result of the page.
+	 * @throws IOException
+	 *             if the request failed.
+	 * @throws XMLStreamException
+	 *             if the response is not valid.
+	 */
+	private PageResult fetchPage (final Page page, final boolean seenOnly) throws IOException, XMLStreamException {
+		final List<Episode> pageEpisodes = new ArrayList<Episode>();
+		final InputStream response = api.openCachedStream(scope, page.page, page.params);
+		try {
+			final EpisodeStreamParser parser = new EpisodeStreamParser();
+			parser.setDefaultShow(page.show);
+			parser.setSeenOnly(seenOnly);
+			final long parseStart = System.nanoTime();
+			final boolean noError = parser.parse(response, new EpisodeHandler() {
+				@Override
+				public void handle (final Episode episode) {
+					pageEpisodes.add(episode);
+				}
+			});
+			api.recordParse(page.page, parser, parseStart, noError);
+			return new PageResult(pageEpisodes, noError ? null : parser.getErrorMessage());
+		} finally {
+			response.close();
+		}
+	}
+
+	/**
+	 * Return the episodes of the last fetch, in the order of the pages.
+	 * @return the episodes.
+	 */
+	public List<Episode> getEpisodes () {
+		return episodes == null ? Collections.<Episode> emptyList() : Collections.unmodifiableList(episodes);
+	}
+
+	/**
+	 * Return the error returned by the API during the last fetch.
+	 * @return the error message, <code>null</code> if there was none.
+	 */
+	public String getErrorMessage () {
+		return errorMessage;
+	}
+}
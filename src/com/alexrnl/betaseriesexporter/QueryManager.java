@@ -1,14 +1,34 @@
 package com.alexrnl.betaseriesexporter;
 
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.FilterInputStream;
 import java.io.IOException;
+import java.io.InputStream;
+import java.io.InterruptedIOException;
+import java.io.OutputStream;
+import java.io.UnsupportedEncodingException;
+import java.net.URLEncoder;
 import java.util.HashMap;
+import java.util.List;
 import java.util.Map;
 import java.util.Map.Entry;
+import java.util.Random;
+import java.util.TreeMap;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.logging.Level;
 import java.util.logging.Logger;
 
-import javax.swing.JOptionPane;
-import javax.xml.parsers.DocumentBuilderFactory;
-import javax.xml.parsers.ParserConfigurationException;
+import javax.xml.stream.XMLStreamException;
 
 import org.w3c.dom.Document;
 import org.w3c.dom.Element;
@@ -16,17 +36,58 @@ import org.w3c.dom.Node;
 import org.w3c.dom.NodeList;
 import org.xml.sax.SAXException;
 
+import com.alexrnl.betaseriesexporter.metrics.PageMetrics;
+import com.alexrnl.betaseriesexporter.metrics.RequestMetrics;
+import com.alexrnl.betaseriesexporter.transport.CircuitBreaker;
+import com.alexrnl.betaseriesexporter.transport.EncodedResponse;
+import com.alexrnl.betaseriesexporter.transport.HttpStatusException;
+import com.alexrnl.betaseriesexporter.transport.KeepAliveTransport;
+import com.alexrnl.betaseriesexporter.transport.RequestScheduler;
+import com.alexrnl.betaseriesexporter.transport.RequestScheduler.Priority;
+import com.alexrnl.betaseriesexporter.transport.ResponseCache;
+import com.alexrnl.betaseriesexporter.transport.RetryPolicy;
+import com.alexrnl.betaseriesexporter.transport.Transport;
+
 /**
  * Class in charge of the communication between the application and the API. <br />
- * Allow the definition of default parameter that will be sent with each query to the host.
+ * Allow the definition of default parameter that will be sent with each query to the host.<br />
+ * The requests are measured by page in the {@link RequestMetrics metrics} of the manager.<br />
+ * The failed requests are retried according to the {@link RetryPolicy retry policy} of their
+ * page, and a {@link CircuitBreaker circuit breaker} can stop the requests to a failing host.
+ * A {@link RequestScheduler scheduler} can limit the rate of the requests: the logins are sent
+ * first, and the refresh of the cache last.
  * 
  * @author Alex
  */
 public class QueryManager {
-	private static Logger				lg	= Logger.getLogger(QueryManager.class.getName());
+	private static Logger					lg					= Logger.getLogger(QueryManager.class.getName());
+
+	private static final int				BUFFER_SIZE			= 8192;
+	/** The parameters whose value is not written in the logs */
+	private static final String[]			SENSITIVE_PARAMS	= { API.KEY_PARAM, API.TOKEN, API.PASSWORD };
+	private static final String				REDACTED			= "***";
+	private static final String				UNKNOWN_ERROR		= "unknown";
+	private static final String				PAGE_GROUP_SUFFIX	= "*";
+	private static final String				URL_CHARSET			= "UTF-8";
+	/** The estimated length of the parameters of a request, to size the URL builder */
+	private static final int				PARAM_LENGTH		= 48;
+	private static final AtomicInteger		INSTANCES			= new AtomicInteger();
 
-	private final Map<String, String>	compulsoryParams;
-	private String						host;
+	private final Map<String, String>		compulsoryParams;
+	private volatile String					compulsoryQuery;
+	private volatile String					redactedCompulsoryQuery;
+	private String							host;
+	private Transport						transport;
+	private ResponseCache					cache;
+	private ExecutorService					refresher;
+	private Future<?>						pendingRefresh;
+	private final RequestMetrics			metrics;
+	private final Map<String, RetryPolicy>	retryPolicies;
+	private final List<String>				pageGroups;
+	private RetryPolicy						defaultRetryPolicy;
+	private CircuitBreaker					circuitBreaker;
+	private RequestScheduler				scheduler;
+	private final Random					random;
 
 	/**
 	 * Constructor #1.<br />
@@ -36,19 +97,43 @@ public class QueryManager {
 	 *            the host server
 	 * @param compulsoryParams
 	 *            the parameters that should be sent with each request
+	 * @param transport
+	 *            the transport used to send the requests
 	 */
-	public QueryManager(final String host, final Map<String, String> compulsoryParams) {
+	public QueryManager(final String host, final Map<String, String> compulsoryParams, final Transport transport) {
 		this.host = host;
 		this.compulsoryParams = compulsoryParams;
+		this.transport = transport;
+		this.metrics = new RequestMetrics(Integer.toString(INSTANCES.incrementAndGet()));
+		this.retryPolicies = new HashMap<String, RetryPolicy>();
+		this.pageGroups = new CopyOnWriteArrayList<String>();
+		this.defaultRetryPolicy = RetryPolicy.NO_RETRY;
+		this.random = new Random();
 
 		if (!this.host.startsWith("http")) {
 			this.host = "http://" + this.host;
 			lg.warning("Host does not starts with 'http' adding protocol to host.");
 		}
+		encodeCompulsoryParams();
 	}
 
 	/**
 	 * Constructor #2.<br />
+	 * Build a query manager with default parameters using a {@link KeepAliveTransport} with the
+	 * default timeouts.
+	 * 
+	 * @param host
+	 *            the host server
+	 * @param compulsoryParams
+	 *            the parameters that should be sent with each request
+	 * @see #QueryManager(String, Map, Transport)
+	 */
+	public QueryManager(final String host, final Map<String, String> compulsoryParams) {
+		this(host, compulsoryParams, new KeepAliveTransport());
+	}
+
+	/**
+	 * Constructor #3.<br />
 	 * Build a query manager with <b>no</b> default parameters.
 	 * 
 	 * @param host
@@ -59,6 +144,115 @@ public class QueryManager {
 		this(host, new HashMap<String, String>());
 	}
 
+	/**
+	 * Return the transport used to send the requests.
+	 * @return the transport.
+	 */
+	public Transport getTransport () {
+		return transport;
+	}
+
+	/**
+	 * Return the metrics of the requests sent by the manager.
+	 * @return the metrics.
+	 */
+	public RequestMetrics getMetrics () {
+		return metrics;
+	}
+
+	/**
+	 * Set the retry policy of the pages which do not have their own policy.<br />
+	 * By default, the requests are not retried.
+	 * @param retryPolicy
+	 *            the retry policy.
+	 */
+	public void setRetryPolicy (final RetryPolicy retryPolicy) {
+		this.defaultRetryPolicy = retryPolicy;
+	}
+
+	/**
+	 * Set the retry policy of a page.
+	 * @param page
+	 *            the page of the API.
+	 * @param retryPolicy
+	 *            the retry policy of the page.
+	 */
+	public void setRetryPolicy (final String page, final RetryPolicy retryPolicy) {
+		retryPolicies.put(getPageGroup(page), retryPolicy);
+	}
+
+	/**
+	 * Return the retry policy of a page.
+	 * @param page
+	 *            the page of the API.
+	 * @return the retry policy of the page, or the default policy.
+	 */
+	public RetryPolicy getRetryPolicy (final String page) {
+		final RetryPolicy retryPolicy = retryPolicies.get(getPageGroup(page));
+		return retryPolicy == null ? defaultRetryPolicy : retryPolicy;
+	}
+
+	/**
+	 * Group the pages which start with a prefix (e.g. a page per show), so they share their
+	 * metrics and their retry policy.
+	 * @param prefix
+	 *            the prefix of the pages.
+	 */
+	public void addPageGroup (final String prefix) {
+		pageGroups.add(prefix);
+	}
+
+	/**
+	 * Return the group of a page, used for its metrics and its retry policy.
+	 * @param page
+	 *            the page.
+	 * @return the prefix of the group followed by <code>*</code>, or the page itself if it is not
+	 *         part of a group.
+	 */
+	private String getPageGroup (final String page) {
+		for (final String prefix : pageGroups) {
+			if (page.startsWith(prefix)) {
+				return prefix + PAGE_GROUP_SUFFIX;
+			}
+		}
+		return page;
+	}
+
+	/**
+	 * Set the circuit breaker of the requests to the host.
+	 * @param circuitBreaker
+	 *            the circuit breaker, <code>null</code> to disable it.
+	 */
+	public void setCircuitBreaker (final CircuitBreaker circuitBreaker) {
+		this.circuitBreaker = circuitBreaker;
+	}
+
+	/**
+	 * Set the scheduler which limits the rate of the requests.
+	 * @param scheduler
+	 *            the scheduler, <code>null</code> to send the requests without any limit.
+	 */
+	public void setScheduler (final RequestScheduler scheduler) {
+		this.scheduler = scheduler;
+	}
+
+	/**
+	 * Return the scheduler which limits the rate of the requests.
+	 * @return the scheduler, <code>null</code> if the requests are not limited.
+	 */
+	public RequestScheduler getScheduler () {
+		return scheduler;
+	}
+
+	/**
+	 * Set the cache used by {@link #openCachedStream(String, String, Map)}.
+	 * @param cache
+	 *            the cache, <code>null</code> to disable the cache.
+	 */
+	public void setCache (final ResponseCache cache) {
+		this.cache = cache;
+	}
+
 	/**
 	 * Add a compulsory parameter.<br />
 	 * Overwrites the previous parameter if it is already present.
@@ -76,11 +270,29 @@ public class QueryManager {
 					+ "the default parameters.");
 		}
 		compulsoryParams.put(parameter, value);
+		encodeCompulsoryParams();
+	}
+
+	/**
+	 * Encode the compulsory parameters once, as they are appended to each request.
+	 */
+	private void encodeCompulsoryParams () {
+		final StringBuilder query = new StringBuilder();
+		final StringBuilder redactedQuery = new StringBuilder();
+		for (final Entry<String, String> param : compulsoryParams.entrySet()) {
+			appendParam(query, param.getKey(), param.getValue());
+			appendParam(redactedQuery, param.getKey(), isSensitive(param.getKey()) ? null : param.getValue());
+			if (isSensitive(param.getKey())) {
+				redactedQuery.append(REDACTED);
+			}
+		}
+		compulsoryQuery = query.toString();
+		redactedCompulsoryQuery = redactedQuery.toString();
 	}
 
 	/**
 	 * Execute the request for the given page, without any parameters (apart from the compulsory
-	 * parameters defined in the {@link #QueryManager(String, Map) constructor}).
+	 * parameters defined in the {@link #QueryManager(String, Map, Transport) constructor}).
 	 * 
 	 * @param page
 	 *            the page to query
@@ -91,57 +303,598 @@ public class QueryManager {
 	}
 
 	/**
-	 * Execute the request for the given page with the <code>params</code> sent.
+	 * Execute the request for the given page with the <code>params</code> sent.<br />
+	 * The request is sent again if the connection fails or if the response cannot be parsed, as
+	 * allowed by the retry policy of the page. The parse time and the errors of the response are
+	 * recorded in the metrics of the page.
 	 * @param page
 	 *            the page to query.
 	 * @param params
 	 *            the parameters to transmit to the page.
-	 * @return the XML document returned by the API.
+	 * @return the XML document returned by the API, <code>null</code> if the request failed.
+	 * @see #query(String, Map)
 	 */
 	public Document execute (final String page, final Map<String, String> params) {
-		params.putAll(compulsoryParams);
+		try {
+			return query(page, params);
+		} catch (final IOException e) {
+			lg.severe("Request to the API failed (" + e.getMessage() + ")");
+			return null;
+		}
+	}
+
+	/**
+	 * Execute the request for the given page with the <code>params</code> sent.<br />
+	 * Unlike {@link #execute(String, Map)}, the failure of the request is reported to the caller.
+	 * @param page
+	 *            the page to query.
+	 * @param params
+	 *            the parameters to transmit to the page, not modified.
+	 * @return the XML document returned by the API, which may contain an error.
+	 * @throws IOException
+	 *             if the request failed, or if its response could not be parsed.
+	 */
+	public Document query (final String page, final Map<String, String> params) throws IOException {
+		final PageMetrics pageMetrics = metrics.getPage(getPageGroup(page));
+		final Priority priority = getPriority(page);
+		final String token = params.get(API.TOKEN);
+
+		final Document doc = sendWithRetry(page, buildUrl(page, params), new Attempt<Document>() {
+			@Override
+			public Document send (final String url) throws IOException {
+				final InputStream response = openAttempt(page, url, priority, token);
+				try {
+					final long parseStart = System.nanoTime();
+					final Document document = XmlParsers.parse(response);
+					pageMetrics.responseParsed(System.nanoTime() - parseStart);
+					return document;
+				} catch (final SAXException e) {
+					throw new IOException("Invalid response (" + e.getMessage() + ")", e);
+				} finally {
+					try {
+						response.close();
+					} catch (final IOException e) {
+						lg.warning("Cannot close the response (" + e.getMessage() + ")");
+					}
+				}
+			}
+		});
+		if (hasError(doc)) {
+			pageMetrics.errorReturned(getErrorCode(doc));
+		}
+		return doc;
+	}
+
+	/**
+	 * Record the parsing of a response read with {@link #openStream(String, Map)} in the metrics
+	 * of its page.<br />
+	 * With the streaming parser, the parse time includes the reading of the response and the
+	 * processing of the episodes.
+	 * @param page
+	 *            the page of the response.
+	 * @param parser
+	 *            the parser of the response.
+	 * @param parseStart
+	 *            the time when the parsing started, in nanoseconds.
+	 * @param noError
+	 *            <code>true</code> if the response did not contain any error.
+	 */
+	public void recordParse (final String page, final EpisodeStreamParser parser, final long parseStart,
+			final boolean noError) {
+		final PageMetrics pageMetrics = metrics.getPage(getPageGroup(page));
+		pageMetrics.responseParsed(System.nanoTime() - parseStart);
+		if (!noError) {
+			pageMetrics.errorReturned(parser.getErrorCode() == null ? UNKNOWN_ERROR : parser.getErrorCode());
+		}
+	}
+
+	/**
+	 * Open the response of the request for the given page with the <code>params</code> sent.<br />
+	 * Unlike {@link #execute(String, Map)}, the response is not parsed: the caller is in charge
+	 * of reading and closing the stream, and of recording the parse time and the errors in the
+	 * {@link #getMetrics() metrics}. The latency of the request is recorded when the stream is
+	 * closed. The connection is retried as allowed by the retry policy of the page.
+	 * @param page
+	 *            the page to query.
+	 * @param params
+	 *            the parameters to transmit to the page.
+	 * @return the stream with the XML response of the API.
+	 * @throws IOException
+	 *             if the connection to the API failed.
+	 */
+	public InputStream openStream (final String page, final Map<String, String> params) throws IOException {
+		return openStream(page, params, getPriority(page));
+	}
 
-		final String url = host + "/" + page + (page.endsWith("xml") ? "" : ".xml") + "?"
-				+ formatParamForRequest(params);
-		lg.info("formatted url request: " + url);
+	/**
+	 * Open the response of the request with the given priority.
+	 * @param page
+	 *            the page to query.
+	 * @param params
+	 *            the parameters to transmit to the page.
+	 * @param priority
+	 *            the priority of the request.
+	 * @return the stream with the XML response of the API.
+	 * @throws IOException
+	 *             if the connection to the API failed.
+	 * @see #openStream(String, Map)
+	 */
+	private InputStream openStream (final String page, final Map<String, String> params, final Priority priority)
+			throws IOException {
+		final String token = params.get(API.TOKEN);
+		return sendWithRetry(page, buildUrl(page, params), new Attempt<InputStream>() {
+			@Override
+			public InputStream send (final String url) throws IOException {
+				return openAttempt(page, url, priority, token);
+			}
+		});
+	}
 
-		Document doc = null;
+	/**
+	 * Return the priority of the requests to a page.
+	 * @param page
+	 *            the page.
+	 * @return {@link Priority#INTERACTIVE} for the login, {@link Priority#NORMAL} otherwise.
+	 */
+	private static Priority getPriority (final String page) {
+		return API.LOGIN_PAGE.equals(page) ? Priority.INTERACTIVE : Priority.NORMAL;
+	}
+
+	/**
+	 * Send a request once.<br />
+	 * If the rate of the requests is limited, the request waits until the scheduler allows it.
+	 * @param page
+	 *            the page of the request.
+	 * @param url
+	 *            the URL of the request.
+	 * @param priority
+	 *            the priority of the request.
+	 * @param token
+	 *            the user token of the request, may be <code>null</code>.
+	 * @return the stream with the response, which records the latency in the metrics of the page.
+	 * @throws IOException
+	 *             if the connection to the API failed.
+	 */
+	private InputStream openAttempt (final String page, final String url, final Priority priority, final String token)
+			throws IOException {
+		if (scheduler != null) {
+			try {
+				scheduler.acquire(priority, token);
+			} catch (final InterruptedException e) {
+				Thread.currentThread().interrupt();
+				throw new InterruptedIOException("Interrupted while waiting to send the request to " + page);
+			}
+		}
+		final PageMetrics pageMetrics = metrics.getPage(getPageGroup(page));
+		pageMetrics.requestStarted();
+		final long start = System.nanoTime();
+		final InputStream response;
 		try {
-			doc = DocumentBuilderFactory.newInstance().newDocumentBuilder().parse(url);
-		} catch (final ParserConfigurationException e) {
-			JOptionPane.showMessageDialog(null, "La connection  l'API a chou.\nCause : " + e.getMessage(),
-					"Erreur de communication", JOptionPane.ERROR_MESSAGE);
-		} catch (final SAXException e) {
-			JOptionPane.showMessageDialog(null, "La connection  l'API a chou.\nCause : " + e.getMessage(),
-					"Erreur de communication", JOptionPane.ERROR_MESSAGE);
+			response = transport.open(url);
 		} catch (final IOException e) {
-			JOptionPane.showMessageDialog(null, "La connection  l'API a chou.\nCause : " + e.getMessage(),
-					"Erreur de communication", JOptionPane.ERROR_MESSAGE);
+			pageMetrics.requestFailed();
+			throw e;
 		}
-		return doc;
+		return new MeteredInputStream(response, pageMetrics, start);
+	}
+
+	/**
+	 * Send a request, retrying it as allowed by the retry policy of its page.<br />
+	 * The requests are not sent while the circuit breaker is open. The errors which are not
+	 * transient (e.g. an HTTP error 404) are not retried; as the server answered, they count as a
+	 * success for the circuit breaker. The trial request of a half-open circuit is released on
+	 * every other exit (interruption, runtime exception), so the circuit cannot stay half-open.
+	 * @param page
+	 *            the page of the request.
+	 * @param url
+	 *            the URL of the request.
+	 * @param attempt
+	 *            the sending of the request.
+	 * @param <T>
+	 *            the type of the result of the request.
+	 * @return the result of the first successful attempt.
+	 * @throws IOException
+	 *             if the last attempt failed or if the circuit breaker is open.
+	 */
+	private <T> T sendWithRetry (final String page, final String url, final Attempt<T> attempt) throws IOException {
+		final RetryPolicy retryPolicy = getRetryPolicy(page);
+		final long deadline = retryPolicy.computeDeadline();
+		int attemptNumber = 0;
+		while (true) {
+			++attemptNumber;
+			if (circuitBreaker != null && !circuitBreaker.allowRequest()) {
+				throw new IOException("Circuit breaker open, request to " + page + " not sent");
+			}
+			boolean recorded = false;
+			try {
+				final T result = attempt.send(url);
+				if (circuitBreaker != null) {
+					circuitBreaker.recordSuccess();
+				}
+				recorded = true;
+				return result;
+			} catch (final IOException e) {
+				if (Thread.currentThread().isInterrupted()) {
+					throw e;
+				}
+				final boolean transientError = !(e instanceof HttpStatusException)
+						|| ((HttpStatusException) e).isTransient();
+				if (circuitBreaker != null) {
+					if (transientError) {
+						circuitBreaker.recordFailure();
+					} else {
+						circuitBreaker.recordSuccess();
+					}
+				}
+				recorded = true;
+				final long delay = retryPolicy.getDelay(attemptNumber, random);
+				if (!transientError || attemptNumber >= retryPolicy.getMaxAttempts()
+						|| System.nanoTime() + TimeUnit.MILLISECONDS.toNanos(delay) >= deadline) {
+					if (attemptNumber > 1) {
+						lg.warning("Request to " + page + " failed after " + attemptNumber + " attempts");
+					}
+					throw e;
+				}
+				lg.warning("Request to " + page + " failed (attempt " + attemptNumber + "/"
+						+ retryPolicy.getMaxAttempts() + ": " + e.getMessage() + "), retrying in " + delay + " ms");
+				try {
+					Thread.sleep(delay);
+				} catch (final InterruptedException interrupted) {
+					Thread.currentThread().interrupt();
+					throw e;
+				}
+			} finally {
+				if (!recorded && circuitBreaker != null) {
+					circuitBreaker.releaseTrial();
+				}
+			}
+		}
+	}
+
+	/**
+	 * Check if the cache has a fresh response for the request.
+	 * @param scope
+	 *            the scope of the response (e.g. the account of the user).
+	 * @param page
+	 *            the page to query.
+	 * @param params
+	 *            the parameters to transmit to the page.
+	 * @return <code>true</code> if the response can be read without any request to the API.
+	 */
+	public boolean hasFreshResponse (final String scope, final String page, final Map<String, String> params) {
+		if (cache == null) {
+			return false;
+		}
+		final File entry = cache.get(getCacheKey(scope, page, params));
+		return entry != null && cache.isFresh(entry);
+	}
+
+	/**
+	 * Open the response of the request, using the cache when possible.<br />
+	 * A fresh response is read from the cache without any request. A stale response is read from
+	 * the cache while it is refreshed in the background if the cache allows it, otherwise the
+	 * response is downloaded in the cache before being read. The responses with an error are
+	 * never stored. The caller is in charge of closing the stream.
+	 * @param scope
+	 *            the scope of the response (e.g. the account of the user), as the token is not
+	 *            part of the key of the cache.
+	 * @param page
+	 *            the page to query.
+	 * @param params
+	 *            the parameters to transmit to the page.
+	 * @return the stream with the XML response of the API.
+	 * @throws IOException
+	 *             if the connection to the API failed.
+	 */
+	public InputStream openCachedStream (final String scope, final String page, final Map<String, String> params)
+			throws IOException {
+		if (cache == null) {
+			return openStream(page, params);
+		}
+
+		final String key = getCacheKey(scope, page, params);
+		final File entry = cache.get(key);
+		if (entry != null && cache.isFresh(entry)) {
+			lg.info("Using fresh cached response for " + page);
+			return new FileInputStream(entry);
+		}
+		if (entry != null && cache.isStaleWhileRevalidate()) {
+			lg.info("Using stale cached response for " + page + ", refreshing in background");
+			scheduleRefresh(key, page, new HashMap<String, String>(params));
+			return new FileInputStream(entry);
+		}
+		return fetch(key, page, params, getPriority(page));
+	}
+
+	/**
+	 * Wait for the end of the refresh of the cache running in the background, if any.
+	 */
+	public synchronized void awaitPendingRefresh () {
+		if (pendingRefresh == null) {
+			return;
+		}
+		try {
+			pendingRefresh.get();
+		} catch (final InterruptedException e) {
+			lg.warning("Interrupted while waiting for the refresh of the cache");
+			Thread.currentThread().interrupt();
+		} catch (final ExecutionException e) {
+			lg.warning("Refresh of the cache failed (" + e.getCause().getMessage() + ")");
+		}
+		pendingRefresh = null;
+	}
+
+	/**
+	 * Refresh the cached response in the background.<br />
+	 * Does nothing if a refresh is already running.
+	 * @param key
+	 *            the key of the response.
+	 * @param page
+	 *            the page to query.
+	 * @param params
+	 *            the parameters to transmit to the page.
+	 */
+	private synchronized void scheduleRefresh (final String key, final String page, final Map<String, String> params) {
+		if (pendingRefresh != null && !pendingRefresh.isDone()) {
+			return;
+		}
+		if (refresher == null) {
+			refresher = Executors.newSingleThreadExecutor(new ThreadFactory() {
+				@Override
+				public Thread newThread (final Runnable runnable) {
+					final Thread thread = new Thread(runnable, "cache-refresh");
+					thread.setDaemon(true);
+					return thread;
+				}
+			});
+		}
+		pendingRefresh = refresher.submit(new Callable<Void>() {
+			@Override
+			public Void call () throws IOException {
+				fetch(key, page, params, Priority.BACKGROUND).close();
+				return null;
+			}
+		});
+	}
+
+	/**
+	 * Download the response in the cache and open it.<br />
+	 * If the response contains an error, it is not stored and the temporary file is deleted when
+	 * the stream is closed.
+	 * @param key
+	 *            the key of the response.
+	 * @param page
+	 *            the page to query.
+	 * @param params
+	 *            the parameters to transmit to the page.
+	 * @param priority
+	 *            the priority of the request.
+	 * @return the stream with the XML response of the API.
+	 * @throws IOException
+	 *             if the connection to the API failed.
+	 */
+	private InputStream fetch (final String key, final String page, final Map<String, String> params,
+			final Priority priority) throws IOException {
+		final File temporary = cache.createTemporaryFile();
+		boolean valid = false;
+		try {
+			final InputStream response = openStream(page, params, priority);
+			try {
+				final OutputStream output = new FileOutputStream(temporary);
+				try {
+					final byte[] buffer = new byte[BUFFER_SIZE];
+					int read;
+					while ((read = response.read(buffer)) != -1) {
+						output.write(buffer, 0, read);
+					}
+				} finally {
+					output.close();
+				}
+			} finally {
+				response.close();
+			}
+			valid = isValidResponse(temporary);
+		} catch (final IOException e) {
+			if (!temporary.delete()) {
+				lg.warning("Could not delete temporary file " + temporary);
+			}
+			throw e;
+		}
+
+		if (valid) {
+			return new FileInputStream(cache.put(key, temporary));
+		}
+		lg.info("Response for " + page + " contains errors, not stored in the cache");
+		return new FilterInputStream(new FileInputStream(temporary)) {
+			@Override
+			public void close () throws IOException {
+				super.close();
+				if (!temporary.delete()) {
+					lg.warning("Could not delete temporary file " + temporary);
+				}
+			}
+		};
+	}
+
+	/**
+	 * Check that a downloaded response does not contain any error.
+	 * @param response
+	 *            the file with the response.
+	 * @return <code>true</code> if the response is valid.
+	 * @throws IOException
+	 *             if the file could not be read.
+	 */
+	private static boolean isValidResponse (final File response) throws IOException {
+		final InputStream input = new FileInputStream(response);
+		try {
+			return new EpisodeStreamParser().parse(input, new EpisodeHandler() {
+				@Override
+				public void handle (final Episode episode) {
+					// Only the errors are checked
+				}
+			});
+		} catch (final XMLStreamException e) {
+			lg.warning("Response is not a valid XML document (" + e.getMessage() + ")");
+			return false;
+		} finally {
+			input.close();
+		}
+	}
+
+	/**
+	 * Build the key of a request in the cache.<br />
+	 * The token is not part of the key, as it changes for each session: the scope identifies the
+	 * user instead.
+	 * @param scope
+	 *            the scope of the response.
+	 * @param page
+	 *            the page to query.
+	 * @param params
+	 *            the parameters to transmit to the page.
+	 * @return the key of the request.
+	 */
+	private static String getCacheKey (final String scope, final String page, final Map<String, String> params) {
+		final Map<String, String> sortedParams = new TreeMap<String, String>(params);
+		sortedParams.remove(API.TOKEN);
+		return scope + "/" + page + "?" + sortedParams;
+	}
+
+	/**
+	 * Build the URL of the request for the given page.<br />
+	 * The values of the parameters are URL-encoded, and the compulsory parameters, encoded once,
+	 * are appended; they take precedence over the <code>params</code>, which are not modified. The
+	 * URL is logged without the value of the {@link #SENSITIVE_PARAMS sensitive parameters}.
+	 * @param page
+	 *            the page to query.
+	 * @param params
+	 *            the parameters to transmit to the page.
+	 * @return the URL of the request.
+	 */
+	String buildUrl (final String page, final Map<String, String> params) {
+		final StringBuilder path = new StringBuilder(host.length() + page.length() + 6);
+		path.append(host).append('/').append(page);
+		if (!page.endsWith("xml")) {
+			path.append(".xml");
+		}
+		path.append('?');
+		if (lg.isLoggable(Level.FINE)) {
+			lg.log(Level.FINE, "Request: url={0}", appendParams(new StringBuilder(path), params, true).toString());
+		}
+		return appendParams(path, params, false).toString();
+	}
+
+	/**
+	 * Append the parameters of a request, followed by the compulsory parameters, to its path.
+	 * @param url
+	 *            the path of the request.
+	 * @param params
+	 *            the parameters to transmit to the page.
+	 * @param redacted
+	 *            <code>true</code> to hide the value of the {@link #SENSITIVE_PARAMS sensitive
+	 *            parameters}.
+	 * @return the builder, with the URL of the request.
+	 */
+	private StringBuilder appendParams (final StringBuilder url, final Map<String, String> params,
+			final boolean redacted) {
+		final String query = redacted ? redactedCompulsoryQuery : compulsoryQuery;
+		url.ensureCapacity(url.length() + query.length() + params.size() * PARAM_LENGTH);
+		for (final Entry<String, String> param : params.entrySet()) {
+			if (compulsoryParams.containsKey(param.getKey())) {
+				continue;
+			}
+			if (redacted && isSensitive(param.getKey())) {
+				appendParam(url, param.getKey(), null);
+				url.append(REDACTED);
+			} else {
+				appendParam(url, param.getKey(), param.getValue());
+			}
+		}
+		if (!query.isEmpty()) {
+			if (url.charAt(url.length() - 1) != '?') {
+				url.append('&');
+			}
+			url.append(query);
+		}
+		return url;
+	}
+
+	/**
+	 * Check if the value of a parameter must not be written in the logs.
+	 * @param parameter
+	 *            the name of the parameter.
+	 * @return <code>true</code> if the parameter is one of the {@link #SENSITIVE_PARAMS}.
+	 */
+	private static boolean isSensitive (final String parameter) {
+		for (final String sensitiveParam : SENSITIVE_PARAMS) {
+			if (sensitiveParam.equals(parameter)) {
+				return true;
+			}
+		}
+		return false;
+	}
+
+	/**
+	 * Append a parameter to a query, separated from the previous one by a <code>&amp;</code>.<br />
+	 * The value is URL-encoded; the values which do not need it (tokens, hashes, ...) are
+	 * appended as is, without any allocation.
+	 * @param query
+	 *            the query being built.
+	 * @param name
+	 *            the name of the parameter.
+	 * @param value
+	 *            the value of the parameter.
+	 */
+	private static void appendParam (final StringBuilder query, final String name, final String value) {
+		if (query.length() > 0 && query.charAt(query.length() - 1) != '?') {
+			query.append('&');
+		}
+		query.append(name).append('=');
+		if (value == null) {
+			return;
+		}
+		for (int index = 0; index < value.length(); ++index) {
+			if (!isUnreserved(value.charAt(index))) {
+				try {
+					query.append(URLEncoder.encode(value, URL_CHARSET));
+				} catch (final UnsupportedEncodingException e) {
+					throw new IllegalStateException("The charset " + URL_CHARSET + " is not supported", e);
+				}
+				return;
+			}
+		}
+		query.append(value);
+	}
+
+	/**
+	 * Check if a character can be written in a URL without being encoded.
+	 * @param c
+	 *            the character.
+	 * @return <code>true</code> for the unreserved characters of RFC 3986.
+	 */
+	private static boolean isUnreserved (final char c) {
+		return c >= 'a' && c <= 'z' || c >= 'A' && c <= 'Z' || c >= '0' && c <= '9' || c == '-' || c == '.'
+				|| c == '_' || c == '~';
 	}
 
 	/**
 	 * Format the parameters for a request to the API.<br />
-	 * Formatting: <code>param1=value1&amp;param2=value2&amp;<i>[...]</i>&amp;paramN=valueN</code>
+	 * Formatting: <code>param1=value1&amp;param2=value2&amp;<i>[...]</i>&amp;paramN=valueN</code>,
+	 * the values being URL-encoded.
 	 * 
 	 * @param params
 	 *            the parameters.
 	 * @return a formatted string with the parameters.
 	 */
-	private static String formatParamForRequest (final Map<String, String> params) {
+	static String formatParamForRequest (final Map<String, String> params) {
 		if (params == null || params.isEmpty()) {
 			throw new IllegalArgumentException("Cannot format parameters: map is null or empty.");
 		}
 
-		String parameters = "";
+		final StringBuilder parameters = new StringBuilder(params.size() * PARAM_LENGTH);
 		for (final Entry<String, String> currentEntry : params.entrySet()) {
-			parameters += currentEntry.getKey() + "=" + currentEntry.getValue() + "&";
-		}
-		if (!parameters.isEmpty() && parameters.endsWith("&")) {
-			return parameters.substring(0, parameters.length() - 1);
+			appendParam(parameters, currentEntry.getKey(), currentEntry.getValue());
 		}
-		return parameters;
+		return parameters.toString();
 	}
 
 
@@ -179,6 +932,25 @@ public class QueryManager {
 		return false;
 	}
 
+	/**
+	 * Return the code of the error returned by the API.
+	 * @param doc
+	 *            the document with an error.
+	 * @return the code of the first error, the code of the response if there is no error
+	 *         element.
+	 */
+	static String getErrorCode (final Document doc) {
+		final NodeList errors = doc.getElementsByTagName(API.ERRORS);
+		String code = null;
+		if (errors.getLength() > 0) {
+			code = getTextValue((Element) errors.item(0), API.CODE_OK);
+		}
+		if (code == null) {
+			code = getTextValue(doc.getDocumentElement(), API.CODE_OK);
+		}
+		return code == null ? UNKNOWN_ERROR : code;
+	}
+
 	/**
 	 * Retrieve the content of XML tag in an element.
 	 * i.e for <employee><name>John</name></employee> xml snippet if
@@ -206,5 +978,90 @@ public class QueryManager {
 	public static int getIntValue (final Element ele, final String tagName) {
 		return Integer.parseInt(getTextValue(ele, tagName));
 	}
+
+	/**
+	 * Single attempt of a request.
+	 * @author Alex
+	 * @param <T>
+	 *            the type of the result of the request.
+	 */
+	private interface Attempt<T> {
+		/**
+		 * Send the request.
+		 * @param url
+		 *            the URL of the request.
+		 * @return the result of the request.
+		 * @throws IOException
+		 *             if the request failed.
+		 */
+		T send (String url) throws IOException;
+	}
+
+	/**
+	 * Stream which records the latency and the size of a response in the metrics of its page
+	 * when it is closed.<br />
+	 * The size transferred is given by the transport when the response is an
+	 * {@link EncodedResponse}, otherwise it is the size read.
+	 * @author Alex
+	 */
+	private static class MeteredInputStream extends FilterInputStream {
+		private final PageMetrics	pageMetrics;
+		private final long			start;
+		private long				bytes;
+		private boolean				closed;
+
+		/**
+		 * Constructor #1.<br />
+		 * @param response
+		 *            the stream of the response.
+		 * @param pageMetrics
+		 *            the metrics of the page.
+		 * @param start
+		 *            the time when the request was sent, in nanoseconds.
+		 */
+		public MeteredInputStream (final InputStream response, final PageMetrics pageMetrics, final long start) {
+			super(response);
+			this.pageMetrics = pageMetrics;
+			this.start = start;
+		}
+
+		@Override
+		public int read () throws IOException {
+			final int read = super.read();
+			if (read != -1) {
+				++bytes;
+			}
+			return read;
+		}
+
+		@Override
+		public int read (final byte[] b, final int off, final int len) throws IOException {
+			final int read = super.read(b, off, len);
+			if (read > 0) {
+				bytes += read;
+			}
+			return read;
+		}
+
+		@Override
+		public long skip (final long n) throws IOException {
+			final long skipped = super.skip(n);
+			bytes += skipped;
+			return skipped;
+		}
+
+		@Override
+		public void close () throws IOException {
+			try {
+				super.close();
+			} finally {
+				if (!closed) {
+					closed = true;
+					pageMetrics.responseReceived(System.nanoTime() - start, bytes,
+							in instanceof EncodedResponse ? ((EncodedResponse) in).getBytesTransferred() : bytes);
+				}
+			}
+		}
+	}
 	
 }
@@ -0,0 +1,118 @@
+package com.alexrnl.betaseriesexporter;
+
+import java.awt.BorderLayout;
+import java.awt.Dimension;
+import java.util.List;
+import java.util.logging.Logger;
+
+import javax.swing.BorderFactory;
+import javax.swing.DefaultListModel;
+import javax.swing.JFrame;
+import javax.swing.JLabel;
+import javax.swing.JList;
+import javax.swing.JPanel;
+import javax.swing.JScrollPane;
+import javax.swing.JTextField;
+import javax.swing.SwingUtilities;
+import javax.swing.event.DocumentEvent;
+import javax.swing.event.DocumentListener;
+
+/**
+ * Window to search the episodes of the last export.<br />
+ * The results are updated as the query is typed; see {@link EpisodeIndex#search(String)} for the
+ * syntax of the query.
+ * @author Alex
+ */
+public class SearchForm {
+	private static Logger			lg				= Logger.getLogger(SearchForm.class.getName());
+
+	private static final int		DEFAULT_WIDTH	= 520;
+	private static final int		DEFAULT_HEIGHT	= 420;
+	/** The maximum number of results shown, to keep the list responsive */
+	private static final int		MAX_RESULTS		= 1000;
+
+	private final EpisodeIndex		index;
+	private final JFrame			frame;
+	private final JTextField		query;
+	private final JLabel			status;
+	private final JList<Episode>	results;
+
+	/**
+	 * Constructor #1.<br />
+	 * Build the window; must be called from the event dispatch thread.
+	 * @param index
+	 *            the index of the episodes.
+	 */
+	private SearchForm (final EpisodeIndex index) {
+		this.index = index;
+		frame = new JFrame("BetaSeries Exporter - Recherche");
+		query = new JTextField(30);
+		status = new JLabel(" ");
+		results = new JList<Episode>();
+
+		query.getDocument().addDocumentListener(new DocumentListener() {
+			@Override
+			public void insertUpdate (final DocumentEvent e) {
+				search();
+			}
+
+			@Override
+			public void removeUpdate (final DocumentEvent e) {
+				search();
+			}
+
+			@Override
+			public void changedUpdate (final DocumentEvent e) {
+				search();
+			}
+		});
+
+		final JPanel pane = new JPanel(new BorderLayout());
+		pane.add(query, BorderLayout.NORTH);
+		pane.add(new JScrollPane(results), BorderLayout.CENTER);
+		pane.add(status, BorderLayout.SOUTH);
+		pane.setBorder(BorderFactory.createTitledBorder("Srie (show:dex), pisodes (S02E01-S02E05) ou titre"));
+
+		frame.setContentPane(pane);
+		frame.setMinimumSize(new Dimension(DEFAULT_WIDTH, DEFAULT_HEIGHT));
+		frame.setDefaultCloseOperation(JFrame.DISPOSE_ON_CLOSE);
+		frame.setLocationRelativeTo(null);
+		search();
+	}
+
+	/**
+	 * Show a search window on the episodes of an index.
+	 * @param index
+	 *            the index of the episodes.
+	 */
+	public static void show (final EpisodeIndex index) {
+		SwingUtilities.invokeLater(new Runnable() {
+			@Override
+			public void run () {
+				new SearchForm(index).frame.setVisible(true);
+			}
+		});
+	}
+
+	/**
+	 * Update the results with the current query.
+	 */
+	private void search () {
+		final List<Episode> episodes;
+		try {
+			episodes = index.search(query.getText());
+		} catch (final IllegalArgumentException e) {
+			lg.fine("Invalid query (" + e.getMessage() + ")");
+			status.setText(e.getMessage());
+			return;
+		}
+		// A new model, to avoid an event for each result
+		final DefaultListModel<Episode> model = new DefaultListModel<Episode>();
+		for (final Episode episode : episodes.subList(0, Math.min(MAX_RESULTS, episodes.size()))) {
+			model.addElement(episode);
+		}
+		results.setModel(model);
+		status.setText(episodes.size() + " pisode(s) sur " + index.size()
+				+ (episodes.size() > MAX_RESULTS ? ", " + MAX_RESULTS + " premiers affichs" : ""));
+	}
+}
@@ -0,0 +1,57 @@
+package com.alexrnl.betaseriesexporter;
+
+/**
+ * Class which represents a show followed by a member of BetaSeries.<br />
+ * Instances are immutable.
+ * @author Alex
+ */
+public final class Show {
+	private final String	url;
+	private final String	title;
+
+	/**
+	 * Constructor #1.<br />
+	 * @param url
+	 *            the url of the show, which identifies it in the API.
+	 * @param title
+	 *            the title of the show, may be <code>null</code>.
+	 */
+	public Show (final String url, final String title) {
+		if (url == null || url.isEmpty()) {
+			throw new IllegalArgumentException("The url of the show cannot be empty");
+		}
+		this.url = url;
+		this.title = title;
+	}
+
+	/**
+	 * Return the url of the show, which identifies it in the API.
+	 * @return the url.
+	 */
+	public String getUrl () {
+		return url;
+	}
+
+	/**
+	 * Return the title of the show.
+	 * @return the title, <code>null</code> if the API did not return it.
+	 */
+	public String getTitle () {
+		return title;
+	}
+
+	@Override
+	public int hashCode () {
+		return url.hashCode();
+	}
+
+	@Override
+	public boolean equals (final Object obj) {
+		return this == obj || obj instanceof Show && url.equals(((Show) obj).url);
+	}
+
+	@Override
+	public String toString () {
+		return title == null ? url : title + " (" + url + ")";
+	}
+}
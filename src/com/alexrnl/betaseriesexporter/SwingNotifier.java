@@ -0,0 +1,39 @@
+package com.alexrnl.betaseriesexporter;
+
+import javax.swing.JOptionPane;
+
+/**
+ * Notifier which displays the messages in dialog boxes.<br />
+ * The dialogs wait for the user interface to be ready, so the notifier can be created before.
+ * @author Alex
+ */
+public class SwingNotifier implements Notifier {
+	private final UserInterface	userInterface;
+
+	/**
+	 * Constructor #1.<br />
+	 * @param userInterface
+	 *            the user interface being prepared.
+	 */
+	public SwingNotifier (final UserInterface userInterface) {
+		this.userInterface = userInterface;
+	}
+
+	@Override
+	public void info (final String title, final String message) {
+		userInterface.await();
+		JOptionPane.showMessageDialog(null, message, title, JOptionPane.INFORMATION_MESSAGE);
+	}
+
+	@Override
+	public void error (final String title, final String message) {
+		userInterface.await();
+		JOptionPane.showMessageDialog(null, message, title, JOptionPane.ERROR_MESSAGE);
+	}
+
+	@Override
+	public String ask (final String title, final String question) {
+		userInterface.await();
+		return JOptionPane.showInputDialog(null, question, title, JOptionPane.QUESTION_MESSAGE);
+	}
+}
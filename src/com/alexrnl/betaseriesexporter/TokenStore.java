@@ -0,0 +1,108 @@
+package com.alexrnl.betaseriesexporter;
+
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.util.Properties;
+import java.util.logging.Logger;
+
+/**
+ * Class which stores the token of the user on the disk, so it can be reused by the next runs
+ * instead of logging in again.<br />
+ * The file is only readable and writable by its owner.
+ * @author Alex
+ */
+public class TokenStore {
+	private static Logger	lg	= Logger.getLogger(TokenStore.class.getName());
+
+	private final File		file;
+
+	/**
+	 * Constructor #1.<br />
+	 * @param file
+	 *            the file where the token is stored.
+	 */
+	public TokenStore (final File file) {
+		this.file = file;
+	}
+
+	/**
+	 * Load the token stored for the user.
+	 * @param login
+	 *            the login of the user, <code>null</code> to accept the token of any user.
+	 * @return the login and the token stored (in this order), <code>null</code> if there is no
+	 *         token for the user.
+	 */
+	public String[] load (final String login) {
+		if (!file.isFile()) {
+			return null;
+		}
+		final Properties properties = new Properties();
+		try {
+			final InputStream input = new FileInputStream(file);
+			try {
+				properties.load(input);
+			} finally {
+				input.close();
+			}
+		} catch (final IOException e) {
+			lg.warning("Could not read the token file (" + e.getMessage() + ")");
+			return null;
+		}
+
+		final String storedLogin = properties.getProperty(API.LOGIN);
+		final String token = properties.getProperty(API.TOKEN);
+		if (storedLogin == null || token == null || token.isEmpty()
+				|| (login != null && !login.equals(storedLogin))) {
+			return null;
+		}
+		return new String[] { storedLogin, token };
+	}
+
+	/**
+	 * Store the token of the user, replacing the previous one.
+	 * @param login
+	 *            the login of the user.
+	 * @param token
+	 *            the token of the user.
+	 */
+	public void save (final String login, final String token) {
+		final Properties properties = new Properties();
+		properties.setProperty(API.LOGIN, login);
+		properties.setProperty(API.TOKEN, token);
+		try {
+			final File directory = file.getAbsoluteFile().getParentFile();
+			if (directory != null && !directory.isDirectory() && !directory.mkdirs()) {
+				throw new IOException("cannot create directory " + directory);
+			}
+			if (!file.exists() && !file.createNewFile()) {
+				throw new IOException("cannot create file " + file);
+			}
+			// Restrict the access to the owner before writing the token
+			if (!file.setReadable(false, false) || !file.setReadable(true, true)
+					|| !file.setWritable(false, false) || !file.setWritable(true, true)) {
+				lg.warning("Could not restrict the permissions of the token file");
+			}
+			final OutputStream output = new FileOutputStream(file);
+			try {
+				properties.store(output, "BetaSeries Exporter session");
+			} finally {
+				output.close();
+			}
+		} catch (final IOException e) {
+			lg.warning("Could not store the token (" + e.getMessage() + ")");
+		}
+	}
+
+	/**
+	 * Delete the token stored.
+	 */
+	public void clear () {
+		if (file.exists() && !file.delete()) {
+			lg.warning("Could not delete the token file " + file);
+		}
+	}
+}
@@ -0,0 +1,146 @@
+package com.alexrnl.betaseriesexporter;
+
+import java.awt.Toolkit;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.FutureTask;
+import java.util.concurrent.TimeUnit;
+import java.util.logging.Logger;
+
+import javax.swing.UIManager;
+import javax.swing.UIManager.LookAndFeelInfo;
+import javax.swing.UnsupportedLookAndFeelException;
+
+/**
+ * Class which prepares the graphical interface in the background.<br />
+ * The toolkit is loaded as soon as the preparation is {@link #start() started}, while the
+ * configuration is read; the look and feel is installed once its name is
+ * {@link #setLookAndFeel(String) known}. Meanwhile, the application can already send its first
+ * requests: it only has to {@link #await() wait for the interface} before creating a component.
+ * @author Alex
+ */
+public final class UserInterface {
+	private static Logger						lg				= Logger.getLogger(UserInterface.class.getName());
+
+	/** The classes of the usual look and feels, to avoid listing the installed ones */
+	private static final Map<String, String>	LOOK_AND_FEELS	= new HashMap<String, String>();
+
+	static {
+		LOOK_AND_FEELS.put("Metal", "javax.swing.plaf.metal.MetalLookAndFeel");
+		LOOK_AND_FEELS.put("Nimbus", "javax.swing.plaf.nimbus.NimbusLookAndFeel");
+		LOOK_AND_FEELS.put("CDE/Motif", "com.sun.java.swing.plaf.motif.MotifLookAndFeel");
+		LOOK_AND_FEELS.put("GTK+", "com.sun.java.swing.plaf.gtk.GTKLookAndFeel");
+		LOOK_AND_FEELS.put("Windows", "com.sun.java.swing.plaf.windows.WindowsLookAndFeel");
+		LOOK_AND_FEELS.put("Windows Classic", "com.sun.java.swing.plaf.windows.WindowsClassicLookAndFeel");
+	}
+
+	private final CountDownLatch	configured;
+	private volatile String			lookAndFeelName;
+	private final FutureTask<Void>	preparation;
+
+	/**
+	 * Constructor #1.<br />
+	 */
+	private UserInterface () {
+		configured = new CountDownLatch(1);
+		preparation = new FutureTask<Void>(new Callable<Void>() {
+			@Override
+			public Void call () throws InterruptedException {
+				prepare();
+				return null;
+			}
+		});
+	}
+
+	/**
+	 * Start to prepare the graphical interface.<br />
+	 * {@link #setLookAndFeel(String)} must then be called, once the configuration is loaded.
+	 * @return the interface being prepared.
+	 */
+	public static UserInterface start () {
+		final UserInterface userInterface = new UserInterface();
+		final Thread thread = new Thread(userInterface.preparation, "ui-init");
+		thread.setDaemon(true);
+		thread.start();
+		return userInterface;
+	}
+
+	/**
+	 * Set the look and feel of the interface.
+	 * @param name
+	 *            the name of the look and feel, <code>null</code> to keep the default one.
+	 */
+	public void setLookAndFeel (final String name) {
+		lookAndFeelName = name;
+		configured.countDown();
+	}
+
+	/**
+	 * Wait for the interface to be ready.<br />
+	 * Must be called before creating any component, after {@link #setLookAndFeel(String)}.
+	 */
+	public void await () {
+		if (configured.getCount() > 0) {
+			throw new IllegalStateException("The look and feel of the interface has not been set");
+		}
+		try {
+			preparation.get();
+		} catch (final InterruptedException e) {
+			Thread.currentThread().interrupt();
+			lg.warning("Interrupted while preparing the user interface");
+		} catch (final ExecutionException e) {
+			lg.warning("Could not prepare the user interface (" + e.getCause() + ")");
+		}
+	}
+
+	/**
+	 * Load the toolkit and install the look and feel.
+	 * @throws InterruptedException
+	 *             if the thread is interrupted while waiting for the configuration.
+	 */
+	private void prepare () throws InterruptedException {
+		final long start = System.nanoTime();
+		Toolkit.getDefaultToolkit();
+		configured.await();
+		if (lookAndFeelName != null) {
+			installLookAndFeel(lookAndFeelName);
+		}
+		lg.info("User interface ready in " + TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start) + " ms");
+	}
+
+	/**
+	 * Install a look and feel.<br />
+	 * The installed look and feels are only listed if the name is not a usual one.
+	 * @param name
+	 *            the name of the look and feel.
+	 */
+	private static void installLookAndFeel (final String name) {
+		String className = LOOK_AND_FEELS.get(name);
+		if (className == null) {
+			for (final LookAndFeelInfo laf : UIManager.getInstalledLookAndFeels()) {
+				lg.fine(laf.getName());
+				if (laf.getName().equals(name)) {
+					className = laf.getClassName();
+				}
+			}
+		}
+		if (className == null) {
+			lg.warning("Could not find the look and feel " + name + ". Using default look and feel.");
+			return;
+		}
+		try {
+			UIManager.setLookAndFeel(className);
+		} catch (final ClassNotFoundException e) {
+			lg.warning("Could not set the look and feel " + name + ", class not found: " + e.getMessage());
+		} catch (final InstantiationException e) {
+			lg.warning("Could not set the look and feel " + name + ", instantiation failed: " + e.getMessage());
+		} catch (final IllegalAccessException e) {
+			lg.warning("Could not set the look and feel " + name + ", access to the class denied: " + e.getMessage());
+		} catch (final UnsupportedLookAndFeelException e) {
+			lg.warning("Could not set the look and feel " + name + ", look and feel not supported: " + e.getMessage());
+		}
+	}
+}
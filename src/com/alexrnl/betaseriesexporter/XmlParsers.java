@@ -0,0 +1,208 @@
+package com.alexrnl.betaseriesexporter;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.Locale;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.logging.Logger;
+
+import javax.xml.XMLConstants;
+import javax.xml.parsers.DocumentBuilder;
+import javax.xml.parsers.DocumentBuilderFactory;
+import javax.xml.parsers.ParserConfigurationException;
+import javax.xml.stream.XMLInputFactory;
+import javax.xml.stream.XMLStreamException;
+import javax.xml.stream.XMLStreamReader;
+
+import org.w3c.dom.Document;
+import org.xml.sax.ErrorHandler;
+import org.xml.sax.SAXException;
+import org.xml.sax.SAXParseException;
+
+/**
+ * Provider of the XML parsers used to read the responses of the API.<br />
+ * The factories are created and configured once: the DTD and the external entities are
+ * disabled, as the API never uses them, which avoids both their cost and the attacks based on
+ * them. The DOM builders are kept in a pool shared by the threads instead of being created for
+ * each response; unlike a builder per thread, the pool does not grow with short-lived threads
+ * (e.g. the virtual threads of a {@link BatchExport}).
+ * @author Alex
+ */
+public final class XmlParsers {
+	private static Logger								lg							= Logger.getLogger(XmlParsers.class.getName());
+
+	private static final String							DISALLOW_DOCTYPE			= "http://apache.org/xml/features/disallow-doctype-decl";
+	private static final String							LOAD_EXTERNAL_DTD			= "http://apache.org/xml/features/nonvalidating/load-external-dtd";
+	private static final String							EXTERNAL_GENERAL_ENTITIES	= "http://xml.org/sax/features/external-general-entities";
+	private static final String							EXTERNAL_PARAMETER_ENTITIES	= "http://xml.org/sax/features/external-parameter-entities";
+
+	/**
+	 * The kinds of parser available to read the episodes.
+	 * @author Alex
+	 */
+	public enum Kind {
+		/** The response is loaded in a document */
+		DOM,
+		/** The episodes are read one by one by the {@link EpisodeStreamParser} */
+		STREAM;
+
+		/**
+		 * Return the kind of parser with the given name.
+		 * @param name
+		 *            the name of the parser (case is ignored), may be <code>null</code>.
+		 * @return the kind of parser, {@link #STREAM} if the name is <code>null</code> or
+		 *         unknown.
+		 */
+		public static Kind forName (final String name) {
+			if (name == null) {
+				return STREAM;
+			}
+			try {
+				return valueOf(name.trim().toUpperCase(Locale.ENGLISH));
+			} catch (final IllegalArgumentException e) {
+				lg.warning("Unknown parser " + name + ", using " + STREAM);
+				return STREAM;
+			}
+		}
+	}
+
+	private static final DocumentBuilderFactory			DOCUMENT_BUILDER_FACTORY	= createDocumentBuilderFactory();
+	private static final XMLInputFactory				INPUT_FACTORY				= createInputFactory();
+	/** The maximum number of idle builders kept in the pool */
+	private static final int							MAX_IDLE_BUILDERS			= 2 * Runtime.getRuntime().availableProcessors();
+	private static final BlockingQueue<DocumentBuilder>	DOCUMENT_BUILDERS			= new ArrayBlockingQueue<DocumentBuilder>(
+			MAX_IDLE_BUILDERS);
+	/** The error handler of the builders, which fails on the XML errors */
+	private static final ErrorHandler					ERROR_HANDLER				= new ErrorHandler() {
+		@Override
+		public void warning (final SAXParseException exception) {
+			lg.fine("XML warning (" + exception.getMessage() + ")");
+		}
+
+		@Override
+		public void error (final SAXParseException exception) throws SAXException {
+			throw exception;
+		}
+
+		@Override
+		public void fatalError (final SAXParseException exception) throws SAXException {
+			throw exception;
+		}
+	};
+
+	/**
+	 * Constructor #1.<br />
+	 * Private constructor, the class only has static methods.
+	 */
+	private XmlParsers () {
+		super();
+	}
+
+	/**
+	 * Parse a response in a document.<br />
+	 * An idle builder of the pool is reused. The stream is not closed by this method.
+	 * @param input
+	 *            the stream with the response.
+	 * @return the document.
+	 * @throws SAXException
+	 *             if the response is not a valid XML document.
+	 * @throws IOException
+	 *             if the response could not be read.
+	 */
+	public static Document parse (final InputStream input) throws SAXException, IOException {
+		DocumentBuilder builder = DOCUMENT_BUILDERS.poll();
+		if (builder == null) {
+			builder = createDocumentBuilder();
+		}
+		try {
+			return builder.parse(input);
+		} finally {
+			// Resetting the builder also restores its initial error handler
+			builder.reset();
+			builder.setErrorHandler(ERROR_HANDLER);
+			// The builder is dropped if the pool is full
+			DOCUMENT_BUILDERS.offer(builder);
+		}
+	}
+
+	/**
+	 * Create a streaming reader for a response.
+	 * @param input
+	 *            the stream with the response.
+	 * @return the reader.
+	 * @throws XMLStreamException
+	 *             if the reader could not be created.
+	 */
+	public static XMLStreamReader createStreamReader (final InputStream input) throws XMLStreamException {
+		return INPUT_FACTORY.createXMLStreamReader(input);
+	}
+
+	/**
+	 * Create a DOM builder, which fails on the XML errors.
+	 * @return the builder.
+	 */
+	private static DocumentBuilder createDocumentBuilder () {
+		try {
+			final DocumentBuilder builder;
+			// The factory is not thread-safe
+			synchronized (DOCUMENT_BUILDER_FACTORY) {
+				builder = DOCUMENT_BUILDER_FACTORY.newDocumentBuilder();
+			}
+			builder.setErrorHandler(ERROR_HANDLER);
+			return builder;
+		} catch (final ParserConfigurationException e) {
+			throw new IllegalStateException("Cannot create the document builder", e);
+		}
+	}
+
+	/**
+	 * Create the factory of the DOM builders.
+	 * @return the factory.
+	 */
+	private static DocumentBuilderFactory createDocumentBuilderFactory () {
+		final DocumentBuilderFactory factory = DocumentBuilderFactory.newInstance();
+		factory.setNamespaceAware(false);
+		factory.setValidating(false);
+		factory.setXIncludeAware(false);
+		factory.setExpandEntityReferences(false);
+		for (final String feature : new String[] { DISALLOW_DOCTYPE, XMLConstants.FEATURE_SECURE_PROCESSING }) {
+			setFeature(factory, feature, true);
+		}
+		for (final String feature : new String[] { LOAD_EXTERNAL_DTD, EXTERNAL_GENERAL_ENTITIES,
+				EXTERNAL_PARAMETER_ENTITIES }) {
+			setFeature(factory, feature, false);
+		}
+		return factory;
+	}
+
+	/**
+	 * Set a feature of the DOM factory.<br />
+	 * A feature not supported by the implementation is logged.
+	 * @param factory
+	 *            the factory.
+	 * @param feature
+	 *            the feature.
+	 * @param value
+	 *            the value of the feature.
+	 */
+	private static void setFeature (final DocumentBuilderFactory factory, final String feature, final boolean value) {
+		try {
+			factory.setFeature(feature, value);
+		} catch (final ParserConfigurationException e) {
+			lg.warning("XML feature " + feature + " not supported (" + e.getMessage() + ")");
+		}
+	}
+
+	/**
+	 * Create the factory of the streaming readers.
+	 * @return the factory.
+	 */
+	private static XMLInputFactory createInputFactory () {
+		final XMLInputFactory factory = XMLInputFactory.newInstance();
+		factory.setProperty(XMLInputFactory.SUPPORT_DTD, Boolean.FALSE);
+		factory.setProperty(XMLInputFactory.IS_SUPPORTING_EXTERNAL_ENTITIES, Boolean.FALSE);
+		factory.setProperty(XMLInputFactory.IS_COALESCING, Boolean.TRUE);
+		return factory;
+	}
+}
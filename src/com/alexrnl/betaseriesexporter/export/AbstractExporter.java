@@ -0,0 +1,59 @@
+package com.alexrnl.betaseriesexporter.export;
+
+import java.io.IOException;
+import java.io.Writer;
+import java.nio.charset.Charset;
+import java.util.Date;
+
+import com.alexrnl.betaseriesexporter.Configuration;
+
+/**
+ * Base class for the exporters, which keeps the writer of the document.
+ * @author Alex
+ */
+public abstract class AbstractExporter implements Exporter {
+	private final String	format;
+	private final String	extension;
+	private Writer			writer;
+
+	/**
+	 * Constructor #1.<br />
+	 * @param format
+	 *            the name of the format.
+	 * @param extension
+	 *            the extension of the files.
+	 */
+	protected AbstractExporter (final String format, final String extension) {
+		this.format = format;
+		this.extension = extension;
+	}
+
+	@Override
+	public String getFormat () {
+		return format;
+	}
+
+	@Override
+	public String getExtension () {
+		return extension;
+	}
+
+	@Override
+	public void start (final Writer output, final Charset charset, final Date date, final Configuration configuration)
+			throws IOException {
+		this.writer = output;
+	}
+
+	@Override
+	public void end () throws IOException {
+		writer.flush();
+	}
+
+	/**
+	 * Return the writer of the document.
+	 * @return the writer.
+	 */
+	protected Writer getWriter () {
+		return writer;
+	}
+}
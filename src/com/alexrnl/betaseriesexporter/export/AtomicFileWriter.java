@@ -0,0 +1,282 @@
+package com.alexrnl.betaseriesexporter.export;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.Writer;
+import java.nio.ByteBuffer;
+import java.nio.CharBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.CharacterCodingException;
+import java.nio.charset.Charset;
+import java.nio.charset.CharsetEncoder;
+import java.nio.charset.CoderResult;
+import java.nio.charset.CodingErrorAction;
+import java.nio.file.AtomicMoveNotSupportedException;
+import java.nio.file.FileAlreadyExistsException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.Random;
+import java.util.logging.Logger;
+
+/**
+ * Writer which replaces a file atomically.<br />
+ * The characters are encoded with an explicit charset into a fixed-size direct buffer, which is
+ * written to the channel of a temporary file each time it is full. The temporary file is moved
+ * in place of the target file by {@link #close()}, so the readers of the target never see a
+ * partially written file; {@link #abort()} discards the temporary file and keeps the target
+ * untouched. The target keeps its permissions when it is replaced.
+ * @author Alex
+ */
+public class AtomicFileWriter extends Writer {
+	private static Logger			lg					= Logger.getLogger(AtomicFileWriter.class.getName());
+
+	/** The default size of the buffers, in characters and in bytes */
+	public static final int			DEFAULT_BUFFER_SIZE	= 8192;
+
+	private static final String		TEMPORARY_EXTENSION	= ".tmp";
+	private static final int		NAME_RADIX			= 36;
+	private static final Random		RANDOM				= new Random();
+
+	private final Path				target;
+	private final Path				temporary;
+	private final FileChannel		channel;
+	private final CharsetEncoder	encoder;
+	private final CharBuffer		chars;
+	private final ByteBuffer		bytes;
+	private boolean					closed;
+
+	/**
+	 * Constructor #1.<br />
+	 * Create the temporary file next to the target file.
+	 * @param target
+	 *            the file to write.
+	 * @param charset
+	 *            the charset of the file.
+	 * @param bufferSize
+	 *            the size of the buffers.
+	 * @throws IOException
+	 *             if the temporary file could not be created.
+	 */
+	public AtomicFileWriter (final File target, final Charset charset, final int bufferSize) throws IOException {
+		this.target = target.getAbsoluteFile().toPath();
+		this.temporary = createTemporary(this.target);
+		this.channel = FileChannel.open(temporary, StandardOpenOption.WRITE, StandardOpenOption.TRUNCATE_EXISTING);
+		this.encoder = charset.newEncoder().onMalformedInput(CodingErrorAction.REPLACE)
+				.onUnmappableCharacter(CodingErrorAction.REPLACE);
+		this.chars = CharBuffer.allocate(bufferSize);
+		this.bytes = ByteBuffer.allocateDirect(Math.max(bufferSize, (int) Math.ceil(encoder.maxBytesPerChar())));
+	}
+
+	/**
+	 * Constructor #2.<br />
+	 * Use buffers of the {@link #DEFAULT_BUFFER_SIZE default size}.
+	 * @param target
+	 *            the file to write.
+	 * @param charset
+	 *            the charset of the file.
+	 * @throws IOException
+	 *             if the temporary file could not be created.
+	 * @see #AtomicFileWriter(File, Charset, int)
+	 */
+	public AtomicFileWriter (final File target, final Charset charset) throws IOException {
+		this(target, charset, DEFAULT_BUFFER_SIZE);
+	}
+
+	@Override
+	public void write (final int c) throws IOException {
+		ensureOpen();
+		if (!chars.hasRemaining()) {
+			encode(false);
+		}
+		chars.put((char) c);
+	}
+
+	@Override
+	public void write (final char[] cbuf, final int off, final int len) throws IOException {
+		ensureOpen();
+		int offset = off;
+		int remaining = len;
+		while (remaining > 0) {
+			if (!chars.hasRemaining()) {
+				encode(false);
+			}
+			final int length = Math.min(remaining, chars.remaining());
+			chars.put(cbuf, offset, length);
+			offset += length;
+			remaining -= length;
+		}
+	}
+
+	@Override
+	public void write (final String str, final int off, final int len) throws IOException {
+		ensureOpen();
+		int offset = off;
+		int remaining = len;
+		while (remaining > 0) {
+			if (!chars.hasRemaining()) {
+				encode(false);
+			}
+			final int length = Math.min(remaining, chars.remaining());
+			chars.put(str, offset, offset + length);
+			offset += length;
+			remaining -= length;
+		}
+	}
+
+	/**
+	 * Write the characters buffered to the temporary file.<br />
+	 * The target file is not modified until the writer is closed.
+	 */
+	@Override
+	public void flush () throws IOException {
+		ensureOpen();
+		encode(false);
+	}
+
+	/**
+	 * Finish the writing and replace the target file with the temporary file.<br />
+	 * The move is atomic when the file system supports it.
+	 */
+	@Override
+	public void close () throws IOException {
+		if (closed) {
+			return;
+		}
+		try {
+			encode(true);
+			channel.force(false);
+		} catch (final IOException e) {
+			abort();
+			throw e;
+		}
+		closed = true;
+		channel.close();
+		replace(temporary, target);
+	}
+
+	/**
+	 * Create an empty temporary file next to a target file.<br />
+	 * Unlike {@link Files#createTempFile(Path, String, String, java.nio.file.attribute.FileAttribute...)},
+	 * which makes the file readable by its owner only, the file is created with the default
+	 * permissions of the process (its umask applies). If the target exists, its permissions are
+	 * copied, so replacing the target does not change who can read it.
+	 * @param target
+	 *            the file which will be replaced by the temporary file.
+	 * @return the temporary file.
+	 * @throws IOException
+	 *             if the temporary file could not be created.
+	 */
+	static Path createTemporary (final Path target) throws IOException {
+		final String name = target.getFileName().toString();
+		Path temporary;
+		while (true) {
+			temporary = target.resolveSibling(name + Long.toString(RANDOM.nextLong() & Long.MAX_VALUE, NAME_RADIX)
+					+ TEMPORARY_EXTENSION);
+			try {
+				Files.createFile(temporary);
+				break;
+			} catch (final FileAlreadyExistsException e) {
+				lg.fine("Temporary file " + temporary + " already exists, trying another name");
+			}
+		}
+		if (Files.exists(target)) {
+			try {
+				Files.setPosixFilePermissions(temporary, Files.getPosixFilePermissions(target));
+			} catch (final UnsupportedOperationException e) {
+				// No POSIX permissions (e.g. on Windows): the file gets those of its directory
+				lg.fine("Cannot copy the permissions of " + target + " (" + e.getMessage() + ")");
+			} catch (final IOException e) {
+				Files.deleteIfExists(temporary);
+				throw e;
+			}
+		}
+		return temporary;
+	}
+
+	/**
+	 * Move a temporary file in place of a target file, atomically if the file system allows it.
+	 * @param temporary
+	 *            the temporary file.
+	 * @param target
+	 *            the file to replace.
+	 * @throws IOException
+	 *             if the file could not be moved.
+	 */
+	static void replace (final Path temporary, final Path target) throws IOException {
+		try {
+			Files.move(temporary, target, StandardCopyOption.ATOMIC_MOVE, StandardCopyOption.REPLACE_EXISTING);
+		} catch (final AtomicMoveNotSupportedException e) {
+			lg.fine("Atomic move not supported, replacing " + target + " (" + e.getMessage() + ")");
+			Files.move(temporary, target, StandardCopyOption.REPLACE_EXISTING);
+		}
+	}
+
+	/**
+	 * Discard the temporary file: the target file is not modified.
+	 */
+	public void abort () {
+		if (closed) {
+			return;
+		}
+		closed = true;
+		try {
+			channel.close();
+			Files.deleteIfExists(temporary);
+		} catch (final IOException e) {
+			lg.warning("Cannot delete temporary file " + temporary + " (" + e.getMessage() + ")");
+		}
+	}
+
+	/**
+	 * Encode the characters buffered and write them to the channel.
+	 * @param endOfInput
+	 *            <code>true</code> if no more characters will be written.
+	 * @throws IOException
+	 *             if the characters could not be encoded or written.
+	 */
+	private void encode (final boolean endOfInput) throws IOException {
+		chars.flip();
+		CoderResult result;
+		do {
+			result = encoder.encode(chars, bytes, endOfInput);
+			if (result.isError()) {
+				throw new CharacterCodingException();
+			}
+			drain();
+		} while (result.isOverflow());
+		if (endOfInput) {
+			while (encoder.flush(bytes).isOverflow()) {
+				drain();
+			}
+			drain();
+		}
+		// Characters left (e.g. the first half of a surrogate pair) are kept for the next call
+		chars.compact();
+	}
+
+	/**
+	 * Write the content of the byte buffer to the channel.
+	 * @throws IOException
+	 *             if the bytes could not be written.
+	 */
+	private void drain () throws IOException {
+		bytes.flip();
+		while (bytes.hasRemaining()) {
+			channel.write(bytes);
+		}
+		bytes.clear();
+	}
+
+	/**
+	 * Check that the writer is still open.
+	 * @throws IOException
+	 *             if the writer is closed.
+	 */
+	private void ensureOpen () throws IOException {
+		if (closed) {
+			throw new IOException("Writer closed");
+		}
+	}
+}
@@ -0,0 +1,70 @@
+package com.alexrnl.betaseriesexporter.export;
+
+import java.io.IOException;
+import java.io.Writer;
+import java.nio.charset.Charset;
+import java.util.Date;
+
+import com.alexrnl.betaseriesexporter.API;
+import com.alexrnl.betaseriesexporter.Configuration;
+import com.alexrnl.betaseriesexporter.Episode;
+
+/**
+ * Exporter for the CSV format (RFC 4180): a header line, then one line per episode.
+ * @author Alex
+ */
+public class CsvExporter extends AbstractExporter {
+	/** The name of the format */
+	public static final String	FORMAT		= "csv";
+
+	private static final String	LINE_END	= "\r\n";
+
+	/**
+	 * Constructor #1.<br />
+	 */
+	public CsvExporter () {
+		super(FORMAT, "csv");
+	}
+
+	@Override
+	public void start (final Writer output, final Charset charset, final Date date, final Configuration configuration)
+			throws IOException {
+		super.start(output, charset, date, configuration);
+		output.write(API.SHOW + "," + API.NUMBER + "," + API.GLOBAL_NUMBER + "," + API.TITLE + LINE_END);
+	}
+
+	@Override
+	public void handle (final Episode episode) throws IOException {
+		final Writer writer = getWriter();
+		writeField(writer, episode.getShow());
+		writer.write(',');
+		writeField(writer, episode.getNumber());
+		writer.write(',');
+		writeField(writer, episode.getGlobalNumber());
+		writer.write(',');
+		writeField(writer, episode.getTitle());
+		writer.write(LINE_END);
+	}
+
+	/**
+	 * Write a field, quoted if it contains a separator, a quote or a line break.
+	 * @param writer
+	 *            the writer.
+	 * @param value
+	 *            the value of the field, may be <code>null</code>.
+	 * @throws IOException
+	 *             if the field could not be written.
+	 */
+	private static void writeField (final Writer writer, final String value) throws IOException {
+		if (value == null) {
+			return;
+		}
+		if (value.indexOf(',') < 0 && value.indexOf('"') < 0 && value.indexOf('\n') < 0 && value.indexOf('\r') < 0) {
+			writer.write(value);
+			return;
+		}
+		writer.write('"');
+		writer.write(value.replace("\"", "\"\""));
+		writer.write('"');
+	}
+}
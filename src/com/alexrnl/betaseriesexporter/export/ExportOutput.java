@@ -0,0 +1,160 @@
+package com.alexrnl.betaseriesexporter.export;
+
+import java.io.Closeable;
+import java.io.File;
+import java.io.IOException;
+import java.nio.charset.Charset;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Date;
+import java.util.List;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+import com.alexrnl.betaseriesexporter.Configuration;
+import com.alexrnl.betaseriesexporter.Episode;
+import com.alexrnl.betaseriesexporter.EpisodeHandler;
+
+/**
+ * Class which writes the episodes in several formats at once.<br />
+ * Each episode received is given to every exporter, so all the files are written in a single
+ * pass over the episodes. The file of the {@value TextExporter#FORMAT} format is the export file
+ * itself; the files of the other formats have the same name with the extension of their format.<br />
+ * The files are replaced only when the export ends successfully: until then, the previous export
+ * stays untouched.
+ * @author Alex
+ */
+public class ExportOutput implements EpisodeHandler, Closeable {
+	private static Logger				lg	= Logger.getLogger(ExportOutput.class.getName());
+
+	private final String				outputFile;
+	private final List<Exporter>		exporters;
+	private final List<File>			files;
+	private final Charset				charset;
+	private final List<AtomicFileWriter>	writers;
+	private int							nbEpisodes;
+
+	/**
+	 * Constructor #1.<br />
+	 * @param exporters
+	 *            the exporters to use.
+	 * @param outputFile
+	 *            the name of the export file.
+	 * @param charset
+	 *            the charset of the files.
+	 */
+	public ExportOutput (final List<Exporter> exporters, final String outputFile, final Charset charset) {
+		this.outputFile = outputFile;
+		this.exporters = exporters;
+		this.charset = charset;
+		this.writers = new ArrayList<AtomicFileWriter>(exporters.size());
+		final List<File> exporterFiles = new ArrayList<File>(exporters.size());
+		for (final Exporter exporter : exporters) {
+			exporterFiles.add(getFile(outputFile, exporter));
+		}
+		this.files = Collections.unmodifiableList(exporterFiles);
+	}
+
+	/**
+	 * Return the file written by an exporter.
+	 * @param outputFile
+	 *            the name of the export file.
+	 * @param exporter
+	 *            the exporter.
+	 * @return the file of the exporter.
+	 */
+	public static File getFile (final String outputFile, final Exporter exporter) {
+		if (TextExporter.FORMAT.equals(exporter.getFormat())) {
+			return new File(outputFile);
+		}
+		final int extensionIndex = outputFile.lastIndexOf('.');
+		final int nameIndex = Math.max(outputFile.lastIndexOf('/'), outputFile.lastIndexOf(File.separatorChar));
+		final String baseName = extensionIndex > nameIndex ? outputFile.substring(0, extensionIndex) : outputFile;
+		return new File(baseName + "." + exporter.getExtension());
+	}
+
+	/**
+	 * Return the charset of the files.
+	 * @return the charset.
+	 */
+	public Charset getCharset () {
+		return charset;
+	}
+
+	/**
+	 * Return the name of the export file.
+	 * @return the name of the export file.
+	 */
+	public String getOutputFile () {
+		return outputFile;
+	}
+
+	/**
+	 * Return the files written, in the order of the exporters.
+	 * @return the files.
+	 */
+	public List<File> getFiles () {
+		return files;
+	}
+
+	/**
+	 * Open the files and start the export in each format.<br />
+	 * The episodes are written in temporary files until the {@link #end() end} of the export.
+	 * @param date
+	 *            the date of the episodes list.
+	 * @param configuration
+	 *            the configuration of the application.
+	 * @throws IOException
+	 *             if a file could not be opened or written.
+	 */
+	public void start (final Date date, final Configuration configuration) throws IOException {
+		for (int index = 0; index < exporters.size(); ++index) {
+			final AtomicFileWriter writer = new AtomicFileWriter(files.get(index), charset);
+			writers.add(writer);
+			exporters.get(index).start(writer, charset, date, configuration);
+		}
+	}
+
+	@Override
+	public void handle (final Episode episode) throws IOException {
+		if (lg.isLoggable(Level.FINE)) {
+			lg.log(Level.FINE, "Episode exported: show={0}, number={1}, global={2}, title={3}", new Object[] {
+					episode.getShow(), episode.getNumber(), episode.getGlobalNumber(), episode.getTitle() });
+		}
+		for (final Exporter exporter : exporters) {
+			exporter.handle(episode);
+		}
+		++nbEpisodes;
+	}
+
+	/**
+	 * End the export in each format and replace the files with the new export.
+	 * @throws IOException
+	 *             if a file could not be written.
+	 */
+	public void end () throws IOException {
+		for (final Exporter exporter : exporters) {
+			exporter.end();
+		}
+		while (!writers.isEmpty()) {
+			writers.remove(0).close();
+		}
+		lg.info("Wrote " + nbEpisodes + " episodes in " + files);
+	}
+
+	/**
+	 * Close the files.<br />
+	 * If the export did not {@link #end() end}, the files being written are discarded and the
+	 * previous export is kept.
+	 */
+	@Override
+	public void close () {
+		if (!writers.isEmpty()) {
+			lg.warning("Export not completed, discarding " + writers.size() + " file(s)");
+		}
+		for (final AtomicFileWriter writer : writers) {
+			writer.abort();
+		}
+		writers.clear();
+	}
+}
@@ -0,0 +1,127 @@
+package com.alexrnl.betaseriesexporter.export;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.nio.charset.Charset;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Date;
+import java.util.List;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+
+import com.alexrnl.betaseriesexporter.Configuration;
+import com.alexrnl.betaseriesexporter.Episode;
+
+/**
+ * Immutable copy of the episodes of an export, which can be rendered in any format.<br />
+ * Each format is rendered once, the first time it is asked for, and kept in memory. The
+ * {@link #getETag(String) entity tag} only depends on the episodes and the format, so two
+ * exports of the same list have the same tag even if their dates differ.
+ * @author Alex
+ */
+public class ExportSnapshot {
+	private final List<Episode>					episodes;
+	private final Date							date;
+	private final Configuration					configuration;
+	private final Charset						charset;
+	private volatile String						hash;
+	private final ConcurrentMap<String, byte[]>	renderings;
+
+	/**
+	 * Constructor #1.<br />
+	 * @param episodes
+	 *            the episodes of the export, copied by the snapshot.
+	 * @param date
+	 *            the date of the export.
+	 * @param configuration
+	 *            the configuration of the application, used by the exporters.
+	 * @param charset
+	 *            the charset of the documents.
+	 */
+	public ExportSnapshot (final List<Episode> episodes, final Date date, final Configuration configuration,
+			final Charset charset) {
+		this.episodes = Collections.unmodifiableList(new ArrayList<Episode>(episodes));
+		this.date = new Date(date.getTime());
+		this.configuration = configuration;
+		this.charset = charset;
+		this.renderings = new ConcurrentHashMap<String, byte[]>();
+	}
+
+	/**
+	 * Return the episodes of the export.
+	 * @return the episodes.
+	 */
+	public List<Episode> getEpisodes () {
+		return episodes;
+	}
+
+	/**
+	 * Return the date of the export.
+	 * @return the date.
+	 */
+	public Date getDate () {
+		return new Date(date.getTime());
+	}
+
+	/**
+	 * Return the charset of the documents.
+	 * @return the charset.
+	 */
+	public Charset getCharset () {
+		return charset;
+	}
+
+	/**
+	 * Return the weak entity tag of the document in a format.
+	 * @param format
+	 *            the name of the format.
+	 * @return the entity tag, quoted.
+	 */
+	public String getETag (final String format) {
+		// Computed on first use, so loading a snapshot does not hash all the episodes
+		String listHash = hash;
+		if (listHash == null) {
+			long value = 1;
+			for (final Episode episode : episodes) {
+				value = 31 * value + episode.hashCode();
+			}
+			listHash = Long.toHexString(value) + "-" + Integer.toHexString(episodes.size());
+			hash = listHash;
+		}
+		return "W/\"" + listHash + "-" + format + "\"";
+	}
+
+	/**
+	 * Return the document in a format.
+	 * @param format
+	 *            the name of the format.
+	 * @return the content of the document.
+	 * @throws IOException
+	 *             if the document could not be rendered.
+	 * @throws IllegalArgumentException
+	 *             if no exporter is available for the format.
+	 */
+	public byte[] render (final String format) throws IOException {
+		byte[] content = renderings.get(format);
+		if (content == null) {
+			final Exporter exporter = Exporters.create(format);
+			final ByteArrayOutputStream buffer = new ByteArrayOutputStream();
+			final Writer writer = new OutputStreamWriter(buffer, charset);
+			exporter.start(writer, charset, date, configuration);
+			for (final Episode episode : episodes) {
+				exporter.handle(episode);
+			}
+			exporter.end();
+			writer.close();
+			content = buffer.toByteArray();
+			final byte[] previous = renderings.putIfAbsent(format, content);
+			if (previous != null) {
+				content = previous;
+			}
+		}
+		return content;
+	}
+}
@@ -0,0 +1,57 @@
+package com.alexrnl.betaseriesexporter.export;
+
+import java.io.IOException;
+import java.io.Writer;
+import java.nio.charset.Charset;
+import java.util.Date;
+
+import com.alexrnl.betaseriesexporter.Configuration;
+import com.alexrnl.betaseriesexporter.EpisodeHandler;
+
+/**
+ * Interface for the formats of export.<br />
+ * An exporter receives the episodes one by one, as they are parsed, and writes them directly to
+ * its output, so the whole document is never built in memory. The lifecycle of an export is:
+ * {@link #start(Writer, Charset, Date, Configuration)}, {@link #handle(com.alexrnl.betaseriesexporter.Episode)
+ * handle} for each episode, then {@link #end()}.<br />
+ * Additional formats can be provided through the {@link java.util.ServiceLoader service loader}
+ * mechanism; the implementations must have a public constructor without parameter.
+ * @author Alex
+ */
+public interface Exporter extends EpisodeHandler {
+
+	/**
+	 * Return the name of the format, as used in the configuration.
+	 * @return the name of the format.
+	 */
+	String getFormat ();
+
+	/**
+	 * Return the extension of the files in this format.
+	 * @return the extension, without the dot.
+	 */
+	String getExtension ();
+
+	/**
+	 * Start the export: write the beginning of the document.
+	 * @param writer
+	 *            the writer for the document.
+	 * @param charset
+	 *            the charset used by the writer.
+	 * @param date
+	 *            the date of the episodes list.
+	 * @param configuration
+	 *            the configuration of the application.
+	 * @throws IOException
+	 *             if the document could not be written.
+	 */
+	void start (Writer writer, Charset charset, Date date, Configuration configuration) throws IOException;
+
+	/**
+	 * End the export: write the end of the document.<br />
+	 * The writer is flushed but not closed.
+	 * @throws IOException
+	 *             if the document could not be written.
+	 */
+	void end () throws IOException;
+}
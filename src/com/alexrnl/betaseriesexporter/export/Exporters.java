@@ -0,0 +1,73 @@
+package com.alexrnl.betaseriesexporter.export;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.ServiceLoader;
+
+/**
+ * Class which creates the exporters from the names of their formats.<br />
+ * The formats available are the built-in formats ({@value TextExporter#FORMAT},
+ * {@value CsvExporter#FORMAT}, {@value JsonExporter#FORMAT}, {@value HtmlExporter#FORMAT} and
+ * {@value XmlExporter#FORMAT}) and the {@link Exporter} implementations registered with the
+ * {@link ServiceLoader service loader}.
+ * @author Alex
+ */
+public final class Exporters {
+
+	/**
+	 * Constructor #1.<br />
+	 * Default private constructor to avoid creating an instance of the class anywhere.
+	 */
+	private Exporters () {
+	}
+
+	/**
+	 * Create a new exporter for a format.
+	 * @param format
+	 *            the name of the format.
+	 * @return the exporter.
+	 * @throws IllegalArgumentException
+	 *             if no exporter is available for the format.
+	 */
+	public static Exporter create (final String format) {
+		if (TextExporter.FORMAT.equals(format)) {
+			return new TextExporter();
+		} else if (CsvExporter.FORMAT.equals(format)) {
+			return new CsvExporter();
+		} else if (JsonExporter.FORMAT.equals(format)) {
+			return new JsonExporter();
+		} else if (HtmlExporter.FORMAT.equals(format)) {
+			return new HtmlExporter();
+		} else if (XmlExporter.FORMAT.equals(format)) {
+			return new XmlExporter();
+		}
+
+		for (final Exporter exporter : ServiceLoader.load(Exporter.class)) {
+			if (exporter.getFormat().equals(format)) {
+				return exporter;
+			}
+		}
+		throw new IllegalArgumentException("No exporter available for the format " + format);
+	}
+
+	/**
+	 * Create the exporters for a list of formats.
+	 * @param formats
+	 *            the names of the formats, separated by commas.
+	 * @return the exporters, in the order of the list.
+	 * @throws IllegalArgumentException
+	 *             if no exporter is available for one of the formats.
+	 */
+	public static List<Exporter> createAll (final String formats) {
+		final List<Exporter> exporters = new ArrayList<Exporter>();
+		for (final String format : formats.split(",")) {
+			if (!format.trim().isEmpty()) {
+				exporters.add(create(format.trim()));
+			}
+		}
+		if (exporters.isEmpty()) {
+			throw new IllegalArgumentException("No format specified for the export");
+		}
+		return exporters;
+	}
+}
@@ -0,0 +1,77 @@
+package com.alexrnl.betaseriesexporter.export;
+
+import java.io.IOException;
+import java.io.Writer;
+import java.nio.charset.Charset;
+import java.text.SimpleDateFormat;
+import java.util.Date;
+
+import com.alexrnl.betaseriesexporter.Configuration;
+import com.alexrnl.betaseriesexporter.Episode;
+
+/**
+ * Exporter for the HTML format: a page with a table of the episodes.
+ * @author Alex
+ */
+public class HtmlExporter extends AbstractExporter {
+	/** The name of the format */
+	public static final String	FORMAT				= "html";
+
+	private static final String	DEFAULT_DATE_FORMAT	= "EEEE d MMMM yyyy  HH'h'mm";
+
+	private String				footer;
+
+	/**
+	 * Constructor #1.<br />
+	 */
+	public HtmlExporter () {
+		super(FORMAT, "html");
+	}
+
+	@Override
+	public void start (final Writer output, final Charset charset, final Date date, final Configuration configuration)
+			throws IOException {
+		super.start(output, charset, date, configuration);
+		final String configuredFormat = configuration.getProperty("dateFormat");
+		final String dateFormat = configuredFormat == null ? DEFAULT_DATE_FORMAT : configuredFormat;
+		footer = "</tbody>\n</table>\n<p>Mis  jour le " + escape(new SimpleDateFormat(dateFormat).format(date))
+				+ "</p>\n</body>\n</html>\n";
+		output.write("<!DOCTYPE html>\n<html>\n<head>\n<meta charset=\"" + charset.name()
+				+ "\" />\n<title>Prochains pisodes  regarder</title>\n</head>\n<body>\n"
+				+ "<h1>Prochains pisodes  regarder</h1>\n<table>\n<thead>\n"
+				+ "<tr><th>Srie</th><th>pisode</th><th>Numro</th><th>Titre</th></tr>\n</thead>\n<tbody>\n");
+	}
+
+	@Override
+	public void handle (final Episode episode) throws IOException {
+		final Writer writer = getWriter();
+		writer.write("<tr><td>");
+		writer.write(escape(episode.getShow()));
+		writer.write("</td><td>");
+		writer.write(escape(episode.getNumber()));
+		writer.write("</td><td>");
+		writer.write(escape(episode.getGlobalNumber()));
+		writer.write("</td><td>");
+		writer.write(escape(episode.getTitle()));
+		writer.write("</td></tr>\n");
+	}
+
+	@Override
+	public void end () throws IOException {
+		getWriter().write(footer);
+		super.end();
+	}
+
+	/**
+	 * Escape the special characters of HTML.
+	 * @param value
+	 *            the value, may be <code>null</code>.
+	 * @return the escaped value.
+	 */
+	private static String escape (final String value) {
+		if (value == null) {
+			return "";
+		}
+		return value.replace("&", "&amp;").replace("<", "&lt;").replace(">", "&gt;").replace("\"", "&quot;");
+	}
+}
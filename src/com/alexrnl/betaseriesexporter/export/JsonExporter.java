@@ -0,0 +1,111 @@
+package com.alexrnl.betaseriesexporter.export;
+
+import java.io.IOException;
+import java.io.Writer;
+import java.nio.charset.Charset;
+import java.text.SimpleDateFormat;
+import java.util.Date;
+
+import com.alexrnl.betaseriesexporter.API;
+import com.alexrnl.betaseriesexporter.Configuration;
+import com.alexrnl.betaseriesexporter.Episode;
+
+/**
+ * Exporter for the JSON format: an object with the date of the export and the array of the
+ * episodes.
+ * @author Alex
+ */
+public class JsonExporter extends AbstractExporter {
+	/** The name of the format */
+	public static final String	FORMAT		= "json";
+
+	private static final String	DATE_FORMAT	= "yyyy-MM-dd'T'HH:mm:ssZ";
+
+	private boolean				first;
+
+	/**
+	 * Constructor #1.<br />
+	 */
+	public JsonExporter () {
+		super(FORMAT, "json");
+	}
+
+	@Override
+	public void start (final Writer output, final Charset charset, final Date date, final Configuration configuration)
+			throws IOException {
+		super.start(output, charset, date, configuration);
+		output.write("{\"date\":");
+		writeString(output, new SimpleDateFormat(DATE_FORMAT).format(date));
+		output.write(",\"episodes\":[");
+		first = true;
+	}
+
+	@Override
+	public void handle (final Episode episode) throws IOException {
+		final Writer writer = getWriter();
+		if (!first) {
+			writer.write(',');
+		}
+		first = false;
+		writer.write("\n{\"" + API.SHOW + "\":");
+		writeString(writer, episode.getShow());
+		writer.write(",\"" + API.NUMBER + "\":");
+		writeString(writer, episode.getNumber());
+		writer.write(",\"" + API.GLOBAL_NUMBER + "\":");
+		writeString(writer, episode.getGlobalNumber());
+		writer.write(",\"" + API.TITLE + "\":");
+		writeString(writer, episode.getTitle());
+		writer.write('}');
+	}
+
+	@Override
+	public void end () throws IOException {
+		getWriter().write("\n]}\n");
+		super.end();
+	}
+
+	/**
+	 * Write a JSON string, with its special characters escaped.
+	 * @param writer
+	 *            the writer.
+	 * @param value
+	 *            the value, written as <code>null</code> if it is <code>null</code>.
+	 * @throws IOException
+	 *             if the string could not be written.
+	 */
+	private static void writeString (final Writer writer, final String value) throws IOException {
+		if (value == null) {
+			writer.write("null");
+			return;
+		}
+		writer.write('"');
+		for (int index = 0; index < value.length(); ++index) {
+			final char current = value.charAt(index);
+			switch (current) {
+				case '"':
+					writer.write("\\\"");
+					break;
+				case '\\':
+					writer.write("\\\\");
+					break;
+				case '\n':
+					writer.write("\\n");
+					break;
+				case '\r':
+					writer.write("\\r");
+					break;
+				case '\t':
+					writer.write("\\t");
+					break;
+				default:
+					if (current < ' ') {
+						writer.write(String.format("\\u%04x", (int) current));
+					} else {
+						writer.write(current);
+					}
+					break;
+			}
+		}
+		writer.write('"');
+	}
+}
@@ -0,0 +1,259 @@
+package com.alexrnl.betaseriesexporter.export;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.BufferUnderflowException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.Charset;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Date;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+import java.util.logging.Logger;
+import java.util.zip.CRC32;
+
+import com.alexrnl.betaseriesexporter.Configuration;
+import com.alexrnl.betaseriesexporter.Episode;
+
+/**
+ * Class which saves the episodes of an export in a compact binary file, and loads them back
+ * without any request to the API or XML parsing.<br />
+ * The file (version {@value #VERSION}) is made of, in big-endian order:
+ * <ul>
+ * <li>a header: the magic number <code>BSES</code>, the version and the flags (two shorts), the
+ * date of the export (a long), the number of strings and the number of episodes (two ints);</li>
+ * <li>the table of the strings, each one being its length in bytes (an int) followed by its
+ * UTF-8 bytes;</li>
+ * <li>the episodes, each one being the indexes in the table of its show, number, global number
+ * and title (four ints, <code>-1</code> for a missing value);</li>
+ * <li>the CRC-32 of all the previous bytes (an int).</li>
+ * </ul>
+ * The names of the shows, which repeat for each episode, are so stored only once. The file is
+ * read through a memory mapping.
+ * @author Alex
+ */
+public final class SnapshotFile {
+	private static Logger			lg					= Logger.getLogger(SnapshotFile.class.getName());
+
+	/** The version of the format written */
+	public static final short		VERSION				= 1;
+
+	private static final int		MAGIC				= 0x42534553;
+	private static final int		HEADER_SIZE			= 4 + 2 + 2 + 8 + 4 + 4;
+	private static final int		RECORD_SIZE			= 4 * 4;
+	private static final int		CHECKSUM_SIZE		= 4;
+	private static final int		NO_STRING			= -1;
+	private static final int		CHECKSUM_CHUNK		= 64 * 1024;
+	private static final Charset	UTF8				= Charset.forName("UTF-8");
+
+	/**
+	 * Constructor #1.<br />
+	 * Default private constructor to avoid creating an instance of the class anywhere.
+	 */
+	private SnapshotFile () {
+	}
+
+	/**
+	 * Write the episodes in a snapshot file.<br />
+	 * The file is replaced atomically, so a reader never sees a partially written snapshot.
+	 * @param file
+	 *            the file to write.
+	 * @param episodes
+	 *            the episodes.
+	 * @param date
+	 *            the date when the episodes have been fetched.
+	 * @throws IOException
+	 *             if the file could not be written.
+	 */
+	public static void write (final File file, final List<Episode> episodes, final Date date) throws IOException {
+		// Building the table of the strings
+		final Map<String, Integer> indexes = new HashMap<String, Integer>();
+		final List<byte[]> strings = new ArrayList<byte[]>();
+		final int[] records = new int[episodes.size() * 4];
+		long size = HEADER_SIZE + (long) records.length * 4 + CHECKSUM_SIZE;
+		int recordIndex = 0;
+		for (final Episode episode : episodes) {
+			for (final String value : new String[] { episode.getShow(), episode.getNumber(),
+					episode.getGlobalNumber(), episode.getTitle() }) {
+				Integer index = NO_STRING;
+				if (value != null) {
+					index = indexes.get(value);
+					if (index == null) {
+						index = strings.size();
+						indexes.put(value, index);
+						final byte[] bytes = value.getBytes(UTF8);
+						strings.add(bytes);
+						size += 4 + bytes.length;
+					}
+				}
+				records[recordIndex++] = index;
+			}
+		}
+		if (size > Integer.MAX_VALUE) {
+			throw new IOException("Too many episodes for a snapshot (" + episodes.size() + ")");
+		}
+
+		final ByteBuffer buffer = ByteBuffer.allocate((int) size);
+		buffer.putInt(MAGIC).putShort(VERSION).putShort((short) 0).putLong(date.getTime());
+		buffer.putInt(strings.size()).putInt(episodes.size());
+		for (final byte[] bytes : strings) {
+			buffer.putInt(bytes.length).put(bytes);
+		}
+		for (final int index : records) {
+			buffer.putInt(index);
+		}
+		final CRC32 checksum = new CRC32();
+		checksum.update(buffer.array(), 0, buffer.position());
+		buffer.putInt((int) checksum.getValue());
+		buffer.flip();
+
+		final Path target = file.getAbsoluteFile().toPath();
+		final Path temporary = AtomicFileWriter.createTemporary(target);
+		boolean written = false;
+		try {
+			final FileChannel channel = FileChannel.open(temporary, StandardOpenOption.WRITE);
+			try {
+				while (buffer.hasRemaining()) {
+					channel.write(buffer);
+				}
+				channel.force(false);
+			} finally {
+				channel.close();
+			}
+			AtomicFileWriter.replace(temporary, target);
+			written = true;
+		} finally {
+			if (!written) {
+				Files.deleteIfExists(temporary);
+			}
+		}
+		lg.info("Wrote " + episodes.size() + " episodes (" + strings.size() + " strings, " + size
+				+ " bytes) in the snapshot " + file);
+	}
+
+	/**
+	 * Read the episodes of a snapshot file.
+	 * @param file
+	 *            the file to read.
+	 * @param configuration
+	 *            the configuration used to render the snapshot.
+	 * @param charset
+	 *            the charset used to render the snapshot.
+	 * @return the snapshot, dated when the episodes have been fetched.
+	 * @throws IOException
+	 *             if the file could not be read, or is not a valid snapshot.
+	 */
+	public static ExportSnapshot read (final File file, final Configuration configuration, final Charset charset)
+			throws IOException {
+		final long start = System.nanoTime();
+		final MappedByteBuffer buffer;
+		final FileChannel channel = FileChannel.open(file.toPath(), StandardOpenOption.READ);
+		try {
+			if (channel.size() < HEADER_SIZE + CHECKSUM_SIZE || channel.size() > Integer.MAX_VALUE) {
+				throw new IOException("Invalid snapshot size (" + channel.size() + " bytes)");
+			}
+			buffer = channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size());
+		} finally {
+			channel.close();
+		}
+
+		try {
+			if (buffer.getInt() != MAGIC) {
+				throw new IOException("Not a snapshot file");
+			}
+			final short version = buffer.getShort();
+			if (version != VERSION) {
+				throw new IOException("Unsupported snapshot version " + version);
+			}
+			buffer.getShort();
+			final Date date = new Date(buffer.getLong());
+			final int nbStrings = buffer.getInt();
+			final int nbEpisodes = buffer.getInt();
+			if (nbStrings < 0 || nbEpisodes < 0 || nbStrings > buffer.remaining() / 4) {
+				throw new IOException("Invalid snapshot header");
+			}
+			checkChecksum(buffer);
+
+			// The table of the strings
+			final String[] strings = new String[nbStrings];
+			byte[] bytes = new byte[0];
+			for (int index = 0; index < nbStrings; ++index) {
+				final int length = buffer.getInt();
+				if (length < 0 || length > buffer.remaining()) {
+					throw new IOException("Invalid string in the snapshot");
+				}
+				if (bytes.length < length) {
+					bytes = new byte[length];
+				}
+				buffer.get(bytes, 0, length);
+				strings[index] = new String(bytes, 0, length, UTF8);
+			}
+
+			// The episodes
+			if ((long) nbEpisodes * RECORD_SIZE != buffer.remaining() - CHECKSUM_SIZE) {
+				throw new IOException("Invalid number of episodes in the snapshot (" + nbEpisodes + ")");
+			}
+			final List<Episode> episodes = new ArrayList<Episode>(nbEpisodes);
+			for (int index = 0; index < nbEpisodes; ++index) {
+				episodes.add(new Episode(getString(strings, buffer.getInt()), getString(strings, buffer.getInt()),
+						getString(strings, buffer.getInt()), getString(strings, buffer.getInt())));
+			}
+			lg.info("Read " + nbEpisodes + " episodes from the snapshot " + file + " in "
+					+ TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start) + " ms");
+			return new ExportSnapshot(episodes, date, configuration, charset);
+		} catch (final BufferUnderflowException e) {
+			throw new IOException("Truncated snapshot file", e);
+		}
+	}
+
+	/**
+	 * Check the checksum at the end of a snapshot.<br />
+	 * The position of the buffer is not modified.
+	 * @param buffer
+	 *            the content of the snapshot.
+	 * @throws IOException
+	 *             if the checksum does not match the content.
+	 */
+	private static void checkChecksum (final ByteBuffer buffer) throws IOException {
+		final int end = buffer.limit() - CHECKSUM_SIZE;
+		final ByteBuffer content = buffer.duplicate();
+		content.position(0);
+		final CRC32 checksum = new CRC32();
+		final byte[] chunk = new byte[Math.min(CHECKSUM_CHUNK, end)];
+		while (content.position() < end) {
+			final int length = Math.min(chunk.length, end - content.position());
+			content.get(chunk, 0, length);
+			checksum.update(chunk, 0, length);
+		}
+		if ((int) checksum.getValue() != content.getInt()) {
+			throw new IOException("Corrupted snapshot file (checksum mismatch)");
+		}
+	}
+
+	/**
+	 * Return a string of the table.
+	 * @param strings
+	 *            the table of the strings.
+	 * @param index
+	 *            the index of the string.
+	 * @return the string, <code>null</code> for {@value #NO_STRING}.
+	 * @throws IOException
+	 *             if the index is not in the table.
+	 */
+	private static String getString (final String[] strings, final int index) throws IOException {
+		if (index == NO_STRING) {
+			return null;
+		}
+		if (index < 0 || index >= strings.length) {
+			throw new IOException("Invalid string index in the snapshot (" + index + ")");
+		}
+		return strings[index];
+	}
+}
@@ -0,0 +1,57 @@
+package com.alexrnl.betaseriesexporter.export;
+
+import java.io.IOException;
+import java.io.Writer;
+import java.nio.charset.Charset;
+import java.text.SimpleDateFormat;
+import java.util.Date;
+
+import com.alexrnl.betaseriesexporter.Configuration;
+import com.alexrnl.betaseriesexporter.Episode;
+
+/**
+ * Exporter for the text format: one episode per line, followed by the date of the export.
+ * @author Alex
+ */
+public class TextExporter extends AbstractExporter {
+	/** The name of the format */
+	public static final String	FORMAT				= "text";
+
+	private static final String	DEFAULT_DATE_FORMAT	= "EEEE d MMMM yyyy  HH'h'mm";
+	private static final String	HEADER				= "Prochains pisodes  regarder:";
+
+	private static String		newLine				= System.getProperty("line.separator");
+
+	private String				footer;
+
+	/**
+	 * Constructor #1.<br />
+	 */
+	public TextExporter () {
+		super(FORMAT, "txt");
+	}
+
+	@Override
+	public void start (final Writer output, final Charset charset, final Date date, final Configuration configuration)
+			throws IOException {
+		super.start(output, charset, date, configuration);
+		final String configuredFormat = configuration.getProperty("dateFormat");
+		final String dateFormat = configuredFormat == null ? DEFAULT_DATE_FORMAT : configuredFormat;
+		footer = newLine + "Mis  jour le " + new SimpleDateFormat(dateFormat).format(date);
+		output.write(HEADER);
+	}
+
+	@Override
+	public void handle (final Episode episode) throws IOException {
+		final Writer writer = getWriter();
+		writer.write(newLine);
+		writer.write('\t');
+		writer.write(episode.toString());
+	}
+
+	@Override
+	public void end () throws IOException {
+		getWriter().write(footer);
+		super.end();
+	}
+}
@@ -0,0 +1,98 @@
+package com.alexrnl.betaseriesexporter.export;
+
+import java.io.IOException;
+import java.io.Writer;
+import java.nio.charset.Charset;
+import java.text.SimpleDateFormat;
+import java.util.Date;
+
+import javax.xml.stream.XMLOutputFactory;
+import javax.xml.stream.XMLStreamException;
+import javax.xml.stream.XMLStreamWriter;
+
+import com.alexrnl.betaseriesexporter.API;
+import com.alexrnl.betaseriesexporter.Configuration;
+import com.alexrnl.betaseriesexporter.Episode;
+
+/**
+ * Exporter for the XML format, written with a StAX writer.
+ * @author Alex
+ */
+public class XmlExporter extends AbstractExporter {
+	/** The name of the format */
+	public static final String				FORMAT		= "xml";
+
+	private static final String				DATE_FORMAT	= "yyyy-MM-dd'T'HH:mm:ssZ";
+	private static final String				ROOT		= "episodes";
+	private static final XMLOutputFactory	FACTORY		= XMLOutputFactory.newInstance();
+
+	private XMLStreamWriter					xml;
+
+	/**
+	 * Constructor #1.<br />
+	 */
+	public XmlExporter () {
+		super(FORMAT, "xml");
+	}
+
+	@Override
+	public void start (final Writer output, final Charset charset, final Date date, final Configuration configuration)
+			throws IOException {
+		super.start(output, charset, date, configuration);
+		try {
+			xml = FACTORY.createXMLStreamWriter(output);
+			xml.writeStartDocument(charset.name(), "1.0");
+			xml.writeCharacters("\n");
+			xml.writeStartElement(ROOT);
+			xml.writeAttribute("date", new SimpleDateFormat(DATE_FORMAT).format(date));
+		} catch (final XMLStreamException e) {
+			throw new IOException("Cannot start XML document: " + e.getMessage(), e);
+		}
+	}
+
+	@Override
+	public void handle (final Episode episode) throws IOException {
+		try {
+			xml.writeCharacters("\n\t");
+			xml.writeStartElement(API.EPISODE);
+			writeElement(API.SHOW, episode.getShow());
+			writeElement(API.NUMBER, episode.getNumber());
+			writeElement(API.GLOBAL_NUMBER, episode.getGlobalNumber());
+			writeElement(API.TITLE, episode.getTitle());
+			xml.writeEndElement();
+		} catch (final XMLStreamException e) {
+			throw new IOException("Cannot write episode: " + e.getMessage(), e);
+		}
+	}
+
+	@Override
+	public void end () throws IOException {
+		try {
+			xml.writeCharacters("\n");
+			xml.writeEndElement();
+			xml.writeEndDocument();
+			xml.writeCharacters("\n");
+			xml.flush();
+		} catch (final XMLStreamException e) {
+			throw new IOException("Cannot end XML document: " + e.getMessage(), e);
+		}
+		super.end();
+	}
+
+	/**
+	 * Write an element with text content.
+	 * @param name
+	 *            the name of the element.
+	 * @param value
+	 *            the text of the element, may be <code>null</code>.
+	 * @throws XMLStreamException
+	 *             if the element could not be written.
+	 */
+	private void writeElement (final String name, final String value) throws XMLStreamException {
+		xml.writeStartElement(name);
+		if (value != null) {
+			xml.writeCharacters(value);
+		}
+		xml.writeEndElement();
+	}
+}
@@ -0,0 +1,411 @@
+package com.alexrnl.betaseriesexporter.logging;
+
+import java.io.BufferedOutputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.FilterOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.logging.ErrorManager;
+import java.util.logging.Formatter;
+import java.util.logging.Handler;
+import java.util.logging.Level;
+import java.util.logging.LogManager;
+import java.util.logging.LogRecord;
+import java.util.logging.SimpleFormatter;
+import java.util.logging.StreamHandler;
+
+/**
+ * Handler which writes the log records in a file from a background thread.<br />
+ * The threads which log only add the record to a bounded queue; the writer thread takes the
+ * records by batches, writes them and flushes the file once per batch. When the queue is full,
+ * the records below {@link Level#WARNING} are dropped at once, the others wait a little for a
+ * free slot; the number of records dropped is written in the file as soon as possible. The
+ * records are formatted by the writer thread through a {@link RedactingFormatter}, so the
+ * parameters of a record must not change once it is logged.<br />
+ * As the caller is not known by the writer thread, the source of a record is its logger (the
+ * stack of the caller is never walked). The handler is configured by the properties of the
+ * {@link LogManager}, prefixed with the name of the class:
+ * <ul>
+ * <li><code>pattern</code> the file, where <code>%t</code> is the temporary directory and
+ * <code>%h</code> the home directory of the user (<code>%t/java_bsexporter.log</code> by
+ * default),</li>
+ * <li><code>limit</code> the size in bytes after which the file is rotated (0, the default, for
+ * no limit) and <code>count</code> the number of files kept (1 by default),</li>
+ * <li><code>level</code>, <code>formatter</code> (redacted) and <code>encoding</code> as for the
+ * handlers of the JDK,</li>
+ * <li><code>queueSize</code> the number of records waiting to be written (1024 by default) and
+ * <code>batchSize</code> the maximum number of records written at once (128 by default).</li>
+ * </ul>
+ * @author Alex
+ */
+public class AsyncFileHandler extends Handler {
+	private static final String				DEFAULT_PATTERN		= "%t/java_bsexporter.log";
+	private static final int				DEFAULT_QUEUE_SIZE	= 1024;
+	private static final int				DEFAULT_BATCH_SIZE	= 128;
+	/** The time an important record waits for a free slot in the queue, in milliseconds */
+	private static final long				IMPORTANT_WAIT		= 100;
+	private static final long				CLOSE_TIMEOUT		= 1000;
+
+	private final File						file;
+	private final long						limit;
+	private final int						count;
+	private final int						batchSize;
+	private final BlockingQueue<LogRecord>	queue;
+	private final AtomicLong				dropped;
+	private final FileOutput				output;
+	private final Thread					writer;
+	private CountingOutputStream			stream;
+	private volatile boolean				closed;
+
+	/**
+	 * Constructor #1.<br />
+	 * Build the handler from the properties of the {@link LogManager} and start its writer thread.
+	 * @throws IOException
+	 *             if the file could not be opened.
+	 */
+	public AsyncFileHandler () throws IOException {
+		super();
+		final String prefix = AsyncFileHandler.class.getName() + ".";
+		final LogManager manager = LogManager.getLogManager();
+		file = new File(expandPattern(getProperty(manager, prefix + "pattern", DEFAULT_PATTERN)));
+		limit = Math.max(0, getIntProperty(manager, prefix + "limit", 0));
+		count = Math.max(1, getIntProperty(manager, prefix + "count", 1));
+		batchSize = Math.max(1, getIntProperty(manager, prefix + "batchSize", DEFAULT_BATCH_SIZE));
+		queue = new ArrayBlockingQueue<LogRecord>(Math.max(1, getIntProperty(manager, prefix + "queueSize",
+				DEFAULT_QUEUE_SIZE)));
+		dropped = new AtomicLong();
+
+		setLevel(Level.parse(getProperty(manager, prefix + "level", Level.ALL.getName())));
+		setFormatter(new RedactingFormatter(createFormatter(getProperty(manager, prefix + "formatter", null))));
+		final String encoding = getProperty(manager, prefix + "encoding", null);
+		if (encoding != null) {
+			setEncoding(encoding);
+		}
+
+		// The records are formatted and written by a stream handler, which does not flush each record
+		output = new FileOutput();
+		output.setLevel(Level.ALL);
+		output.setFormatter(getFormatter());
+		output.setEncoding(getEncoding());
+		open(limit > 0 && file.length() >= limit);
+
+		writer = new Thread(new Runnable() {
+			@Override
+			public void run () {
+				writeRecords();
+			}
+		}, "log-writer");
+		writer.setDaemon(true);
+		writer.start();
+	}
+
+	@Override
+	public void publish (final LogRecord record) {
+		if (closed || !isLoggable(record)) {
+			return;
+		}
+		// Avoid the walk of the stack of the writer thread to find the caller
+		record.setSourceClassName(record.getLoggerName());
+		record.setSourceMethodName(null);
+		boolean queued = queue.offer(record);
+		if (!queued && record.getLevel().intValue() >= Level.WARNING.intValue()) {
+			try {
+				queued = queue.offer(record, IMPORTANT_WAIT, TimeUnit.MILLISECONDS);
+			} catch (final InterruptedException e) {
+				Thread.currentThread().interrupt();
+			}
+		}
+		if (!queued) {
+			dropped.incrementAndGet();
+		}
+	}
+
+	/**
+	 * Write the records waiting in the queue.
+	 */
+	@Override
+	public void flush () {
+		final List<LogRecord> batch = new ArrayList<LogRecord>(batchSize);
+		while (queue.drainTo(batch, batchSize) > 0) {
+			write(batch);
+			batch.clear();
+		}
+	}
+
+	/**
+	 * Write the records waiting in the queue and close the file.<br />
+	 * The records published afterwards are ignored.
+	 */
+	@Override
+	public void close () {
+		if (closed) {
+			return;
+		}
+		closed = true;
+		writer.interrupt();
+		try {
+			writer.join(CLOSE_TIMEOUT);
+		} catch (final InterruptedException e) {
+			Thread.currentThread().interrupt();
+		}
+		flush();
+		synchronized (output) {
+			output.close();
+		}
+	}
+
+	/**
+	 * Return the number of records dropped because the queue was full, and not reported yet.
+	 * @return the number of records dropped.
+	 */
+	public long getDropped () {
+		return dropped.get();
+	}
+
+	/**
+	 * Write the records of the queue until the handler is closed.
+	 */
+	private void writeRecords () {
+		final List<LogRecord> batch = new ArrayList<LogRecord>(batchSize);
+		while (!closed) {
+			try {
+				batch.add(queue.take());
+			} catch (final InterruptedException e) {
+				// The handler is closed, the remaining records are written by close()
+				return;
+			}
+			queue.drainTo(batch, batchSize - 1);
+			write(batch);
+			batch.clear();
+		}
+	}
+
+	/**
+	 * Write a batch of records and flush the file.
+	 * @param batch
+	 *            the records.
+	 */
+	private void write (final List<LogRecord> batch) {
+		synchronized (output) {
+			for (final LogRecord record : batch) {
+				output.publish(record);
+			}
+			// The records were dropped after the records of the batch were queued
+			final long lost = dropped.getAndSet(0);
+			if (lost > 0) {
+				final LogRecord warning = new LogRecord(Level.WARNING, lost + " log records dropped, the queue was full");
+				warning.setLoggerName(AsyncFileHandler.class.getName());
+				warning.setSourceClassName(warning.getLoggerName());
+				output.publish(warning);
+			}
+			output.flush();
+			if (limit > 0 && stream.getCount() >= limit) {
+				try {
+					open(true);
+				} catch (final IOException e) {
+					reportError("Cannot rotate the log file " + file, e, ErrorManager.OPEN_FAILURE);
+				}
+			}
+		}
+	}
+
+	/**
+	 * Open the log file.<br />
+	 * The stream previously opened is closed by the stream handler.
+	 * @param rotate
+	 *            <code>true</code> to start a new file, after renaming the previous files if more
+	 *            than one is kept.
+	 * @throws IOException
+	 *             if the file could not be opened.
+	 */
+	private void open (final boolean rotate) throws IOException {
+		if (rotate && count > 1) {
+			for (int generation = count - 1; generation > 0; --generation) {
+				final File previous = generation == 1 ? file : getGeneration(generation - 1);
+				final File next = getGeneration(generation);
+				if (previous.isFile() && (!next.exists() || next.delete()) && !previous.renameTo(next)) {
+					reportError("Cannot rename " + previous + " to " + next, null, ErrorManager.OPEN_FAILURE);
+				}
+			}
+		}
+		final File directory = file.getAbsoluteFile().getParentFile();
+		if (directory != null && !directory.isDirectory() && !directory.mkdirs()) {
+			throw new IOException("Cannot create the directory of the log file " + file);
+		}
+		final long size = rotate ? 0 : file.length();
+		stream = new CountingOutputStream(new BufferedOutputStream(new FileOutputStream(file, !rotate)), size);
+		output.setFile(stream);
+	}
+
+	/**
+	 * Return a previous log file.
+	 * @param generation
+	 *            the generation of the file, from 1 for the most recent.
+	 * @return the file.
+	 */
+	private File getGeneration (final int generation) {
+		return new File(file.getPath() + "." + generation);
+	}
+
+	/**
+	 * Replace the special components of a file pattern.
+	 * @param pattern
+	 *            the pattern.
+	 * @return the path of the file.
+	 */
+	private static String expandPattern (final String pattern) {
+		final StringBuilder path = new StringBuilder(pattern.length() + 32);
+		for (int index = 0; index < pattern.length(); ++index) {
+			final char c = pattern.charAt(index);
+			if (c == '%' && index + 1 < pattern.length()) {
+				final char component = pattern.charAt(index + 1);
+				if (component == 't') {
+					path.append(System.getProperty("java.io.tmpdir"));
+					++index;
+					continue;
+				}
+				if (component == 'h') {
+					path.append(System.getProperty("user.home"));
+					++index;
+					continue;
+				}
+				if (component == '%') {
+					path.append('%');
+					++index;
+					continue;
+				}
+			}
+			path.append(c);
+		}
+		return path.toString();
+	}
+
+	/**
+	 * Create the formatter of the records.
+	 * @param className
+	 *            the class of the formatter, <code>null</code> for a {@link SimpleFormatter}.
+	 * @return the formatter.
+	 */
+	private Formatter createFormatter (final String className) {
+		if (className != null) {
+			try {
+				return (Formatter) ClassLoader.getSystemClassLoader().loadClass(className).getDeclaredConstructor()
+						.newInstance();
+			} catch (final ReflectiveOperationException e) {
+				reportError("Cannot create the formatter " + className, e, ErrorManager.GENERIC_FAILURE);
+			} catch (final ClassCastException e) {
+				reportError("The class " + className + " is not a formatter", e, ErrorManager.GENERIC_FAILURE);
+			}
+		}
+		return new SimpleFormatter();
+	}
+
+	/**
+	 * Return a property of the log manager.
+	 * @param manager
+	 *            the log manager.
+	 * @param name
+	 *            the name of the property.
+	 * @param defaultValue
+	 *            the value if the property is not defined.
+	 * @return the value of the property.
+	 */
+	private static String getProperty (final LogManager manager, final String name, final String defaultValue) {
+		final String value = manager.getProperty(name);
+		return value == null || value.trim().isEmpty() ? defaultValue : value.trim();
+	}
+
+	/**
+	 * Return an integer property of the log manager.
+	 * @param manager
+	 *            the log manager.
+	 * @param name
+	 *            the name of the property.
+	 * @param defaultValue
+	 *            the value if the property is not defined or not valid.
+	 * @return the value of the property.
+	 */
+	private static int getIntProperty (final LogManager manager, final String name, final int defaultValue) {
+		final String value = getProperty(manager, name, null);
+		if (value == null) {
+			return defaultValue;
+		}
+		try {
+			return Integer.parseInt(value);
+		} catch (final NumberFormatException e) {
+			return defaultValue;
+		}
+	}
+
+	/**
+	 * Stream handler which writes the records in the log file.<br />
+	 * Unlike a {@link java.util.logging.FileHandler}, the file is not flushed after each record.
+	 * @author Alex
+	 */
+	private static class FileOutput extends StreamHandler {
+
+		/**
+		 * Constructor #1.<br />
+		 */
+		public FileOutput () {
+			super();
+		}
+
+		/**
+		 * Write the next records in a file.<br />
+		 * The previous file is closed.
+		 * @param file
+		 *            the stream of the file.
+		 */
+		public void setFile (final OutputStream file) {
+			setOutputStream(file);
+		}
+	}
+
+	/**
+	 * Stream which counts the bytes written, to rotate the file.
+	 * @author Alex
+	 */
+	private static class CountingOutputStream extends FilterOutputStream {
+		private long	count;
+
+		/**
+		 * Constructor #1.<br />
+		 * @param out
+		 *            the stream of the file.
+		 * @param count
+		 *            the size of the file.
+		 */
+		public CountingOutputStream (final OutputStream out, final long count) {
+			super(out);
+			this.count = count;
+		}
+
+		@Override
+		public void write (final int b) throws IOException {
+			out.write(b);
+			++count;
+		}
+
+		@Override
+		public void write (final byte[] b, final int off, final int len) throws IOException {
+			out.write(b, off, len);
+			count += len;
+		}
+
+		/**
+		 * Return the size of the file.
+		 * @return the number of bytes.
+		 */
+		public long getCount () {
+			return count;
+		}
+	}
+}
@@ -0,0 +1,88 @@
+package com.alexrnl.betaseriesexporter.logging;
+
+import java.util.logging.Formatter;
+import java.util.logging.Handler;
+import java.util.logging.LogRecord;
+import java.util.logging.SimpleFormatter;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+import com.alexrnl.betaseriesexporter.API;
+
+/**
+ * Formatter which removes the secrets from the log records formatted by another formatter.<br />
+ * The values of the <code>key</code>, <code>token</code> and <code>password</code> parameters (in
+ * an URL or in a <code>name=value</code> field), the content of the <code>token</code> elements of
+ * a response and the key of the API are replaced by <code>***</code>. The secrets should not be
+ * logged in the first place: this formatter is the last safety net, for the messages of the
+ * exceptions for example. It can be set as the formatter of any {@link Handler}.
+ * @author Alex
+ */
+public class RedactingFormatter extends Formatter {
+	private static final String		REDACTED		= "***";
+	private static final Pattern	SECRET_PARAMS	= Pattern.compile("\\b(" + API.KEY_PARAM + "|" + API.TOKEN + "|"
+															+ API.PASSWORD + ")=[^&\\s,;\"'<>)]+");
+	private static final Pattern	SECRET_ELEMENTS	= Pattern.compile("(<" + API.TOKEN + ">)[^<]+(</" + API.TOKEN
+															+ ">)");
+
+	private final Formatter			formatter;
+
+	/**
+	 * Constructor #1.<br />
+	 * Redact the records formatted by a {@link SimpleFormatter}.
+	 */
+	public RedactingFormatter () {
+		this(new SimpleFormatter());
+	}
+
+	/**
+	 * Constructor #2.<br />
+	 * @param formatter
+	 *            the formatter of the records.
+	 */
+	public RedactingFormatter (final Formatter formatter) {
+		super();
+		if (formatter == null) {
+			throw new IllegalArgumentException("The formatter cannot be null");
+		}
+		this.formatter = formatter;
+	}
+
+	@Override
+	public String format (final LogRecord record) {
+		return redact(formatter.format(record));
+	}
+
+	@Override
+	public String getHead (final Handler handler) {
+		return formatter.getHead(handler);
+	}
+
+	@Override
+	public String getTail (final Handler handler) {
+		return formatter.getTail(handler);
+	}
+
+	/**
+	 * Remove the secrets of a text.
+	 * @param text
+	 *            the text.
+	 * @return the text without the secrets.
+	 */
+	public static String redact (final String text) {
+		String result = text;
+		if (result.indexOf('=') >= 0) {
+			final Matcher params = SECRET_PARAMS.matcher(result);
+			if (params.find()) {
+				result = params.replaceAll("$1=" + REDACTED);
+			}
+		}
+		if (result.indexOf('<') >= 0) {
+			final Matcher elements = SECRET_ELEMENTS.matcher(result);
+			if (elements.find()) {
+				result = elements.replaceAll("$1" + REDACTED + "$2");
+			}
+		}
+		return result.replace(API.KEY, REDACTED);
+	}
+}
@@ -0,0 +1,121 @@
+package com.alexrnl.betaseriesexporter.metrics;
+
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * Histogram of durations, with a fixed memory footprint.<br />
+ * The durations are recorded in microseconds in log-linear buckets: each power of two is split in
+ * {@value #SUB_BUCKETS} buckets, so a percentile is known with a relative error below 12.5%.
+ * Recording a value is a few atomic increments, without any lock or allocation.
+ * @author Alex
+ */
+public class LatencyHistogram {
+	private static final int		SUB_BUCKET_BITS	= 3;
+	private static final int		SUB_BUCKETS		= 1 << SUB_BUCKET_BITS;
+	private static final int		NB_BUCKETS		= (Long.SIZE - SUB_BUCKET_BITS) * SUB_BUCKETS;
+	private static final double		PERCENT			= 100.0;
+
+	private final AtomicLongArray	buckets			= new AtomicLongArray(NB_BUCKETS);
+	private final AtomicLong		count			= new AtomicLong();
+	private final AtomicLong		total			= new AtomicLong();
+	private final AtomicLong		max				= new AtomicLong();
+
+	/**
+	 * Record a duration.
+	 * @param nanos
+	 *            the duration, in nanoseconds.
+	 */
+	public void record (final long nanos) {
+		final long micros = Math.max(0, TimeUnit.NANOSECONDS.toMicros(nanos));
+		buckets.incrementAndGet(getBucket(micros));
+		count.incrementAndGet();
+		total.addAndGet(micros);
+		long currentMax = max.get();
+		while (micros > currentMax && !max.compareAndSet(currentMax, micros)) {
+			currentMax = max.get();
+		}
+	}
+
+	/**
+	 * Return the number of durations recorded.
+	 * @return the number of durations.
+	 */
+	public long getCount () {
+		return count.get();
+	}
+
+	/**
+	 * Return the sum of the durations recorded.
+	 * @return the total, in microseconds.
+	 */
+	public long getTotal () {
+		return total.get();
+	}
+
+	/**
+	 * Return the longest duration recorded.
+	 * @return the maximum, in microseconds.
+	 */
+	public long getMax () {
+		return max.get();
+	}
+
+	/**
+	 * Return a percentile of the durations recorded.
+	 * @param percentile
+	 *            the percentile, between 0 and 100.
+	 * @return the upper bound of the bucket of the percentile, in microseconds (0 if no duration
+	 *         was recorded).
+	 * @throws IllegalArgumentException
+	 *             if the percentile is not between 0 and 100.
+	 */
+	public long getPercentile (final double percentile) {
+		if (percentile < 0 || percentile > PERCENT) {
+			throw new IllegalArgumentException("Percentile must be between 0 and 100: " + percentile);
+		}
+		final long nbValues = count.get();
+		if (nbValues == 0) {
+			return 0;
+		}
+		final long rank = Math.max(1, (long) Math.ceil(percentile / PERCENT * nbValues));
+		long seen = 0;
+		for (int bucket = 0; bucket < NB_BUCKETS; ++bucket) {
+			seen += buckets.get(bucket);
+			if (seen >= rank) {
+				return Math.min(getUpperBound(bucket), max.get());
+			}
+		}
+		return max.get();
+	}
+
+	/**
+	 * Return the bucket of a value.
+	 * @param value
+	 *            the value, positive.
+	 * @return the index of the bucket.
+	 */
+	private static int getBucket (final long value) {
+		if (value < SUB_BUCKETS) {
+			return (int) value;
+		}
+		final int shift = Long.SIZE - 1 - Long.numberOfLeadingZeros(value) - SUB_BUCKET_BITS;
+		return (shift + 1) * SUB_BUCKETS + (int) ((value >>> shift) & (SUB_BUCKETS - 1));
+	}
+
+	/**
+	 * Return the greatest value of a bucket.
+	 * @param bucket
+	 *            the index of the bucket.
+	 * @return the upper bound of the bucket.
+	 */
+	private static long getUpperBound (final int bucket) {
+		if (bucket < SUB_BUCKETS) {
+			return bucket;
+		}
+		final int shift = bucket / SUB_BUCKETS - 1;
+		final long lowerBound = (long) (SUB_BUCKETS + bucket % SUB_BUCKETS) << shift;
+		return lowerBound + (1L << shift) - 1;
+	}
+}
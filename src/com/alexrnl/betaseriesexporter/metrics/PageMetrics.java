@@ -0,0 +1,185 @@
+package com.alexrnl.betaseriesexporter.metrics;
+
+import java.util.Map;
+import java.util.Map.Entry;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Metrics of the requests to an API page.<br />
+ * The latency is measured from the sending of the request to the end of the reading of the
+ * response. The parse time is measured by the component which parses the response; when the
+ * response is parsed while it is received, the parse time includes a part of the latency. The
+ * size of the responses is counted once decompressed and as transferred, to measure the bandwidth
+ * saved by the compression.
+ * The counters are thread-safe.
+ * @author Alex
+ */
+public class PageMetrics implements PageMetricsMXBean {
+	private static final double						MICROS_PER_MILLI	= 1000.0;
+	private static final int						P50					= 50;
+	private static final int						P95					= 95;
+	private static final int						P99					= 99;
+
+	private final String							page;
+	private final AtomicLong						requests			= new AtomicLong();
+	private final AtomicLong						failures			= new AtomicLong();
+	private final AtomicLong						bytesReceived		= new AtomicLong();
+	private final AtomicLong						bytesTransferred	= new AtomicLong();
+	private final LatencyHistogram					latency				= new LatencyHistogram();
+	private final LatencyHistogram					parseTime			= new LatencyHistogram();
+	private final ConcurrentMap<String, AtomicLong>	errorCodes			= new ConcurrentHashMap<String, AtomicLong>();
+
+	/**
+	 * Constructor #1.<br />
+	 * @param page
+	 *            the page of the API.
+	 */
+	public PageMetrics (final String page) {
+		this.page = page;
+	}
+
+	/**
+	 * Record the sending of a request.
+	 */
+	public void requestStarted () {
+		requests.incrementAndGet();
+	}
+
+	/**
+	 * Record a request which failed before its response was received.
+	 */
+	public void requestFailed () {
+		failures.incrementAndGet();
+	}
+
+	/**
+	 * Record the end of the reading of a response.
+	 * @param nanos
+	 *            the latency of the request, in nanoseconds.
+	 * @param bytes
+	 *            the number of bytes of the response, decompressed.
+	 * @param transferred
+	 *            the number of bytes of the response, as transferred.
+	 */
+	public void responseReceived (final long nanos, final long bytes, final long transferred) {
+		latency.record(nanos);
+		bytesReceived.addAndGet(bytes);
+		bytesTransferred.addAndGet(transferred);
+	}
+
+	/**
+	 * Record the parsing of a response.
+	 * @param nanos
+	 *            the parse time, in nanoseconds.
+	 */
+	public void responseParsed (final long nanos) {
+		parseTime.record(nanos);
+	}
+
+	/**
+	 * Record an error returned by the API.
+	 * @param code
+	 *            the code of the error.
+	 */
+	public void errorReturned (final String code) {
+		AtomicLong counter = errorCodes.get(code);
+		if (counter == null) {
+			final AtomicLong newCounter = new AtomicLong();
+			counter = errorCodes.putIfAbsent(code, newCounter);
+			if (counter == null) {
+				counter = newCounter;
+			}
+		}
+		counter.incrementAndGet();
+	}
+
+	@Override
+	public String getPage () {
+		return page;
+	}
+
+	@Override
+	public long getRequests () {
+		return requests.get();
+	}
+
+	@Override
+	public long getFailures () {
+		return failures.get();
+	}
+
+	@Override
+	public long getBytesReceived () {
+		return bytesReceived.get();
+	}
+
+	@Override
+	public long getBytesTransferred () {
+		return bytesTransferred.get();
+	}
+
+	@Override
+	public double getLatencyP50 () {
+		return toMillis(latency.getPercentile(P50));
+	}
+
+	@Override
+	public double getLatencyP95 () {
+		return toMillis(latency.getPercentile(P95));
+	}
+
+	@Override
+	public double getLatencyP99 () {
+		return toMillis(latency.getPercentile(P99));
+	}
+
+	@Override
+	public double getLatencyMax () {
+		return toMillis(latency.getMax());
+	}
+
+	@Override
+	public long getParses () {
+		return parseTime.getCount();
+	}
+
+	@Override
+	public double getParseTime () {
+		return toMillis(parseTime.getTotal());
+	}
+
+	@Override
+	public double getParseTimeP95 () {
+		return toMillis(parseTime.getPercentile(P95));
+	}
+
+	@Override
+	public Map<String, Long> getErrorCodes () {
+		final Map<String, Long> codes = new TreeMap<String, Long>();
+		for (final Entry<String, AtomicLong> entry : errorCodes.entrySet()) {
+			codes.put(entry.getKey(), entry.getValue().get());
+		}
+		return codes;
+	}
+
+	/**
+	 * Convert a duration in milliseconds.
+	 * @param micros
+	 *            the duration, in microseconds.
+	 * @return the duration, in milliseconds.
+	 */
+	private static double toMillis (final long micros) {
+		return micros / MICROS_PER_MILLI;
+	}
+
+	@Override
+	public String toString () {
+		return page + ": requests=" + getRequests() + ", failures=" + getFailures() + ", bytes=" + getBytesReceived()
+				+ ", transferred=" + getBytesTransferred() + ", latency(ms) p50=" + getLatencyP50() + " p95=" + getLatencyP95() + " p99=" + getLatencyP99()
+				+ " max=" + getLatencyMax() + ", parses=" + getParses() + ", parse time(ms) total=" + getParseTime()
+				+ " p95=" + getParseTimeP95() + ", errors=" + getErrorCodes();
+	}
+}
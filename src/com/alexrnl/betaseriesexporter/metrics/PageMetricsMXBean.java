@@ -0,0 +1,88 @@
+package com.alexrnl.betaseriesexporter.metrics;
+
+import java.util.Map;
+
+/**
+ * Management interface of the metrics of an API page.<br />
+ * The durations are in milliseconds.
+ * @author Alex
+ */
+public interface PageMetricsMXBean {
+	/**
+	 * Return the page of the API.
+	 * @return the page.
+	 */
+	String getPage ();
+
+	/**
+	 * Return the number of requests sent to the page.
+	 * @return the number of requests.
+	 */
+	long getRequests ();
+
+	/**
+	 * Return the number of requests which failed before a response was received.
+	 * @return the number of failures.
+	 */
+	long getFailures ();
+
+	/**
+	 * Return the number of bytes received from the page, once decompressed.
+	 * @return the number of bytes.
+	 */
+	long getBytesReceived ();
+
+	/**
+	 * Return the number of bytes transferred from the page, compressed or not.
+	 * @return the number of bytes.
+	 */
+	long getBytesTransferred ();
+
+	/**
+	 * Return the median latency of the requests.
+	 * @return the median latency.
+	 */
+	double getLatencyP50 ();
+
+	/**
+	 * Return the 95th percentile of the latency of the requests.
+	 * @return the 95th percentile.
+	 */
+	double getLatencyP95 ();
+
+	/**
+	 * Return the 99th percentile of the latency of the requests.
+	 * @return the 99th percentile.
+	 */
+	double getLatencyP99 ();
+
+	/**
+	 * Return the longest latency of the requests.
+	 * @return the maximum latency.
+	 */
+	double getLatencyMax ();
+
+	/**
+	 * Return the number of responses parsed.
+	 * @return the number of responses parsed.
+	 */
+	long getParses ();
+
+	/**
+	 * Return the time spent parsing the responses.
+	 * @return the total parse time.
+	 */
+	double getParseTime ();
+
+	/**
+	 * Return the 95th percentile of the parse time of the responses.
+	 * @return the 95th percentile.
+	 */
+	double getParseTimeP95 ();
+
+	/**
+	 * Return the number of responses with an error, by error code.
+	 * @return the error codes and their count.
+	 */
+	Map<String, Long> getErrorCodes ();
+}
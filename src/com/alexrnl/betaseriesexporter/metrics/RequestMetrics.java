@@ -0,0 +1,133 @@
+package com.alexrnl.betaseriesexporter.metrics;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.lang.management.ManagementFactory;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Date;
+import java.util.List;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.logging.Logger;
+
+import javax.management.JMException;
+import javax.management.MBeanServer;
+import javax.management.ObjectName;
+
+/**
+ * Metrics of the requests sent to the API, by page.<br />
+ * The metrics of each page are registered in the platform MBean server, under the
+ * <code>com.alexrnl.betaseriesexporter</code> domain, so they can be read with any JMX console
+ * while the application runs. They can also be dumped in a file.
+ * @author Alex
+ */
+public class RequestMetrics {
+	private static Logger								lg		= Logger.getLogger(RequestMetrics.class.getName());
+
+	private static final String							DOMAIN	= "com.alexrnl.betaseriesexporter";
+
+	private final String								name;
+	private final ConcurrentMap<String, PageMetrics>	pages	= new ConcurrentHashMap<String, PageMetrics>();
+	private final List<ObjectName>						names	= new ArrayList<ObjectName>();
+
+	/**
+	 * Constructor #1.<br />
+	 * @param name
+	 *            the name of the metrics in the MBean server, which identifies the client of the
+	 *            API.
+	 */
+	public RequestMetrics (final String name) {
+		this.name = name;
+	}
+
+	/**
+	 * Return the metrics of a page, which are created on the first call.
+	 * @param page
+	 *            the page of the API.
+	 * @return the metrics of the page.
+	 */
+	public PageMetrics getPage (final String page) {
+		PageMetrics metrics = pages.get(page);
+		if (metrics == null) {
+			final PageMetrics newMetrics = new PageMetrics(page);
+			metrics = pages.putIfAbsent(page, newMetrics);
+			if (metrics == null) {
+				metrics = newMetrics;
+				register(newMetrics);
+			}
+		}
+		return metrics;
+	}
+
+	/**
+	 * Return the metrics of the pages requested, sorted by page.
+	 * @return the metrics of the pages.
+	 */
+	public Collection<PageMetrics> getPages () {
+		return new TreeMap<String, PageMetrics>(pages).values();
+	}
+
+	/**
+	 * Write the metrics in a file, one line per page.<br />
+	 * The file is overwritten.
+	 * @param file
+	 *            the file.
+	 * @throws IOException
+	 *             if the file could not be written.
+	 */
+	public void dump (final File file) throws IOException {
+		final Writer writer = new OutputStreamWriter(new FileOutputStream(file), "UTF-8");
+		try {
+			writer.write("# Request metrics " + name + " - " + new Date() + "\n");
+			for (final PageMetrics metrics : getPages()) {
+				writer.write(metrics.toString());
+				writer.write('\n');
+			}
+		} finally {
+			writer.close();
+		}
+		lg.info("Request metrics written in " + file);
+	}
+
+	/**
+	 * Remove the metrics from the MBean server.
+	 */
+	public synchronized void unregister () {
+		final MBeanServer server = ManagementFactory.getPlatformMBeanServer();
+		for (final ObjectName objectName : names) {
+			try {
+				server.unregisterMBean(objectName);
+			} catch (final JMException e) {
+				lg.warning("Cannot unregister metrics " + objectName + " (" + e.getMessage() + ")");
+			}
+		}
+		names.clear();
+	}
+
+	/**
+	 * Register the metrics of a page in the MBean server.<br />
+	 * A failure is logged, the metrics are still recorded.
+	 * @param metrics
+	 *            the metrics of the page.
+	 */
+	private synchronized void register (final PageMetrics metrics) {
+		try {
+			final ObjectName objectName = new ObjectName(DOMAIN + ":type=RequestMetrics,name="
+					+ ObjectName.quote(name) + ",page=" + ObjectName.quote(metrics.getPage()));
+			ManagementFactory.getPlatformMBeanServer().registerMBean(metrics, objectName);
+			names.add(objectName);
+		} catch (final JMException e) {
+			lg.warning("Cannot register metrics of " + metrics.getPage() + " (" + e.getMessage() + ")");
+		}
+	}
+
+	@Override
+	public String toString () {
+		return getPages().toString();
+	}
+}
@@ -0,0 +1,126 @@
+package com.alexrnl.betaseriesexporter.transport;
+
+import java.util.concurrent.TimeUnit;
+import java.util.logging.Logger;
+
+/**
+ * Circuit breaker which stops sending requests to a failing server.<br />
+ * After a number of consecutive failures, the circuit <i>opens</i> and the requests fail
+ * immediately. Once the open time is elapsed, a single trial request is allowed: the circuit
+ * closes if it succeeds, or opens again if it fails. A trial request which ends without any
+ * answer of the server (e.g. interrupted) must be {@link #releaseTrial() released}, so another
+ * request can be tried.
+ * @author Alex
+ */
+public class CircuitBreaker {
+	private static Logger	lg							= Logger.getLogger(CircuitBreaker.class.getName());
+
+	/** The default number of consecutive failures which opens the circuit */
+	public static final int	DEFAULT_FAILURE_THRESHOLD	= 5;
+	/** The default time during which the circuit stays open, in milliseconds */
+	public static final int	DEFAULT_OPEN_TIME			= 30000;
+
+	/**
+	 * The states of the circuit.
+	 * @author Alex
+	 */
+	public enum State {
+		/** The requests are sent */
+		CLOSED,
+		/** The requests fail without being sent */
+		OPEN,
+		/** A trial request is being sent */
+		HALF_OPEN;
+	}
+
+	private final String	name;
+	private final int		failureThreshold;
+	private final long		openTime;
+	private State			state;
+	private int				failures;
+	private long			openedAt;
+
+	/**
+	 * Constructor #1.<br />
+	 * @param name
+	 *            the name of the circuit, for the logs.
+	 * @param failureThreshold
+	 *            the number of consecutive failures which opens the circuit.
+	 * @param openTime
+	 *            the time during which the circuit stays open, in milliseconds.
+	 * @throws IllegalArgumentException
+	 *             if the threshold or the open time is not positive.
+	 */
+	public CircuitBreaker (final String name, final int failureThreshold, final long openTime) {
+		if (failureThreshold < 1 || openTime <= 0) {
+			throw new IllegalArgumentException("Invalid circuit breaker: threshold=" + failureThreshold
+					+ ", open time=" + openTime);
+		}
+		this.name = name;
+		this.failureThreshold = failureThreshold;
+		this.openTime = TimeUnit.MILLISECONDS.toNanos(openTime);
+		this.state = State.CLOSED;
+	}
+
+	/**
+	 * Check if a request can be sent.<br />
+	 * When the open time is elapsed, the first caller is allowed to send a trial request.
+	 * @return <code>true</code> if the request can be sent.
+	 */
+	public synchronized boolean allowRequest () {
+		if (state == State.CLOSED) {
+			return true;
+		}
+		if (state == State.OPEN && System.nanoTime() - openedAt >= openTime) {
+			lg.info("Circuit " + name + " half-open, sending a trial request");
+			state = State.HALF_OPEN;
+			return true;
+		}
+		return false;
+	}
+
+	/**
+	 * Record a successful request.
+	 */
+	public synchronized void recordSuccess () {
+		if (state != State.CLOSED) {
+			lg.info("Circuit " + name + " closed");
+		}
+		state = State.CLOSED;
+		failures = 0;
+	}
+
+	/**
+	 * Record a failed request.
+	 */
+	public synchronized void recordFailure () {
+		++failures;
+		if (state == State.HALF_OPEN || state == State.CLOSED && failures >= failureThreshold) {
+			lg.warning("Circuit " + name + " open after " + failures + " consecutive failures, requests suspended for "
+					+ TimeUnit.NANOSECONDS.toMillis(openTime) + " ms");
+			state = State.OPEN;
+			openedAt = System.nanoTime();
+		}
+	}
+
+	/**
+	 * Release the trial request of a half-open circuit which ended without a success or a failure
+	 * of the server (e.g. the request was interrupted).<br />
+	 * The open time is already elapsed, so the next request is a new trial. Does nothing if the
+	 * circuit is not half-open.
+	 */
+	public synchronized void releaseTrial () {
+		if (state == State.HALF_OPEN) {
+			lg.info("Circuit " + name + " trial request released without result");
+			state = State.OPEN;
+		}
+	}
+
+	/**
+	 * Return the current state of the circuit.
+	 * @return the state.
+	 */
+	public synchronized State getState () {
+		return state;
+	}
+}
@@ -0,0 +1,24 @@
+package com.alexrnl.betaseriesexporter.transport;
+
+/**
+ * Interface for the streams of the responses whose body may be compressed for the transfer.<br />
+ * The stream returns the decoded body; the number of bytes actually transferred is available to
+ * measure the bandwidth saved by the compression.
+ * @author Alex
+ */
+public interface EncodedResponse {
+
+	/**
+	 * Return the encoding of the body during the transfer.
+	 * @return the content coding of the response (e.g. <code>gzip</code>), <code>null</code> if the
+	 *         body was not compressed.
+	 */
+	String getContentEncoding ();
+
+	/**
+	 * Return the number of bytes of the body transferred so far.<br />
+	 * Once the stream is closed, this is the size of the whole body, as sent by the server.
+	 * @return the number of bytes transferred.
+	 */
+	long getBytesTransferred ();
+}
@@ -0,0 +1,46 @@
+package com.alexrnl.betaseriesexporter.transport;
+
+import java.io.IOException;
+
+/**
+ * Exception thrown when the server answers a request with an HTTP error status.
+ * @author Alex
+ */
+public class HttpStatusException extends IOException {
+	private static final long	serialVersionUID	= 1L;
+
+	/** The first status of the server errors */
+	private static final int	SERVER_ERROR		= 500;
+	/** The status sent by the server when it receives too many requests */
+	private static final int	TOO_MANY_REQUESTS	= 429;
+
+	private final int			status;
+
+	/**
+	 * Constructor #1.<br />
+	 * @param status
+	 *            the HTTP status of the response.
+	 * @param path
+	 *            the path of the request.
+	 */
+	public HttpStatusException (final int status, final String path) {
+		super("HTTP error " + status + " for " + path);
+		this.status = status;
+	}
+
+	/**
+	 * Return the HTTP status of the response.
+	 * @return the status.
+	 */
+	public int getStatus () {
+		return status;
+	}
+
+	/**
+	 * Check if the error is transient, so the request may succeed if it is sent again.
+	 * @return <code>true</code> for the server errors and the rate limiting.
+	 */
+	public boolean isTransient () {
+		return status >= SERVER_ERROR || status == TOO_MANY_REQUESTS;
+	}
+}
@@ -0,0 +1,356 @@
+package com.alexrnl.betaseriesexporter.transport;
+
+import java.io.FilterInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.PushbackInputStream;
+import java.net.HttpURLConnection;
+import java.net.URL;
+import java.net.URLConnection;
+import java.util.Locale;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+import java.util.zip.GZIPInputStream;
+import java.util.zip.Inflater;
+import java.util.zip.InflaterInputStream;
+
+import javax.net.ssl.HttpsURLConnection;
+import javax.net.ssl.SSLSocketFactory;
+
+/**
+ * Transport based on {@link HttpURLConnection} with persistent connections.<br />
+ * The connections are pooled by the keep-alive cache of the JDK: a connection goes back to the
+ * pool once the body of its response has been read entirely and closed, which is why the stream
+ * returned by {@link #open(String)} drains the response on close. Sharing the same
+ * {@link SSLSocketFactory} between the requests also allows the TLS sessions to be resumed.<br />
+ * Unless {@link #setCompression(boolean) disabled}, the responses are requested compressed with
+ * gzip or deflate; they are decompressed while they are read, so the body is never buffered. The
+ * stream returned is an {@link EncodedResponse} with the size of the body transferred.
+ * @author Alex
+ */
+public class KeepAliveTransport implements Transport {
+	private static Logger				lg							= Logger.getLogger(KeepAliveTransport.class.getName());
+
+	/** The default timeout for opening a connection, in milliseconds */
+	public static final int				DEFAULT_CONNECT_TIMEOUT		= 10000;
+	/** The default timeout for reading the response, in milliseconds */
+	public static final int				DEFAULT_READ_TIMEOUT		= 30000;
+	/** The default number of idle connections kept per host */
+	public static final int				DEFAULT_MAX_CONNECTIONS		= 5;
+
+	private static final int			BUFFER_SIZE					= 8192;
+	private static final String			ACCEPTED_ENCODINGS			= "gzip, deflate";
+	private static final String			GZIP						= "gzip";
+	private static final String			X_GZIP						= "x-gzip";
+	private static final String			DEFLATE						= "deflate";
+	private static final String			IDENTITY					= "identity";
+	/** The size of the header of a zlib stream */
+	private static final int			ZLIB_HEADER_SIZE			= 2;
+	private static final int			ZLIB_DEFLATE_METHOD			= 8;
+	private static final int			ZLIB_METHOD_MASK			= 0x0f;
+	private static final int			ZLIB_CHECK_DIVISOR			= 31;
+	private static final int			BITS_PER_BYTE				= 8;
+
+	private final int					connectTimeout;
+	private final int					readTimeout;
+	private final TransportStatistics	statistics;
+	private SSLSocketFactory			sslSocketFactory;
+	private volatile boolean			compression;
+
+	/**
+	 * Constructor #1.<br />
+	 * Build a transport with the specified timeouts.<br />
+	 * Must be created before the first HTTP connection of the application, as the JDK reads the
+	 * size of its connection pool only once.
+	 * @param connectTimeout
+	 *            the timeout for opening a connection, in milliseconds (0 for no timeout).
+	 * @param readTimeout
+	 *            the timeout for reading the response, in milliseconds (0 for no timeout).
+	 * @param maxConnections
+	 *            the number of idle connections kept per host.
+	 */
+	public KeepAliveTransport (final int connectTimeout, final int readTimeout, final int maxConnections) {
+		this.connectTimeout = connectTimeout;
+		this.readTimeout = readTimeout;
+		this.statistics = new TransportStatistics();
+		this.sslSocketFactory = HttpsURLConnection.getDefaultSSLSocketFactory();
+		this.compression = true;
+		System.setProperty("http.keepAlive", "true");
+		System.setProperty("http.maxConnections", Integer.toString(maxConnections));
+	}
+
+	/**
+	 * Constructor #2.<br />
+	 * Build a transport with the default timeouts.
+	 * @see #KeepAliveTransport(int, int, int)
+	 */
+	public KeepAliveTransport () {
+		this(DEFAULT_CONNECT_TIMEOUT, DEFAULT_READ_TIMEOUT, DEFAULT_MAX_CONNECTIONS);
+	}
+
+	/**
+	 * Set the factory used for the secured connections.
+	 * @param sslSocketFactory
+	 *            the factory.
+	 */
+	public void setSSLSocketFactory (final SSLSocketFactory sslSocketFactory) {
+		this.sslSocketFactory = sslSocketFactory;
+	}
+
+	/**
+	 * Set if the responses are requested compressed.<br />
+	 * Enabled by default; the server may still send a response uncompressed.
+	 * @param compression
+	 *            <code>true</code> to accept the gzip and deflate encodings.
+	 */
+	public void setCompression (final boolean compression) {
+		this.compression = compression;
+	}
+
+	@Override
+	public InputStream open (final String url) throws IOException {
+		final URLConnection connection = new URL(url).openConnection();
+		connection.setConnectTimeout(connectTimeout);
+		connection.setReadTimeout(readTimeout);
+		connection.setUseCaches(false);
+		if (compression) {
+			connection.setRequestProperty("Accept-Encoding", ACCEPTED_ENCODINGS);
+		}
+		if (connection instanceof HttpsURLConnection && sslSocketFactory != null) {
+			((HttpsURLConnection) connection).setSSLSocketFactory(sslSocketFactory);
+		}
+
+		statistics.requestStarted();
+		try {
+			if (connection instanceof HttpURLConnection) {
+				final HttpURLConnection httpConnection = (HttpURLConnection) connection;
+				final int status = httpConnection.getResponseCode();
+				if (status >= HttpURLConnection.HTTP_BAD_REQUEST) {
+					// Reading the error body allows the connection to be reused
+					drain(httpConnection.getErrorStream());
+					throw new HttpStatusException(status, connection.getURL().getPath());
+				}
+			}
+			final CountingInputStream body = new CountingInputStream(connection.getInputStream());
+			final String encoding = getContentEncoding(connection);
+			try {
+				return new PooledInputStream(body, encoding);
+			} catch (final IOException e) {
+				body.close();
+				throw new IOException("Cannot decode the " + encoding + " response (" + e.getMessage() + ")", e);
+			}
+		} catch (final IOException e) {
+			statistics.requestFailed();
+			lg.warning("Request failed (" + e.getMessage() + ")");
+			throw e;
+		}
+	}
+
+	@Override
+	public TransportStatistics getStatistics () {
+		return statistics;
+	}
+
+	/**
+	 * Return the encoding of the body of a response.
+	 * @param connection
+	 *            the connection of the response.
+	 * @return the content coding, <code>null</code> if the body is not compressed or is empty.
+	 */
+	private static String getContentEncoding (final URLConnection connection) {
+		final String encoding = connection.getContentEncoding();
+		if (encoding == null || connection.getContentLengthLong() == 0) {
+			return null;
+		}
+		final String normalized = encoding.trim().toLowerCase(Locale.ROOT);
+		return normalized.isEmpty() || IDENTITY.equals(normalized) ? null : normalized;
+	}
+
+	/**
+	 * Wrap the body of a response in a stream which decompresses it.
+	 * @param body
+	 *            the body of the response, as transferred.
+	 * @param encoding
+	 *            the content coding of the body, <code>null</code> if it is not compressed.
+	 * @return the stream with the decoded body.
+	 * @throws IOException
+	 *             if the encoding is not supported or the header of the body is not valid.
+	 */
+	private static InputStream decode (final InputStream body, final String encoding) throws IOException {
+		if (encoding == null) {
+			return body;
+		}
+		if (GZIP.equals(encoding) || X_GZIP.equals(encoding)) {
+			return new GZIPInputStream(body, BUFFER_SIZE);
+		}
+		if (DEFLATE.equals(encoding)) {
+			// Some servers send a raw deflate stream instead of the zlib format of the specification
+			final PushbackInputStream stream = new PushbackInputStream(body, ZLIB_HEADER_SIZE);
+			final byte[] header = new byte[ZLIB_HEADER_SIZE];
+			int length = 0;
+			int read;
+			while (length < header.length && (read = stream.read(header, length, header.length - length)) != -1) {
+				length += read;
+			}
+			stream.unread(header, 0, length);
+			final int cmf = header[0] & 0xff;
+			final int flg = header[1] & 0xff;
+			final boolean zlib = length < ZLIB_HEADER_SIZE || ((cmf & ZLIB_METHOD_MASK) == ZLIB_DEFLATE_METHOD
+					&& ((cmf << BITS_PER_BYTE) | flg) % ZLIB_CHECK_DIVISOR == 0);
+			final Inflater inflater = new Inflater(!zlib);
+			return new InflaterInputStream(stream, inflater, BUFFER_SIZE) {
+				@Override
+				public void close () throws IOException {
+					try {
+						super.close();
+					} finally {
+						// The inflater given to the stream is not released by the stream
+						inflater.end();
+					}
+				}
+			};
+		}
+		throw new IOException("Unsupported content encoding " + encoding);
+	}
+
+	/**
+	 * Read a stream until its end.
+	 * @param stream
+	 *            the stream.
+	 * @throws IOException
+	 *             if the stream could not be read.
+	 */
+	private static void consume (final InputStream stream) throws IOException {
+		final byte[] buffer = new byte[BUFFER_SIZE];
+		while (stream.read(buffer) != -1) {
+			// Discarding the data
+		}
+	}
+
+	/**
+	 * Read a stream until its end and close it.
+	 * @param stream
+	 *            the stream, may be <code>null</code>.
+	 * @throws IOException
+	 *             if the stream could not be read.
+	 */
+	private static void drain (final InputStream stream) throws IOException {
+		if (stream == null) {
+			return;
+		}
+		try {
+			consume(stream);
+		} finally {
+			stream.close();
+		}
+	}
+
+	/**
+	 * Stream which counts the bytes read.
+	 * @author Alex
+	 */
+	private static class CountingInputStream extends FilterInputStream {
+		private volatile long	bytesRead;
+
+		/**
+		 * Constructor #1.<br />
+		 * @param in
+		 *            the stream to count.
+		 */
+		public CountingInputStream (final InputStream in) {
+			super(in);
+		}
+
+		@Override
+		public int read () throws IOException {
+			final int value = super.read();
+			if (value != -1) {
+				++bytesRead;
+			}
+			return value;
+		}
+
+		@Override
+		public int read (final byte[] b, final int off, final int len) throws IOException {
+			final int read = super.read(b, off, len);
+			if (read > 0) {
+				bytesRead += read;
+			}
+			return read;
+		}
+
+		@Override
+		public long skip (final long n) throws IOException {
+			final long skipped = super.skip(n);
+			bytesRead += skipped;
+			return skipped;
+		}
+
+		/**
+		 * Return the number of bytes read.
+		 * @return the number of bytes.
+		 */
+		public long getBytesRead () {
+			return bytesRead;
+		}
+	}
+
+	/**
+	 * Stream of a response which decodes the body and releases the connection to the pool when
+	 * closed.
+	 * @author Alex
+	 */
+	private class PooledInputStream extends FilterInputStream implements EncodedResponse {
+		private final CountingInputStream	body;
+		private final String				encoding;
+		private boolean						closed;
+
+		/**
+		 * Constructor #1.<br />
+		 * @param body
+		 *            the body of the response, as transferred.
+		 * @param encoding
+		 *            the content coding of the body, <code>null</code> if it is not compressed.
+		 * @throws IOException
+		 *             if the body cannot be decoded.
+		 */
+		public PooledInputStream (final CountingInputStream body, final String encoding) throws IOException {
+			super(decode(body, encoding));
+			this.body = body;
+			this.encoding = encoding;
+		}
+
+		@Override
+		public String getContentEncoding () {
+			return encoding;
+		}
+
+		@Override
+		public long getBytesTransferred () {
+			return body.getBytesRead();
+		}
+
+		@Override
+		public void close () throws IOException {
+			if (closed) {
+				return;
+			}
+			closed = true;
+			try {
+				// The rest of the body is read as transferred, without decoding it
+				try {
+					consume(body);
+				} finally {
+					in.close();
+				}
+			} catch (final IOException e) {
+				statistics.requestFailed();
+				throw e;
+			}
+			statistics.requestCompleted(body.getBytesRead());
+			if (encoding != null && lg.isLoggable(Level.FINE)) {
+				lg.fine("Received " + body.getBytesRead() + " bytes in " + encoding);
+			}
+		}
+	}
+}
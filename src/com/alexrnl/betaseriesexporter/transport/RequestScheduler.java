@@ -0,0 +1,324 @@
+package com.alexrnl.betaseriesexporter.transport;
+
+import java.lang.management.ManagementFactory;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.Map;
+import java.util.TreeSet;
+import java.util.concurrent.TimeUnit;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+import javax.management.JMException;
+import javax.management.ObjectName;
+
+import com.alexrnl.betaseriesexporter.metrics.LatencyHistogram;
+
+/**
+ * Scheduler which limits the rate of the requests sent to the API.<br />
+ * The requests are limited by a {@link TokenBucket} for the API key, shared by all the requests,
+ * and by a bucket for each user token. The requests which exceed the rates wait in a queue
+ * instead of failing. They are sent by priority, then in their order of arrival; a request whose
+ * user exceeds its own rate does not block the requests of the other users.
+ * @author Alex
+ */
+public class RequestScheduler implements RequestSchedulerMXBean {
+	private static Logger		lg					= Logger.getLogger(RequestScheduler.class.getName());
+
+	/** The default number of requests per second for the API key */
+	public static final int		DEFAULT_KEY_RATE	= 10;
+	/** The default number of requests per second for a user token */
+	public static final int		DEFAULT_TOKEN_RATE	= 5;
+
+	private static final String	DOMAIN				= "com.alexrnl.betaseriesexporter";
+	private static final int	MAX_IDLE_BUCKETS	= 64;
+	private static final double	MICROS_PER_MILLI	= 1000.0;
+	private static final int	P50					= 50;
+	private static final int	P95					= 95;
+	private static final int	P99					= 99;
+
+	/**
+	 * The priorities of the requests, from the most urgent.
+	 * @author Alex
+	 */
+	public enum Priority {
+		/** Request for which a user is waiting (e.g. a login) */
+		INTERACTIVE,
+		/** Request of an export */
+		NORMAL,
+		/** Request which nobody waits for (e.g. the refresh of the cache) */
+		BACKGROUND;
+	}
+
+	private final TokenBucket				keyBucket;
+	private final double					tokenRate;
+	private final int						tokenBurst;
+	private final Map<String, TokenBucket>	tokenBuckets	= new HashMap<String, TokenBucket>();
+	private final TreeSet<Ticket>			queue			= new TreeSet<Ticket>();
+	private final LatencyHistogram			waitTime		= new LatencyHistogram();
+	private long							sequence;
+	private int								maxQueueDepth;
+	private long							requests;
+	private long							delayedRequests;
+	private ObjectName						objectName;
+
+	/**
+	 * Constructor #1.<br />
+	 * @param keyRate
+	 *            the number of requests per second for the API key, <code>0</code> for no limit.
+	 * @param keyBurst
+	 *            the number of requests which can be sent at once for the API key.
+	 * @param tokenRate
+	 *            the number of requests per second for each user token, <code>0</code> for no
+	 *            limit.
+	 * @param tokenBurst
+	 *            the number of requests which can be sent at once for each user token.
+	 */
+	public RequestScheduler (final double keyRate, final int keyBurst, final double tokenRate, final int tokenBurst) {
+		this.keyBucket = keyRate > 0 ? new TokenBucket(keyRate, keyBurst) : null;
+		this.tokenRate = tokenRate;
+		this.tokenBurst = tokenBurst;
+		if (tokenRate > 0 && tokenBurst < 1) {
+			throw new IllegalArgumentException("Invalid burst for the user tokens: " + tokenBurst);
+		}
+	}
+
+	/**
+	 * Wait until a request can be sent.
+	 * @param priority
+	 *            the priority of the request.
+	 * @param token
+	 *            the user token of the request, <code>null</code> if the request does not use a
+	 *            token.
+	 * @throws InterruptedException
+	 *             if the thread was interrupted while waiting.
+	 */
+	public void acquire (final Priority priority, final String token) throws InterruptedException {
+		final long start = System.nanoTime();
+		boolean delayed = false;
+		int queueDepth;
+		synchronized (this) {
+			final Ticket ticket = new Ticket(priority, token, sequence++);
+			queue.add(ticket);
+			maxQueueDepth = Math.max(maxQueueDepth, queue.size());
+			queueDepth = queue.size();
+			try {
+				long wait = getWaitTime(ticket, System.nanoTime());
+				while (wait > 0) {
+					delayed = true;
+					TimeUnit.NANOSECONDS.timedWait(this, wait);
+					wait = getWaitTime(ticket, System.nanoTime());
+				}
+				final long now = System.nanoTime();
+				if (keyBucket != null) {
+					keyBucket.consume(now);
+				}
+				final TokenBucket tokenBucket = getTokenBucket(token);
+				if (tokenBucket != null) {
+					tokenBucket.consume(now);
+				}
+				++requests;
+				if (delayed) {
+					++delayedRequests;
+				}
+			} finally {
+				queue.remove(ticket);
+				notifyAll();
+			}
+		}
+		final long waited = System.nanoTime() - start;
+		waitTime.record(waited);
+		if (delayed && lg.isLoggable(Level.FINE)) {
+			lg.fine(priority + " request delayed by " + TimeUnit.NANOSECONDS.toMillis(waited) + " ms ("
+					+ queueDepth + " request(s) queued)");
+		}
+	}
+
+	/**
+	 * Return the time a request has to wait before being sent.<br />
+	 * A request waits for the requests before it in the queue, unless their user exceeds its
+	 * rate.
+	 * @param ticket
+	 *            the ticket of the request.
+	 * @param now
+	 *            the current time, in nanoseconds.
+	 * @return the time to wait, in nanoseconds, <code>0</code> if the request can be sent.
+	 */
+	private long getWaitTime (final Ticket ticket, final long now) {
+		for (final Ticket previous : queue) {
+			if (previous == ticket) {
+				break;
+			}
+			if (getTokenWaitTime(previous.token, now) == 0) {
+				// Woken up when the previous request is sent
+				return Long.MAX_VALUE;
+			}
+		}
+		final long keyWait = keyBucket == null ? 0 : keyBucket.getWaitTime(now);
+		return Math.max(keyWait, getTokenWaitTime(ticket.token, now));
+	}
+
+	/**
+	 * Return the time to wait before a request can be sent for a user token.
+	 * @param token
+	 *            the user token.
+	 * @param now
+	 *            the current time, in nanoseconds.
+	 * @return the time to wait, in nanoseconds.
+	 */
+	private long getTokenWaitTime (final String token, final long now) {
+		final TokenBucket tokenBucket = getTokenBucket(token);
+		return tokenBucket == null ? 0 : tokenBucket.getWaitTime(now);
+	}
+
+	/**
+	 * Return the bucket of a user token, which is created if needed.<br />
+	 * The full buckets are forgotten when there are too many buckets, as they are equivalent to
+	 * new buckets.
+	 * @param token
+	 *            the user token.
+	 * @return the bucket, <code>null</code> if the tokens are not limited.
+	 */
+	private TokenBucket getTokenBucket (final String token) {
+		if (token == null || tokenRate <= 0) {
+			return null;
+		}
+		TokenBucket tokenBucket = tokenBuckets.get(token);
+		if (tokenBucket == null) {
+			if (tokenBuckets.size() >= MAX_IDLE_BUCKETS) {
+				final long now = System.nanoTime();
+				final Iterator<TokenBucket> buckets = tokenBuckets.values().iterator();
+				while (buckets.hasNext()) {
+					if (buckets.next().isFull(now)) {
+						buckets.remove();
+					}
+				}
+			}
+			tokenBucket = new TokenBucket(tokenRate, tokenBurst);
+			tokenBuckets.put(token, tokenBucket);
+		}
+		return tokenBucket;
+	}
+
+	/**
+	 * Register the scheduler in the platform MBean server.<br />
+	 * A failure is logged.
+	 * @param name
+	 *            the name of the scheduler.
+	 */
+	public synchronized void register (final String name) {
+		try {
+			objectName = new ObjectName(DOMAIN + ":type=RequestScheduler,name=" + ObjectName.quote(name));
+			ManagementFactory.getPlatformMBeanServer().registerMBean(this, objectName);
+		} catch (final JMException e) {
+			lg.warning("Cannot register the request scheduler " + name + " (" + e.getMessage() + ")");
+			objectName = null;
+		}
+	}
+
+	/**
+	 * Remove the scheduler from the platform MBean server.
+	 */
+	public synchronized void unregister () {
+		if (objectName == null) {
+			return;
+		}
+		try {
+			ManagementFactory.getPlatformMBeanServer().unregisterMBean(objectName);
+		} catch (final JMException e) {
+			lg.warning("Cannot unregister the request scheduler " + objectName + " (" + e.getMessage() + ")");
+		}
+		objectName = null;
+	}
+
+	@Override
+	public synchronized int getQueueDepth () {
+		return queue.size();
+	}
+
+	@Override
+	public synchronized int getMaxQueueDepth () {
+		return maxQueueDepth;
+	}
+
+	@Override
+	public synchronized long getRequests () {
+		return requests;
+	}
+
+	@Override
+	public synchronized long getDelayedRequests () {
+		return delayedRequests;
+	}
+
+	@Override
+	public double getWaitTimeP50 () {
+		return waitTime.getPercentile(P50) / MICROS_PER_MILLI;
+	}
+
+	@Override
+	public double getWaitTimeP95 () {
+		return waitTime.getPercentile(P95) / MICROS_PER_MILLI;
+	}
+
+	@Override
+	public double getWaitTimeP99 () {
+		return waitTime.getPercentile(P99) / MICROS_PER_MILLI;
+	}
+
+	@Override
+	public double getWaitTimeMax () {
+		return waitTime.getMax() / MICROS_PER_MILLI;
+	}
+
+	@Override
+	public String toString () {
+		return "requests=" + getRequests() + ", delayed=" + getDelayedRequests() + ", max queue depth="
+				+ getMaxQueueDepth() + ", wait(ms) p50=" + getWaitTimeP50() + " p95=" + getWaitTimeP95() + " p99="
+				+ getWaitTimeP99() + " max=" + getWaitTimeMax();
+	}
+
+	/**
+	 * Place of a request in the queue.
+	 * @author Alex
+	 */
+	private static final class Ticket implements Comparable<Ticket> {
+		private final Priority	priority;
+		private final String	token;
+		private final long		number;
+
+		/**
+		 * Constructor #1.<br />
+		 * @param priority
+		 *            the priority of the request.
+		 * @param token
+		 *            the user token of the request.
+		 * @param number
+		 *            the order of arrival of the request.
+		 */
+		private Ticket (final Priority priority, final String token, final long number) {
+			this.priority = priority;
+			this.token = token;
+			this.number = number;
+		}
+
+		@Override
+		public int compareTo (final Ticket other) {
+			final int comparison = priority.compareTo(other.priority);
+			if (comparison != 0) {
+				return comparison;
+			}
+			return number < other.number ? -1 : number == other.number ? 0 : 1;
+		}
+
+		@Override
+		public boolean equals (final Object obj) {
+			return obj instanceof Ticket && compareTo((Ticket) obj) == 0;
+		}
+
+		@Override
+		public int hashCode () {
+			return (int) (number ^ (number >>> Integer.SIZE));
+		}
+	}
+}
@@ -0,0 +1,56 @@
+package com.alexrnl.betaseriesexporter.transport;
+
+/**
+ * Management interface of the {@link RequestScheduler}.<br />
+ * The durations are in milliseconds.
+ * @author Alex
+ */
+public interface RequestSchedulerMXBean {
+	/**
+	 * Return the number of requests waiting to be sent.
+	 * @return the number of requests in the queue.
+	 */
+	int getQueueDepth ();
+
+	/**
+	 * Return the greatest number of requests which waited at the same time.
+	 * @return the maximum depth of the queue.
+	 */
+	int getMaxQueueDepth ();
+
+	/**
+	 * Return the number of requests scheduled.
+	 * @return the number of requests.
+	 */
+	long getRequests ();
+
+	/**
+	 * Return the number of requests which had to wait before being sent.
+	 * @return the number of requests delayed.
+	 */
+	long getDelayedRequests ();
+
+	/**
+	 * Return the median wait time of the requests.
+	 * @return the median wait time.
+	 */
+	double getWaitTimeP50 ();
+
+	/**
+	 * Return the 95th percentile of the wait time of the requests.
+	 * @return the 95th percentile.
+	 */
+	double getWaitTimeP95 ();
+
+	/**
+	 * Return the 99th percentile of the wait time of the requests.
+	 * @return the 99th percentile.
+	 */
+	double getWaitTimeP99 ();
+
+	/**
+	 * Return the longest wait time of the requests.
+	 * @return the maximum wait time.
+	 */
+	double getWaitTimeMax ();
+}
@@ -0,0 +1,201 @@
+package com.alexrnl.betaseriesexporter.transport;
+
+import java.io.File;
+import java.io.FileFilter;
+import java.io.IOException;
+import java.io.UnsupportedEncodingException;
+import java.nio.file.AtomicMoveNotSupportedException;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.logging.Logger;
+
+/**
+ * On-disk cache for the raw responses of the API.<br />
+ * Each response is stored in its own file, named after the hash of its key. An entry is fresh
+ * while its age is lower than the time-to-live of the cache; once the total size of the entries
+ * exceeds the maximum size, the oldest entries are deleted.
+ * @author Alex
+ */
+public class ResponseCache {
+	private static Logger		lg					= Logger.getLogger(ResponseCache.class.getName());
+
+	private static final String	ENTRY_EXTENSION		= ".xml";
+	private static final String	TEMPORARY_PREFIX	= "response";
+	private static final String	TEMPORARY_EXTENSION	= ".tmp";
+
+	private final File			directory;
+	private final long			timeToLive;
+	private final long			maxSize;
+	private final boolean		staleWhileRevalidate;
+
+	/**
+	 * Constructor #1.<br />
+	 * Build a cache in the specified directory, which is created if needed.
+	 * @param directory
+	 *            the directory where the responses are stored.
+	 * @param timeToLive
+	 *            the time during which an entry is fresh, in milliseconds.
+	 * @param maxSize
+	 *            the maximum size of the entries, in bytes.
+	 * @param staleWhileRevalidate
+	 *            <code>true</code> if a stale entry may be used while it is refreshed in the
+	 *            background.
+	 */
+	public ResponseCache (final File directory, final long timeToLive, final long maxSize,
+			final boolean staleWhileRevalidate) {
+		this.directory = directory;
+		this.timeToLive = timeToLive;
+		this.maxSize = maxSize;
+		this.staleWhileRevalidate = staleWhileRevalidate;
+		if (!directory.isDirectory() && !directory.mkdirs()) {
+			lg.warning("Could not create cache directory " + directory);
+		}
+	}
+
+	/**
+	 * Check if a stale entry may be used while it is refreshed in the background.
+	 * @return <code>true</code> if the stale-while-revalidate mode is enabled.
+	 */
+	public boolean isStaleWhileRevalidate () {
+		return staleWhileRevalidate;
+	}
+
+	/**
+	 * Return the entry stored for the key.
+	 * @param key
+	 *            the key of the response.
+	 * @return the file with the response, <code>null</code> if there is none.
+	 */
+	public File get (final String key) {
+		final File entry = getFile(key);
+		return entry.isFile() ? entry : null;
+	}
+
+	/**
+	 * Check if an entry is still fresh.
+	 * @param entry
+	 *            the entry.
+	 * @return <code>true</code> if the age of the entry is lower than the time-to-live.
+	 */
+	public boolean isFresh (final File entry) {
+		return System.currentTimeMillis() - entry.lastModified() <= timeToLive;
+	}
+
+	/**
+	 * Create a temporary file in the directory of the cache, where a response can be downloaded
+	 * before being {@link #put(String, File) stored}.
+	 * @return the temporary file.
+	 * @throws IOException
+	 *             if the file could not be created.
+	 */
+	public File createTemporaryFile () throws IOException {
+		return File.createTempFile(TEMPORARY_PREFIX, TEMPORARY_EXTENSION, directory);
+	}
+
+	/**
+	 * Store a response in the cache, replacing the previous entry for the key.<br />
+	 * The entry is replaced atomically when the file system allows it: the key always has an
+	 * entry, and a reader of the previous entry (e.g. during a refresh) keeps reading it.
+	 * @param key
+	 *            the key of the response.
+	 * @param response
+	 *            the temporary file with the response, which is moved in the cache.
+	 * @return the entry in the cache.
+	 * @throws IOException
+	 *             if the response could not be stored.
+	 */
+	public synchronized File put (final String key, final File response) throws IOException {
+		final File entry = getFile(key);
+		try {
+			Files.move(response.toPath(), entry.toPath(), StandardCopyOption.ATOMIC_MOVE,
+					StandardCopyOption.REPLACE_EXISTING);
+		} catch (final AtomicMoveNotSupportedException e) {
+			lg.fine("Atomic move not supported, replacing cache entry " + entry.getName() + " (" + e.getMessage() + ")");
+			Files.move(response.toPath(), entry.toPath(), StandardCopyOption.REPLACE_EXISTING);
+		}
+		evict(entry);
+		return entry;
+	}
+
+	/**
+	 * Remove the entry of the key from the cache.
+	 * @param key
+	 *            the key of the response.
+	 */
+	public synchronized void remove (final String key) {
+		final File entry = getFile(key);
+		if (entry.exists() && !entry.delete()) {
+			lg.warning("Could not delete cache entry " + entry.getName());
+		}
+	}
+
+	/**
+	 * Delete the oldest entries until the size of the cache is lower than its maximum size.
+	 * @param newest
+	 *            the entry which has just been stored, which is never deleted.
+	 */
+	private void evict (final File newest) {
+		final File[] entries = directory.listFiles(new FileFilter() {
+			@Override
+			public boolean accept (final File file) {
+				return file.isFile() && file.getName().endsWith(ENTRY_EXTENSION);
+			}
+		});
+		if (entries == null) {
+			return;
+		}
+		long size = 0;
+		for (final File entry : entries) {
+			size += entry.length();
+		}
+		if (size <= maxSize) {
+			return;
+		}
+
+		Arrays.sort(entries, new Comparator<File>() {
+			@Override
+			public int compare (final File first, final File second) {
+				return Long.valueOf(first.lastModified()).compareTo(second.lastModified());
+			}
+		});
+		for (final File entry : entries) {
+			if (size <= maxSize) {
+				break;
+			}
+			if (entry.equals(newest)) {
+				continue;
+			}
+			final long length = entry.length();
+			if (entry.delete()) {
+				size -= length;
+				lg.fine("Evicted cache entry " + entry.getName());
+			}
+		}
+	}
+
+	/**
+	 * Return the file of the entry for a key.
+	 * @param key
+	 *            the key of the response.
+	 * @return the file of the entry.
+	 */
+	private File getFile (final String key) {
+		try {
+			final byte[] digest = MessageDigest.getInstance("SHA-1").digest(key.getBytes("UTF-8"));
+			final StringBuilder name = new StringBuilder(digest.length * 2 + ENTRY_EXTENSION.length());
+			for (final byte element : digest) {
+				name.append(Character.forDigit((element >> 4) & 0xF, 16));
+				name.append(Character.forDigit(element & 0xF, 16));
+			}
+			return new File(directory, name.append(ENTRY_EXTENSION).toString());
+		} catch (final NoSuchAlgorithmException e) {
+			throw new IllegalStateException("No SHA-1 algorithm found", e);
+		} catch (final UnsupportedEncodingException e) {
+			throw new IllegalStateException("UTF-8 encoding not supported", e);
+		}
+	}
+}
@@ -0,0 +1,116 @@
+package com.alexrnl.betaseriesexporter.transport;
+
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Policy for the retries of a failed request.<br />
+ * The delay before each retry grows exponentially from the base delay up to the maximum delay,
+ * and a random jitter is applied (<i>full jitter</i>) so the clients do not retry all at once.
+ * No retry is done once the deadline of the request would be exceeded.
+ * @author Alex
+ */
+public class RetryPolicy {
+	/** The default number of attempts for a request */
+	public static final int			DEFAULT_MAX_ATTEMPTS	= 3;
+	/** The default base delay between two attempts, in milliseconds */
+	public static final int			DEFAULT_BASE_DELAY		= 500;
+	/** The default maximum delay between two attempts, in milliseconds */
+	public static final int			DEFAULT_MAX_DELAY		= 8000;
+	/** The default deadline of a request, including the retries, in milliseconds */
+	public static final int			DEFAULT_DEADLINE		= 60000;
+	/** The policy which never retries a request */
+	public static final RetryPolicy	NO_RETRY				= new RetryPolicy(1, 0, 0, Integer.MAX_VALUE);
+
+	private static final int		MAX_SHIFT				= 30;
+
+	private final int				maxAttempts;
+	private final long				baseDelay;
+	private final long				maxDelay;
+	private final long				deadline;
+
+	/**
+	 * Constructor #1.<br />
+	 * @param maxAttempts
+	 *            the maximum number of attempts, including the first one.
+	 * @param baseDelay
+	 *            the delay before the first retry, in milliseconds.
+	 * @param maxDelay
+	 *            the maximum delay between two attempts, in milliseconds.
+	 * @param deadline
+	 *            the maximum time for the request, including the retries, in milliseconds.
+	 * @throws IllegalArgumentException
+	 *             if there is no attempt or if a delay is negative.
+	 */
+	public RetryPolicy (final int maxAttempts, final long baseDelay, final long maxDelay, final long deadline) {
+		if (maxAttempts < 1 || baseDelay < 0 || maxDelay < baseDelay || deadline <= 0) {
+			throw new IllegalArgumentException("Invalid retry policy: attempts=" + maxAttempts + ", delays="
+					+ baseDelay + "-" + maxDelay + ", deadline=" + deadline);
+		}
+		this.maxAttempts = maxAttempts;
+		this.baseDelay = baseDelay;
+		this.maxDelay = maxDelay;
+		this.deadline = deadline;
+	}
+
+	/**
+	 * Return the maximum number of attempts, including the first one.
+	 * @return the maximum number of attempts.
+	 */
+	public int getMaxAttempts () {
+		return maxAttempts;
+	}
+
+	/**
+	 * Return the delay before the first retry.
+	 * @return the base delay, in milliseconds.
+	 */
+	public long getBaseDelay () {
+		return baseDelay;
+	}
+
+	/**
+	 * Return the maximum delay between two attempts.
+	 * @return the maximum delay, in milliseconds.
+	 */
+	public long getMaxDelay () {
+		return maxDelay;
+	}
+
+	/**
+	 * Return the maximum time for a request, including the retries.
+	 * @return the deadline, in milliseconds.
+	 */
+	public long getDeadline () {
+		return deadline;
+	}
+
+	/**
+	 * Compute the time of the deadline of a request which starts now.
+	 * @return the deadline, in nanoseconds (as {@link System#nanoTime()}).
+	 */
+	public long computeDeadline () {
+		return System.nanoTime() + TimeUnit.MILLISECONDS.toNanos(deadline);
+	}
+
+	/**
+	 * Return the delay to wait before the next attempt.
+	 * @param attempt
+	 *            the number of the attempt which failed, starting at 1.
+	 * @param random
+	 *            the random generator for the jitter.
+	 * @return the delay, in milliseconds.
+	 */
+	public long getDelay (final int attempt, final Random random) {
+		final long exponentialDelay = Math.min(maxDelay, baseDelay << Math.min(attempt - 1, MAX_SHIFT));
+		if (exponentialDelay == 0) {
+			return 0;
+		}
+		return (long) (random.nextDouble() * exponentialDelay);
+	}
+
+	@Override
+	public String toString () {
+		return "attempts=" + maxAttempts + ", delay=" + baseDelay + "-" + maxDelay + " ms, deadline=" + deadline + " ms";
+	}
+}
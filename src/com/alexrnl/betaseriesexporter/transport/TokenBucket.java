@@ -0,0 +1,87 @@
+package com.alexrnl.betaseriesexporter.transport;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Token bucket which limits the rate of the requests.<br />
+ * The bucket holds at most <code>capacity</code> tokens and is refilled at a constant rate; each
+ * request consumes a token, so bursts up to the capacity are allowed while the average rate
+ * stays below the refill rate. The bucket is not thread-safe: the {@link RequestScheduler}
+ * uses it under its lock.
+ * @author Alex
+ */
+public class TokenBucket {
+	private final double	capacity;
+	private final double	tokensPerNano;
+	private double			tokens;
+	private long			lastRefill;
+
+	/**
+	 * Constructor #1.<br />
+	 * The bucket is full when created.
+	 * @param ratePerSecond
+	 *            the number of tokens added per second.
+	 * @param capacity
+	 *            the maximum number of tokens in the bucket.
+	 * @throws IllegalArgumentException
+	 *             if the rate or the capacity is not positive.
+	 */
+	public TokenBucket (final double ratePerSecond, final int capacity) {
+		if (ratePerSecond <= 0 || capacity < 1) {
+			throw new IllegalArgumentException("Invalid token bucket: rate=" + ratePerSecond + ", capacity="
+					+ capacity);
+		}
+		this.capacity = capacity;
+		this.tokensPerNano = ratePerSecond / TimeUnit.SECONDS.toNanos(1);
+		this.tokens = capacity;
+		this.lastRefill = System.nanoTime();
+	}
+
+	/**
+	 * Return the time to wait before a token is available.
+	 * @param now
+	 *            the current time, in nanoseconds.
+	 * @return the time to wait, in nanoseconds, <code>0</code> if a token is available.
+	 */
+	public long getWaitTime (final long now) {
+		refill(now);
+		if (tokens >= 1) {
+			return 0;
+		}
+		return (long) Math.ceil((1 - tokens) / tokensPerNano);
+	}
+
+	/**
+	 * Consume a token.<br />
+	 * The caller must have checked that a token is {@link #getWaitTime(long) available}.
+	 * @param now
+	 *            the current time, in nanoseconds.
+	 */
+	public void consume (final long now) {
+		refill(now);
+		tokens -= 1;
+	}
+
+	/**
+	 * Check if the bucket is full, in which case it is equivalent to a new bucket.
+	 * @param now
+	 *            the current time, in nanoseconds.
+	 * @return <code>true</code> if the bucket is full.
+	 */
+	public boolean isFull (final long now) {
+		refill(now);
+		return tokens >= capacity;
+	}
+
+	/**
+	 * Add the tokens accumulated since the last refill.
+	 * @param now
+	 *            the current time, in nanoseconds.
+	 */
+	private void refill (final long now) {
+		if (now > lastRefill) {
+			tokens = Math.min(capacity, tokens + (now - lastRefill) * tokensPerNano);
+			lastRefill = now;
+		}
+	}
+}
@@ -0,0 +1,30 @@
+package com.alexrnl.betaseriesexporter.transport;
+
+import java.io.IOException;
+import java.io.InputStream;
+
+/**
+ * Interface for the objects in charge of sending the requests to the API.<br />
+ * The {@link com.alexrnl.betaseriesexporter.QueryManager QueryManager} builds the URL of the
+ * request and the transport returns the body of the response.
+ * @author Alex
+ */
+public interface Transport {
+
+	/**
+	 * Send the request and open the body of the response.<br />
+	 * The caller must close the stream returned, so the connection can be released.
+	 * @param url
+	 *            the URL of the request.
+	 * @return the stream with the body of the response.
+	 * @throws IOException
+	 *             if the request failed.
+	 */
+	InputStream open (String url) throws IOException;
+
+	/**
+	 * Return the statistics of the connections used by the transport.
+	 * @return the statistics.
+	 */
+	TransportStatistics getStatistics ();
+}
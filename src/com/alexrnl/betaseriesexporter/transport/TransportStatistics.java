@@ -0,0 +1,89 @@
+package com.alexrnl.betaseriesexporter.transport;
+
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Statistics of the requests sent by a {@link Transport}.<br />
+ * The counters are thread-safe. The reuse of the connections is handled by the keep-alive cache
+ * of the JDK, which does not expose it, so it is not counted.
+ * @author Alex
+ */
+public class TransportStatistics {
+	private final AtomicLong	requests		= new AtomicLong();
+	private final AtomicLong	failures		= new AtomicLong();
+	private final AtomicLong	bytesReceived	= new AtomicLong();
+	private final AtomicInteger	active			= new AtomicInteger();
+
+	/**
+	 * Constructor #1.<br />
+	 */
+	public TransportStatistics () {
+		super();
+	}
+
+	/**
+	 * Record the start of a request.
+	 */
+	public void requestStarted () {
+		requests.incrementAndGet();
+		active.incrementAndGet();
+	}
+
+	/**
+	 * Record the failure of a request.
+	 */
+	public void requestFailed () {
+		failures.incrementAndGet();
+		active.decrementAndGet();
+	}
+
+	/**
+	 * Record the end of a request whose response has been fully read.
+	 * @param bytes
+	 *            the number of bytes of the response, as transferred (compressed or not).
+	 */
+	public void requestCompleted (final long bytes) {
+		bytesReceived.addAndGet(bytes);
+		active.decrementAndGet();
+	}
+
+	/**
+	 * Return the number of requests sent.
+	 * @return the number of requests.
+	 */
+	public long getRequests () {
+		return requests.get();
+	}
+
+	/**
+	 * Return the number of requests which failed.
+	 * @return the number of failures.
+	 */
+	public long getFailures () {
+		return failures.get();
+	}
+
+	/**
+	 * Return the number of bytes received in the responses, as transferred.<br />
+	 * The size of the decompressed responses is in the metrics of the pages.
+	 * @return the number of bytes.
+	 */
+	public long getBytesReceived () {
+		return bytesReceived.get();
+	}
+
+	/**
+	 * Return the number of requests in progress.
+	 * @return the number of active requests.
+	 */
+	public int getActive () {
+		return active.get();
+	}
+
+	@Override
+	public String toString () {
+		return "requests=" + requests + "; failures=" + failures + "; active=" + active + "; bytesReceived="
+				+ bytesReceived;
+	}
+}